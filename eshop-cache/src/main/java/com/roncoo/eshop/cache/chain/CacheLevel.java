@@ -0,0 +1,110 @@
+package com.roncoo.eshop.cache.chain;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 读取链中的一级缓存：读取方法、批量读取方法、回填方法，以及本级的命中统计和耗时直方图
+ * <p>
+ * 单个读取和批量读取的耗时分开统计，批量读取每次调用记录一次耗时，命中次数按id统计
+ */
+public class CacheLevel<T> {
+
+    private final String name;
+    private final Function<Long, T> reader;
+    private final Function<Collection<Long>, Map<Long, T>> batchReader;
+    private final Consumer<T> writer;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+    /**
+     * 批量读取逐个调用reader，适用于本地内存中的缓存
+     *
+     * @param reader 读取方法，未命中返回null
+     * @param writer 回填方法，下级命中时写入本级
+     */
+    public CacheLevel(String name, Function<Long, T> reader, Consumer<T> writer) {
+        this(name, reader, null, writer);
+    }
+
+    /**
+     * @param reader      读取方法，未命中返回null
+     * @param batchReader 批量读取方法，返回命中的id到数据的映射；null表示逐个调用reader
+     * @param writer      回填方法，下级命中时写入本级
+     */
+    public CacheLevel(String name, Function<Long, T> reader, Function<Collection<Long>, Map<Long, T>> batchReader,
+                      Consumer<T> writer) {
+        this.name = name;
+        this.reader = reader;
+        this.batchReader = batchReader;
+        this.writer = writer;
+    }
+
+    /**
+     * 读取并记录命中和耗时
+     */
+    T get(Long id) {
+        long start = System.nanoTime();
+        T value = reader.apply(id);
+        latency.record(System.nanoTime() - start);
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    /**
+     * 批量读取并记录命中和耗时
+     *
+     * @return 命中的id到数据的映射
+     */
+    Map<Long, T> getAll(Collection<Long> ids) {
+        long start = System.nanoTime();
+        Map<Long, T> values;
+        if (batchReader != null) {
+            values = batchReader.apply(ids);
+        } else {
+            values = new HashMap<>();
+            for (Long id : ids) {
+                T value = reader.apply(id);
+                if (value != null) {
+                    values.put(id, value);
+                }
+            }
+        }
+        batchLatency.record(System.nanoTime() - start);
+        hits.add(values.size());
+        misses.add(ids.size() - values.size());
+        return values;
+    }
+
+    void put(T value) {
+        writer.accept(value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getBatchLatency() {
+        return batchLatency;
+    }
+
+}
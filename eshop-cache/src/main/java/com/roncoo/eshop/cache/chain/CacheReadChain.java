@@ -0,0 +1,139 @@
+package com.roncoo.eshop.cache.chain;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * 多级缓存读取链：按配置的顺序逐级读取，默认 本地堆缓存 -> 堆外缓存 -> Redis
+ * <p>
+ * 1、某一级命中后返回，并回填到它前面的各级，下次在更上层命中
+ * 2、每一级单独统计命中次数和耗时
+ * 3、所有级都未命中时返回null，由调用方回源
+ * 4、批量读取同样按顺序逐级读取，每一级只读取上一级未命中的id
+ * 5、可以设置回填的回调，下级命中回填上层时调用，用于记录回源兜底的旧数据
+ * <p>
+ * 某一级读取或回填失败只记录日志，继续读取下一级，不影响结果
+ */
+@Slf4j
+public class CacheReadChain<T> {
+
+    private final String name;
+    private final List<CacheLevel<T>> levels;
+    private volatile BiConsumer<Long, T> promotionListener;
+
+    /**
+     * @param availableLevels 可用的各级缓存，key为级别名称
+     * @param order           读取顺序，级别名称列表；未知的名称忽略
+     */
+    public CacheReadChain(String name, Map<String, CacheLevel<T>> availableLevels, List<String> order) {
+        this.name = name;
+        List<CacheLevel<T>> levels = new ArrayList<>();
+        for (String levelName : order) {
+            CacheLevel<T> level = availableLevels.get(levelName.trim());
+            if (level == null) {
+                log.warn("未知的缓存级别，忽略，chain={}，level={}", name, levelName);
+            } else if (!levels.contains(level)) {
+                levels.add(level);
+            }
+        }
+        this.levels = Collections.unmodifiableList(levels);
+        log.info("缓存读取链[{}]：{}", name, order);
+    }
+
+    /**
+     * 逐级读取，命中后回填上层
+     *
+     * @return 缓存数据，所有级都未命中时返回null
+     */
+    public T get(Long id) {
+        for (int i = 0; i < levels.size(); i++) {
+            T value;
+            try {
+                value = levels.get(i).get(id);
+            } catch (Exception e) {
+                log.warn("缓存读取失败，继续读取下一级，chain={}，level={}，id={}", name, levels.get(i).getName(), id, e);
+                continue;
+            }
+            if (value != null) {
+                promote(id, value, i);
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 批量逐级读取，每一级只读取前面各级都未命中的id，命中后回填上层
+     *
+     * @return 命中的id到数据的映射，所有级都未命中的id不在结果中
+     */
+    public Map<Long, T> getAll(Collection<Long> ids) {
+        Map<Long, T> result = new HashMap<>();
+        Set<Long> missedIds = new LinkedHashSet<>(ids);
+        for (int i = 0; i < levels.size() && !missedIds.isEmpty(); i++) {
+            Map<Long, T> values;
+            try {
+                values = levels.get(i).getAll(new ArrayList<>(missedIds));
+            } catch (Exception e) {
+                log.warn("缓存批量读取失败，继续读取下一级，chain={}，level={}，ids={}", name, levels.get(i).getName(), missedIds.size(), e);
+                continue;
+            }
+            for (Map.Entry<Long, T> entry : values.entrySet()) {
+                if (entry.getValue() != null && missedIds.remove(entry.getKey())) {
+                    result.put(entry.getKey(), entry.getValue());
+                    promote(entry.getKey(), entry.getValue(), i);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void promote(Long id, T value, int hitLevel) {
+        if (hitLevel == 0) {
+            return;
+        }
+        BiConsumer<Long, T> listener = promotionListener;
+        if (listener != null) {
+            listener.accept(id, value);
+        }
+        for (int i = 0; i < hitLevel; i++) {
+            try {
+                levels.get(i).put(value);
+            } catch (Exception e) {
+                log.warn("缓存回填失败，chain={}，level={}", name, levels.get(i).getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 设置回填的回调：(id, 数据)，在下级命中、回填上层时调用
+     */
+    public void setPromotionListener(BiConsumer<Long, T> promotionListener) {
+        this.promotionListener = promotionListener;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<CacheLevel<T>> getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return 最上层缓存，没有可用的级别时返回null
+     */
+    public CacheLevel<T> getTopLevel() {
+        return levels.isEmpty() ? null : levels.get(0);
+    }
+
+}
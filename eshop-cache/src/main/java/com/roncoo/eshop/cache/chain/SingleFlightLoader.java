@@ -0,0 +1,208 @@
+package com.roncoo.eshop.cache.chain;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 缓存都未命中时的回源合并：同一个id同时只有一个线程回源，其它线程等待它的结果
+ * <p>
+ * 1、第一个未命中的线程(leader)执行回源，结果通过future交给同时等待的线程(follower)，回源结束后移除
+ *    设置了最上层缓存(见 {@link #setTopLevel})时：leader先把结果写入最上层缓存，再完成future并移除，移除后到达的请求在缓存中命中；
+ *    leader回源前再读一次最上层缓存，在上一个leader写入缓存之前未命中、移除之后才到达这里的请求不会再回源一次
+ * 2、follower最多等待指定时间，超时后返回该id的旧数据；没有旧数据时继续等待回源结果，不返回null
+ * 3、回源失败时返回旧数据，没有旧数据时返回null
+ * 4、旧数据保存在一个有容量和过期时间限制的本地缓存中，只用于回源慢或失败时兜底；
+ *    除了回源结果，读取链从下级缓存回填上层时也通过 {@link #remember} 记录，一直在缓存中命中的热点数据过期后也有旧数据可用
+ * <p>
+ * 缓存失效时每个id在每个服务实例上只有一次回源(最上层缓存没有被淘汰的前提下)，避免大量请求同时打到数据源和缓存重建队列
+ */
+@Slf4j
+public class SingleFlightLoader<T> {
+
+    private final String name;
+    private final Function<Long, T> loader;
+    private final long followerTimeoutMillis;
+
+    private final ConcurrentHashMap<Long, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final Cache<Long, T> staleValues;
+    private volatile CacheLevel<T> topLevel;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+
+    /**
+     * @param loader                回源方法
+     * @param followerTimeoutMillis follower等待回源结果的最长时间（毫秒）
+     * @param staleMaxSize          保存旧数据的最大条目数
+     * @param staleTtlSeconds       旧数据保存的时间（秒）
+     */
+    public SingleFlightLoader(String name, Function<Long, T> loader, long followerTimeoutMillis,
+                              long staleMaxSize, long staleTtlSeconds) {
+        this.name = name;
+        this.loader = loader;
+        this.followerTimeoutMillis = followerTimeoutMillis;
+        this.staleValues = Caffeine.newBuilder()
+                .maximumSize(staleMaxSize)
+                .expireAfterWrite(staleTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 回源获取数据，同一个id同时只有一个线程执行回源
+     *
+     * @return 回源结果；follower超时或回源失败时返回旧数据，没有旧数据时返回null
+     */
+    public T load(Long id) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(id, future);
+        if (existing == null) {
+            return lead(id, future);
+        }
+        coalesced.increment();
+        try {
+            return existing.get(followerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            T value = stale(id);
+            if (value != null) {
+                log.warn("等待回源结果超时，返回旧数据，loader={}，id={}", name, id);
+                return value;
+            }
+            log.warn("等待回源结果超时，没有旧数据，继续等待，loader={}，id={}", name, id);
+            return join(id, existing);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("回源失败，返回旧数据，loader={}，id={}", name, id, e.getCause());
+        }
+        return stale(id);
+    }
+
+    /**
+     * 记录读取到的数据，作为之后回源慢或失败时的旧数据
+     */
+    public void remember(Long id, T value) {
+        if (value != null) {
+            staleValues.put(id, value);
+        }
+    }
+
+    /**
+     * 设置读取链的最上层缓存，leader回源前先读取，回源结果在通知follower之前写入
+     */
+    public void setTopLevel(CacheLevel<T> topLevel) {
+        this.topLevel = topLevel;
+    }
+
+    /**
+     * 没有旧数据时不限时等待回源结果，回源本身有超时(hystrix)，不会一直阻塞
+     */
+    private T join(Long id, CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("回源失败，loader={}，id={}", name, id, e.getCause());
+        }
+        return stale(id);
+    }
+
+    private T lead(Long id, CompletableFuture<T> future) {
+        CacheLevel<T> level = topLevel;
+        try {
+            T value = level == null ? null : readTopLevel(level, id);
+            if (value != null) {
+                // 上一个leader已经回源并写入缓存
+                coalesced.increment();
+                future.complete(value);
+                return value;
+            }
+            loads.increment();
+            value = loader.apply(id);
+            if (value != null) {
+                staleValues.put(id, value);
+                if (level != null) {
+                    writeTopLevel(level, id, value);
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            log.warn("回源失败，返回旧数据，loader={}，id={}", name, id, e);
+            return stale(id);
+        } finally {
+            inFlight.remove(id, future);
+        }
+    }
+
+    private T readTopLevel(CacheLevel<T> level, Long id) {
+        try {
+            return level.get(id);
+        } catch (Exception e) {
+            log.warn("回源前读取缓存失败，继续回源，loader={}，level={}，id={}", name, level.getName(), id, e);
+            return null;
+        }
+    }
+
+    private void writeTopLevel(CacheLevel<T> level, Long id, T value) {
+        try {
+            level.put(value);
+        } catch (Exception e) {
+            log.warn("回源结果写入缓存失败，loader={}，level={}，id={}", name, level.getName(), id, e);
+        }
+    }
+
+    private T stale(Long id) {
+        T value = staleValues.getIfPresent(id);
+        if (value != null) {
+            staleServed.increment();
+        }
+        return value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 实际回源的次数
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * @return 合并到其它线程回源结果的次数
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return follower等待超时的次数
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return 返回旧数据的次数
+     */
+    public long getStaleServedCount() {
+        return staleServed.sum();
+    }
+
+}
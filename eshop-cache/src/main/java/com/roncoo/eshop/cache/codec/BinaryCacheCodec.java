@@ -0,0 +1,236 @@
+package com.roncoo.eshop.cache.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 紧凑二进制编解码器
+ * <p>
+ * 格式：魔数(1字节) + schema版本号(1字节) + 标志位(1字节) + 数据体
+ * 1、魔数 {@link #MAGIC} 不是合法的json开头，读取时据此区分二进制数据和旧的json数据
+ * 2、schema版本号由子类定义，新增字段追加到末尾并递增版本号；子类按读取到的版本号只读取该版本已有的字段，旧版本写入的数据中新字段保持默认值；
+ *    比当前版本新的数据(新代码写入)无法读取，抛出IllegalArgumentException
+ * 3、数据体不小于压缩阈值时使用LZ4压缩，标志位记录是否压缩，压缩后数据体前保存原始长度；压缩后没有变小则不压缩
+ * <p>
+ * 数据体由子类按字段顺序写入，整数使用变长编码，字符串为变长长度+UTF-8字节，不保存字段名
+ */
+public abstract class BinaryCacheCodec<T> implements CacheCodec<T> {
+
+    public final static byte MAGIC = (byte) 0xCE;
+
+    private final static int FLAG_LZ4 = 1;
+    private final static int HEADER_LENGTH = 3;
+
+    private final static LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private final int lz4ThresholdBytes;
+
+    /**
+     * @param lz4ThresholdBytes 数据体不小于该字节数时LZ4压缩，0表示不压缩
+     */
+    protected BinaryCacheCodec(int lz4ThresholdBytes) {
+        this.lz4ThresholdBytes = lz4ThresholdBytes;
+    }
+
+    /**
+     * @return 写入时使用的schema版本号
+     */
+    protected abstract int schemaVersion();
+
+    /**
+     * 按字段顺序写入数据体
+     */
+    protected abstract void write(T value, Output out);
+
+    /**
+     * 按写入时的schema版本号读取数据体，schemaVersion不大于 {@link #schemaVersion()}
+     */
+    protected abstract T read(Input in, int schemaVersion);
+
+    /**
+     * @return 是否为本编解码器写入的二进制数据
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        Output body = new Output(256);
+        write(value, body);
+        int length = body.size();
+        if (lz4ThresholdBytes > 0 && length >= lz4ThresholdBytes) {
+            LZ4Compressor compressor = LZ4.fastCompressor();
+            int maxLength = compressor.maxCompressedLength(length);
+            Output out = new Output(HEADER_LENGTH + 5 + maxLength);
+            writeHeader(out, FLAG_LZ4);
+            out.writeVarInt(length);
+            int offset = out.size();
+            int compressedLength = compressor.compress(body.buffer(), 0, length, out.buffer(), offset, maxLength);
+            if (compressedLength + offset < HEADER_LENGTH + length) {
+                return Arrays.copyOf(out.buffer(), offset + compressedLength);
+            }
+        }
+        Output out = new Output(HEADER_LENGTH + length);
+        writeHeader(out, 0);
+        out.writeBytes(body.buffer(), 0, length);
+        return out.buffer();
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (!isBinary(bytes)) {
+            throw new IllegalArgumentException("不是二进制格式的缓存数据");
+        }
+        int schemaVersion = bytes[1] & 0xFF;
+        if (schemaVersion < 1 || schemaVersion > schemaVersion()) {
+            throw new IllegalArgumentException("不支持的schema版本号：" + schemaVersion + "，当前版本号：" + schemaVersion());
+        }
+        Input in = new Input(bytes, HEADER_LENGTH);
+        if ((bytes[2] & FLAG_LZ4) != 0) {
+            int length = in.readVarInt();
+            in = new Input(LZ4.fastDecompressor().decompress(bytes, in.position(), length), 0);
+        }
+        return read(in, schemaVersion);
+    }
+
+    private void writeHeader(Output out, int flags) {
+        out.writeByte(MAGIC);
+        out.writeByte(schemaVersion());
+        out.writeByte(flags);
+    }
+
+    /**
+     * 可扩容的字节输出
+     */
+    public static final class Output {
+
+        private byte[] buffer;
+        private int size;
+
+        Output(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        public void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) b;
+        }
+
+        public void writeBytes(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        /**
+         * 无符号变长整数，每字节7位
+         */
+        public void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        /**
+         * 无符号变长整数，每字节7位；负数占10字节
+         */
+        public void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            ensureCapacity(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[size++] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+        public void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return 内部数组，有效长度为 {@link #size()}
+         */
+        byte[] buffer() {
+            return buffer;
+        }
+
+        private void ensureCapacity(int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+        }
+    }
+
+    /**
+     * 字节输入，与 {@link Output} 的写入方法对应
+     */
+    public static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        public int readByte() {
+            return buffer[position++] & 0xFF;
+        }
+
+        public int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        public long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("变长整数格式错误");
+        }
+
+        public double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (long) (buffer[position++] & 0xFF) << (i * 8);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        public String readString() {
+            int length = readVarInt();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        int position() {
+            return position;
+        }
+    }
+
+}
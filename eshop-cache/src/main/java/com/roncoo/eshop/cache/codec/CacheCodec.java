@@ -0,0 +1,23 @@
+package com.roncoo.eshop.cache.codec;
+
+/**
+ * Redis缓存数据的编解码器
+ *
+ * @param <T> 缓存数据类型
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * 编码成写入Redis的字节
+     */
+    byte[] encode(T value);
+
+    /**
+     * 解码Redis中读取的字节
+     *
+     * @param bytes Redis中的数据，可能为null
+     * @return 缓存数据，没有数据时返回null
+     */
+    T decode(byte[] bytes);
+
+}
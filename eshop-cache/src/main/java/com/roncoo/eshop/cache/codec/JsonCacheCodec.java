@@ -0,0 +1,36 @@
+package com.roncoo.eshop.cache.codec;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * fastjson文本编解码器，与之前直接保存json字符串的格式相同
+ */
+public class JsonCacheCodec<T> implements CacheCodec<T> {
+
+    private final Class<T> type;
+
+    public JsonCacheCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        return JSONObject.toJSONString(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        String json = new String(bytes, StandardCharsets.UTF_8).trim();
+        // 兼容之前写入的空串和"null"
+        if (json.isEmpty() || "null".equalsIgnoreCase(json)) {
+            return null;
+        }
+        return JSONObject.parseObject(json, type);
+    }
+
+}
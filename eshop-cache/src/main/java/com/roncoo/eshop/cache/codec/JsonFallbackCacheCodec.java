@@ -0,0 +1,33 @@
+package com.roncoo.eshop.cache.codec;
+
+/**
+ * 写入使用配置的编解码器，读取时按数据开头的魔数区分二进制和json数据
+ * <p>
+ * 切换写入格式后Redis中新旧两种格式的数据并存，都可以读取，不需要清空缓存；切回json写入时已写入的二进制数据也可以读取
+ */
+public class JsonFallbackCacheCodec<T> implements CacheCodec<T> {
+
+    private final BinaryCacheCodec<T> binaryCodec;
+    private final JsonCacheCodec<T> jsonCodec;
+    private final boolean binaryWrite;
+
+    /**
+     * @param binaryWrite true：写入二进制格式，false：写入json格式
+     */
+    public JsonFallbackCacheCodec(BinaryCacheCodec<T> binaryCodec, JsonCacheCodec<T> jsonCodec, boolean binaryWrite) {
+        this.binaryCodec = binaryCodec;
+        this.jsonCodec = jsonCodec;
+        this.binaryWrite = binaryWrite;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        return binaryWrite ? binaryCodec.encode(value) : jsonCodec.encode(value);
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        return BinaryCacheCodec.isBinary(bytes) ? binaryCodec.decode(bytes) : jsonCodec.decode(bytes);
+    }
+
+}
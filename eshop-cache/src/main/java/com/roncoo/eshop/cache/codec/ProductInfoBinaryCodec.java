@@ -0,0 +1,70 @@
+package com.roncoo.eshop.cache.codec;
+
+import com.roncoo.eshop.cache.model.ProductInfo;
+
+/**
+ * 商品信息的二进制编解码器
+ * <p>
+ * schema版本1：字段存在标志(变长整数，每个可为null的字段一位) + 版本号 + 按下列顺序写入不为null的字段
+ * id、name、price、pictureList、specification、service、color、size、shopId、modifiedTime
+ * <p>
+ * 新增字段时追加到末尾并递增schema版本号，读取时用 schemaVersion >= 新版本号 判断数据中是否有该字段，旧版本数据中新字段保持默认值；
+ * 字段存在标志按新增顺序继续使用后面的位
+ */
+public class ProductInfoBinaryCodec extends BinaryCacheCodec<ProductInfo> {
+
+    private final static int SCHEMA_VERSION = 1;
+
+    public ProductInfoBinaryCodec(int lz4ThresholdBytes) {
+        super(lz4ThresholdBytes);
+    }
+
+    @Override
+    protected int schemaVersion() {
+        return SCHEMA_VERSION;
+    }
+
+    @Override
+    protected void write(ProductInfo productInfo, Output out) {
+        Object[] fields = {productInfo.getId(), productInfo.getName(), productInfo.getPrice(),
+                productInfo.getPictureList(), productInfo.getSpecification(), productInfo.getService(),
+                productInfo.getColor(), productInfo.getSize(), productInfo.getShopId(), productInfo.getModifiedTime()};
+        int mask = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        out.writeVarInt(mask);
+        out.writeVarLong(productInfo.getVersion());
+        if (productInfo.getId() != null) out.writeVarLong(productInfo.getId());
+        if (productInfo.getName() != null) out.writeString(productInfo.getName());
+        if (productInfo.getPrice() != null) out.writeDouble(productInfo.getPrice());
+        if (productInfo.getPictureList() != null) out.writeString(productInfo.getPictureList());
+        if (productInfo.getSpecification() != null) out.writeString(productInfo.getSpecification());
+        if (productInfo.getService() != null) out.writeString(productInfo.getService());
+        if (productInfo.getColor() != null) out.writeString(productInfo.getColor());
+        if (productInfo.getSize() != null) out.writeString(productInfo.getSize());
+        if (productInfo.getShopId() != null) out.writeVarLong(productInfo.getShopId());
+        if (productInfo.getModifiedTime() != null) out.writeString(productInfo.getModifiedTime());
+    }
+
+    @Override
+    protected ProductInfo read(Input in, int schemaVersion) {
+        int mask = in.readVarInt();
+        ProductInfo productInfo = new ProductInfo();
+        productInfo.setVersion(in.readVarLong());
+        if ((mask & 1) != 0) productInfo.setId(in.readVarLong());
+        if ((mask & 1 << 1) != 0) productInfo.setName(in.readString());
+        if ((mask & 1 << 2) != 0) productInfo.setPrice(in.readDouble());
+        if ((mask & 1 << 3) != 0) productInfo.setPictureList(in.readString());
+        if ((mask & 1 << 4) != 0) productInfo.setSpecification(in.readString());
+        if ((mask & 1 << 5) != 0) productInfo.setService(in.readString());
+        if ((mask & 1 << 6) != 0) productInfo.setColor(in.readString());
+        if ((mask & 1 << 7) != 0) productInfo.setSize(in.readString());
+        if ((mask & 1 << 8) != 0) productInfo.setShopId(in.readVarLong());
+        if ((mask & 1 << 9) != 0) productInfo.setModifiedTime(in.readString());
+        return productInfo;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.roncoo.eshop.cache.codec;
+
+import com.roncoo.eshop.cache.model.ShopInfo;
+
+/**
+ * 店铺信息的二进制编解码器
+ * <p>
+ * schema版本1：字段存在标志(变长整数，每个可为null的字段一位) + 版本号 + 按下列顺序写入不为null的字段
+ * id、name、level、goodCommentRate、modifiedTime
+ * <p>
+ * 新增字段时追加到末尾并递增schema版本号，读取时用 schemaVersion >= 新版本号 判断数据中是否有该字段，旧版本数据中新字段保持默认值；
+ * 字段存在标志按新增顺序继续使用后面的位
+ */
+public class ShopInfoBinaryCodec extends BinaryCacheCodec<ShopInfo> {
+
+    private final static int SCHEMA_VERSION = 1;
+
+    public ShopInfoBinaryCodec(int lz4ThresholdBytes) {
+        super(lz4ThresholdBytes);
+    }
+
+    @Override
+    protected int schemaVersion() {
+        return SCHEMA_VERSION;
+    }
+
+    @Override
+    protected void write(ShopInfo shopInfo, Output out) {
+        Object[] fields = {shopInfo.getId(), shopInfo.getName(), shopInfo.getLevel(),
+                shopInfo.getGoodCommentRate(), shopInfo.getModifiedTime()};
+        int mask = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        out.writeVarInt(mask);
+        out.writeVarLong(shopInfo.getVersion());
+        if (shopInfo.getId() != null) out.writeVarLong(shopInfo.getId());
+        if (shopInfo.getName() != null) out.writeString(shopInfo.getName());
+        if (shopInfo.getLevel() != null) out.writeVarInt(shopInfo.getLevel());
+        if (shopInfo.getGoodCommentRate() != null) out.writeDouble(shopInfo.getGoodCommentRate());
+        if (shopInfo.getModifiedTime() != null) out.writeString(shopInfo.getModifiedTime());
+    }
+
+    @Override
+    protected ShopInfo read(Input in, int schemaVersion) {
+        int mask = in.readVarInt();
+        ShopInfo shopInfo = new ShopInfo();
+        shopInfo.setVersion(in.readVarLong());
+        if ((mask & 1) != 0) shopInfo.setId(in.readVarLong());
+        if ((mask & 1 << 1) != 0) shopInfo.setName(in.readString());
+        if ((mask & 1 << 2) != 0) shopInfo.setLevel(in.readVarInt());
+        if ((mask & 1 << 3) != 0) shopInfo.setGoodCommentRate(in.readDouble());
+        if ((mask & 1 << 4) != 0) shopInfo.setModifiedTime(in.readString());
+        return shopInfo;
+    }
+
+}
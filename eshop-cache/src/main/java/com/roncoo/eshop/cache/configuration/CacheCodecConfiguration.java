@@ -0,0 +1,45 @@
+package com.roncoo.eshop.cache.configuration;
+
+import com.roncoo.eshop.cache.codec.CacheCodec;
+import com.roncoo.eshop.cache.codec.JsonCacheCodec;
+import com.roncoo.eshop.cache.codec.JsonFallbackCacheCodec;
+import com.roncoo.eshop.cache.codec.ProductInfoBinaryCodec;
+import com.roncoo.eshop.cache.codec.ShopInfoBinaryCodec;
+import com.roncoo.eshop.cache.model.ProductInfo;
+import com.roncoo.eshop.cache.model.ShopInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Redis缓存数据编解码器配置
+ * <p>
+ * eshop.cache.redis.codec：写入格式，json(默认)或binary；读取时两种格式都支持
+ * eshop.cache.redis.codec.lz4-threshold-bytes：binary格式数据体不小于该字节数时LZ4压缩，0表示不压缩
+ */
+@Configuration
+public class CacheCodecConfiguration {
+
+	@Value("${eshop.cache.redis.codec:json}")
+	private String codec;
+
+	@Value("${eshop.cache.redis.codec.lz4-threshold-bytes:512}")
+	private int lz4ThresholdBytes;
+
+	@Bean
+	public CacheCodec<ProductInfo> productInfoCodec() {
+		return new JsonFallbackCacheCodec<>(new ProductInfoBinaryCodec(lz4ThresholdBytes),
+				new JsonCacheCodec<>(ProductInfo.class), isBinaryWrite());
+	}
+
+	@Bean
+	public CacheCodec<ShopInfo> shopInfoCodec() {
+		return new JsonFallbackCacheCodec<>(new ShopInfoBinaryCodec(lz4ThresholdBytes),
+				new JsonCacheCodec<>(ShopInfo.class), isBinaryWrite());
+	}
+
+	private boolean isBinaryWrite() {
+		return "binary".equalsIgnoreCase(codec);
+	}
+
+}
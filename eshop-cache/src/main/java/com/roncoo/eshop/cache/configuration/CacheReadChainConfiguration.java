@@ -0,0 +1,152 @@
+package com.roncoo.eshop.cache.configuration;
+
+import com.alibaba.fastjson.JSONObject;
+import com.roncoo.eshop.cache.chain.CacheLevel;
+import com.roncoo.eshop.cache.chain.CacheReadChain;
+import com.roncoo.eshop.cache.chain.SingleFlightLoader;
+import com.roncoo.eshop.cache.hystrix.command.GetProductInfoCommand;
+import com.roncoo.eshop.cache.model.ProductInfo;
+import com.roncoo.eshop.cache.model.ShopInfo;
+import com.roncoo.eshop.cache.offheap.OffHeapCache;
+import com.roncoo.eshop.cache.service.CacheService;
+import com.roncoo.eshop.cache.task.RebuildProductCacheQueue;
+import com.roncoo.eshop.cache.task.RebuildShopCacheQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 多级缓存读取链配置
+ * <p>
+ * eshop.cache.read-chain.levels：读取顺序，可选 local(本地堆缓存)、offheap(堆外缓存，未启用时忽略)、redis
+ * 本地缓存直接通过 {@link CacheManager} 读写，不经过 @Cacheable 代理；回填Redis使用版本号比较写入，不会覆盖更新的数据；
+ * Redis一级的批量读取按集群节点pipeline，见 {@link CacheService#getProductInfosFromRedisCache}
+ * <p>
+ * 本地优先是用数据新鲜度换读取延迟：数据变更消息只会被一个实例消费，其它实例要等上层缓存过期后才会读到Redis中的新数据，
+ * 最长为本地缓存写入后的过期时间加上堆外缓存的过期时间(堆外缓存中的旧数据回填到本地缓存后重新计时)，
+ * 见 eshop.cache.local.*.expire-after-write-seconds 和 eshop.cache.offheap.ttl-seconds
+ * <p>
+ * 各级都未命中时通过 {@link SingleFlightLoader} 回源，同一个id只回源一次并放入缓存重建队列；
+ * 回源结果先写入读取链的最上层缓存，再交给等待的线程，重建队列异步写入之前到达的请求也不会再回源：
+ * eshop.cache.single-flight.follower-timeout-millis：等待其它线程回源结果的最长时间
+ * eshop.cache.single-flight.stale-max-size / stale-ttl-seconds：回源超时或失败时兜底的旧数据的条目数和保存时间，
+ * 旧数据来自回源结果以及读取链从下级回填上层的数据；保存时间应大于本地缓存写入后的过期时间，热点数据过期时才有旧数据可用
+ */
+@Slf4j
+@Configuration
+public class CacheReadChainConfiguration {
+
+	@Value("${eshop.cache.read-chain.levels:local,offheap,redis}")
+	private String[] levels;
+
+	@Value("${eshop.cache.single-flight.follower-timeout-millis:1000}")
+	private long followerTimeoutMillis;
+
+	@Value("${eshop.cache.single-flight.stale-max-size:10000}")
+	private long staleMaxSize;
+
+	@Value("${eshop.cache.single-flight.stale-ttl-seconds:600}")
+	private long staleTtlSeconds;
+
+	@Resource
+	private CacheManager cacheManager;
+
+	@Resource
+	private CacheService cacheService;
+
+	@Resource
+	private OffHeapCache<ProductInfo> productInfoOffHeapCache;
+
+	@Resource
+	private OffHeapCache<ShopInfo> shopInfoOffHeapCache;
+
+	@Bean
+	public CacheReadChain<ProductInfo> productInfoReadChain() {
+		Cache localCache = cacheManager.getCache(LocalCacheConfiguration.PRODUCT_INFO_CACHE);
+		Map<String, CacheLevel<ProductInfo>> available = new HashMap<>();
+		available.put("local", new CacheLevel<>("local",
+				productId -> localCache.get(productId, ProductInfo.class),
+				productInfo -> localCache.put(productInfo.getId(), productInfo)));
+		if (productInfoOffHeapCache.isEnabled()) {
+			available.put("offheap", new CacheLevel<>("offheap",
+					productInfoOffHeapCache::get,
+					productInfo -> productInfoOffHeapCache.put(productInfo.getId(), productInfo)));
+		}
+		available.put("redis", new CacheLevel<>("redis",
+				cacheService::getProductInfoFromRedisCache,
+				cacheService::getProductInfosFromRedisCache,
+				cacheService::saveProductInfo2RedisCacheIfNewer));
+		CacheReadChain<ProductInfo> chain = new CacheReadChain<>(LocalCacheConfiguration.PRODUCT_INFO_CACHE, available, Arrays.asList(levels));
+		chain.setPromotionListener(productInfoLoader()::remember);
+		productInfoLoader().setTopLevel(chain.getTopLevel());
+		return chain;
+	}
+
+	@Bean
+	public CacheReadChain<ShopInfo> shopInfoReadChain() {
+		Cache localCache = cacheManager.getCache(LocalCacheConfiguration.SHOP_INFO_CACHE);
+		Map<String, CacheLevel<ShopInfo>> available = new HashMap<>();
+		available.put("local", new CacheLevel<>("local",
+				shopId -> localCache.get(shopId, ShopInfo.class),
+				shopInfo -> localCache.put(shopInfo.getId(), shopInfo)));
+		if (shopInfoOffHeapCache.isEnabled()) {
+			available.put("offheap", new CacheLevel<>("offheap",
+					shopInfoOffHeapCache::get,
+					shopInfo -> shopInfoOffHeapCache.put(shopInfo.getId(), shopInfo)));
+		}
+		available.put("redis", new CacheLevel<>("redis",
+				cacheService::getShopInfoFromRedisCache,
+				cacheService::getShopInfosFromRedisCache,
+				cacheService::saveShopInfo2RedisCacheIfNewer));
+		CacheReadChain<ShopInfo> chain = new CacheReadChain<>(LocalCacheConfiguration.SHOP_INFO_CACHE, available, Arrays.asList(levels));
+		chain.setPromotionListener(shopInfoLoader()::remember);
+		shopInfoLoader().setTopLevel(chain.getTopLevel());
+		return chain;
+	}
+
+	@Bean
+	public SingleFlightLoader<ProductInfo> productInfoLoader() {
+		return new SingleFlightLoader<>(LocalCacheConfiguration.PRODUCT_INFO_CACHE, this::loadProductInfo,
+				followerTimeoutMillis, staleMaxSize, staleTtlSeconds);
+	}
+
+	@Bean
+	public SingleFlightLoader<ShopInfo> shopInfoLoader() {
+		return new SingleFlightLoader<>(LocalCacheConfiguration.SHOP_INFO_CACHE, this::loadShopInfo,
+				followerTimeoutMillis, staleMaxSize, staleTtlSeconds);
+	}
+
+	/**
+	 * 从数据源读取商品信息，并放入缓存重建队列
+	 */
+	private ProductInfo loadProductInfo(Long productId) {
+		// 模拟数据库查询返回的结果
+		ProductInfo productInfo = new GetProductInfoCommand(productId).execute();
+		if (productInfo != null) {
+			RebuildProductCacheQueue.getInstance().putProductInfo(productInfo);
+		}
+		log.debug("缓存都未命中，重建缓存，从数据库重新读取的商品信息={}", productInfo);
+		return productInfo;
+	}
+
+	/**
+	 * 从数据源读取店铺信息，并放入缓存重建队列
+	 */
+	private ShopInfo loadShopInfo(Long shopId) {
+		// 模拟数据库查询返回的结果
+		String shopInfoJSON = "{\"id\": " + shopId + ", \"name\": \"老王的手机店\", \"level\": 5, \"goodCommentRate\":0.99, \"modifiedTime\": \"2017-01-01 12:00:00\"}";
+		ShopInfo shopInfo = JSONObject.parseObject(shopInfoJSON, ShopInfo.class);
+		RebuildShopCacheQueue.getInstance().putShopInfo(shopInfo);
+		log.debug("缓存都未命中，重建缓存，从数据库重新读取的店铺信息={}", shopInfo);
+		return shopInfo;
+	}
+
+}
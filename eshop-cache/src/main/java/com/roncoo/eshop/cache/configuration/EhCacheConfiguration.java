@@ -1,30 +0,0 @@
-package com.roncoo.eshop.cache.configuration;
-
-import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.ehcache.EhCacheCacheManager;
-import org.springframework.cache.ehcache.EhCacheManagerFactoryBean;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
-
-/**
- * EhCache缓存配置管理类
- */
-@Configuration
-@EnableCaching
-public class EhCacheConfiguration {
-
-	@Bean
-	public EhCacheManagerFactoryBean ehCacheManagerFactoryBean() {
-		EhCacheManagerFactoryBean ehCacheManagerFactoryBean = new EhCacheManagerFactoryBean();
-		ehCacheManagerFactoryBean.setConfigLocation(new ClassPathResource("ehcache.xml"));
-		ehCacheManagerFactoryBean.setShared(true);
-		return ehCacheManagerFactoryBean;
-	}
-
-	@Bean
-	public EhCacheCacheManager ehCacheCacheManager(EhCacheManagerFactoryBean ehCacheManagerFactoryBean) {
-		return new EhCacheCacheManager(ehCacheManagerFactoryBean.getObject());
-	}
-
-}
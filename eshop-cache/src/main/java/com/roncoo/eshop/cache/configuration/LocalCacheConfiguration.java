@@ -0,0 +1,118 @@
+package com.roncoo.eshop.cache.configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.roncoo.eshop.cache.model.ProductInfo;
+import com.roncoo.eshop.cache.model.ShopInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地缓存配置管理类
+ * <p>
+ * 基于Caffeine，淘汰策略为W-TinyLFU：新数据先进入一个小的LRU窗口，淘汰时与主区域的候选比较访问频率(频率草图统计)，
+ * 访问频率更高的才能留下；预热、爬虫等一次性扫描的数据访问频率低，不会把热门商品挤出缓存
+ * <p>
+ * 每个缓存区域单独配置：
+ * 1、按估算的占用字节数限制容量，而不是条目数，商品信息大小差异大时内存占用也可控
+ * 2、写入后的过期时间：商品、店铺信息区域是读取链的第一级，一直被访问的数据也必须定期过期，从下一级重新读取；
+ *    数据变更消息只会被一个实例消费，其它实例本地缓存中的旧数据最多保留这么久
+ * 3、最大闲置时间，超时未访问则提前过期，释放不再访问的数据占用的内存
+ * 4、记录命中/未命中/淘汰统计，见 /localCacheStats
+ */
+@Configuration
+@EnableCaching
+public class LocalCacheConfiguration {
+
+	/**
+	 * 商品信息缓存区域
+	 */
+	public static final String PRODUCT_INFO_CACHE = "product_info";
+
+	/**
+	 * 店铺信息缓存区域
+	 */
+	public static final String SHOP_INFO_CACHE = "shop_info";
+
+	/**
+	 * 测试接口使用的缓存区域
+	 */
+	public static final String LOCAL_CACHE = "local";
+
+	@Value("${eshop.cache.local.product-info.max-bytes:67108864}")
+	private long productInfoMaxBytes;
+
+	@Value("${eshop.cache.local.product-info.expire-after-write-seconds:60}")
+	private long productInfoExpireAfterWriteSeconds;
+
+	@Value("${eshop.cache.local.product-info.expire-after-access-seconds:300}")
+	private long productInfoExpireAfterAccessSeconds;
+
+	@Value("${eshop.cache.local.shop-info.max-bytes:16777216}")
+	private long shopInfoMaxBytes;
+
+	@Value("${eshop.cache.local.shop-info.expire-after-write-seconds:60}")
+	private long shopInfoExpireAfterWriteSeconds;
+
+	@Value("${eshop.cache.local.shop-info.expire-after-access-seconds:300}")
+	private long shopInfoExpireAfterAccessSeconds;
+
+	@Bean
+	public CacheManager cacheManager() {
+		SimpleCacheManager cacheManager = new SimpleCacheManager();
+		cacheManager.setCaches(Arrays.asList(
+				newCache(PRODUCT_INFO_CACHE, productInfoMaxBytes, productInfoExpireAfterWriteSeconds, productInfoExpireAfterAccessSeconds),
+				newCache(SHOP_INFO_CACHE, shopInfoMaxBytes, shopInfoExpireAfterWriteSeconds, shopInfoExpireAfterAccessSeconds),
+				newCache(LOCAL_CACHE, 1024 * 1024, 0, 300)));
+		return cacheManager;
+	}
+
+	/**
+	 * 不缓存null，未命中时 @Cacheable 方法需要配置 unless = "#result == null"
+	 *
+	 * @param expireAfterWriteSeconds  写入后的过期时间（秒），0表示不限制
+	 * @param expireAfterAccessSeconds 最大闲置时间（秒），0表示不限制
+	 */
+	private CaffeineCache newCache(String name, long maxBytes, long expireAfterWriteSeconds, long expireAfterAccessSeconds) {
+		Caffeine<Object, Object> builder = Caffeine.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher((Object key, Object value) -> estimateBytes(value))
+				.recordStats();
+		if (expireAfterWriteSeconds > 0) {
+			builder.expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS);
+		}
+		if (expireAfterAccessSeconds > 0) {
+			builder.expireAfterAccess(expireAfterAccessSeconds, TimeUnit.SECONDS);
+		}
+		return new CaffeineCache(name, builder.build(), false);
+	}
+
+	/**
+	 * 估算缓存数据占用的堆内存字节数：对象头和引用按固定值，字符串按每个字符2字节
+	 */
+	static int estimateBytes(Object value) {
+		if (value instanceof ProductInfo) {
+			ProductInfo productInfo = (ProductInfo) value;
+			return 96 + 16 * 3 + sizeOf(productInfo.getName()) + sizeOf(productInfo.getPictureList())
+					+ sizeOf(productInfo.getSpecification()) + sizeOf(productInfo.getService())
+					+ sizeOf(productInfo.getColor()) + sizeOf(productInfo.getSize()) + sizeOf(productInfo.getModifiedTime());
+		}
+		if (value instanceof ShopInfo) {
+			ShopInfo shopInfo = (ShopInfo) value;
+			return 56 + 16 * 3 + sizeOf(shopInfo.getName()) + sizeOf(shopInfo.getModifiedTime());
+		}
+		return 256;
+	}
+
+	private static int sizeOf(String value) {
+		return value == null ? 0 : 40 + value.length() * 2;
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.roncoo.eshop.cache.configuration;
+
+import com.roncoo.eshop.cache.codec.ProductInfoBinaryCodec;
+import com.roncoo.eshop.cache.codec.ShopInfoBinaryCodec;
+import com.roncoo.eshop.cache.model.ProductInfo;
+import com.roncoo.eshop.cache.model.ShopInfo;
+import com.roncoo.eshop.cache.offheap.OffHeapCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 堆外缓存配置，位于堆内本地缓存和Redis之间
+ * <p>
+ * eshop.cache.offheap.enabled：是否启用，默认false；不启用时不分配直接内存
+ * 启用时需要按总容量设置JVM参数 -XX:MaxDirectMemorySize
+ * eshop.cache.offheap.ttl-seconds：写入后的过期时间，限制其它实例更新数据后本实例读到旧数据的时长
+ */
+@Configuration
+public class OffHeapCacheConfiguration {
+
+	@Value("${eshop.cache.offheap.enabled:false}")
+	private boolean enabled;
+
+	@Value("${eshop.cache.offheap.product-info.max-bytes:1073741824}")
+	private long productInfoMaxBytes;
+
+	@Value("${eshop.cache.offheap.shop-info.max-bytes:134217728}")
+	private long shopInfoMaxBytes;
+
+	@Value("${eshop.cache.offheap.slot-bytes:1024}")
+	private int slotBytes;
+
+	@Value("${eshop.cache.offheap.ttl-seconds:300}")
+	private long ttlSeconds;
+
+	@Value("${eshop.cache.redis.codec.lz4-threshold-bytes:512}")
+	private int lz4ThresholdBytes;
+
+	@Bean
+	public OffHeapCache<ProductInfo> productInfoOffHeapCache() {
+		return new OffHeapCache<>("product_info", new ProductInfoBinaryCodec(lz4ThresholdBytes),
+				enabled ? productInfoMaxBytes : 0, slotBytes, ttlSeconds);
+	}
+
+	@Bean
+	public OffHeapCache<ShopInfo> shopInfoOffHeapCache() {
+		return new OffHeapCache<>("shop_info", new ShopInfoBinaryCodec(lz4ThresholdBytes),
+				enabled ? shopInfoMaxBytes : 0, slotBytes, ttlSeconds);
+	}
+
+}
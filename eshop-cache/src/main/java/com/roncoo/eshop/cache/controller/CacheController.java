@@ -1,19 +1,29 @@
 package com.roncoo.eshop.cache.controller;
 
 import com.alibaba.fastjson.JSONObject;
-import com.roncoo.eshop.cache.hystrix.command.GetProductInfoCommand;
+import com.roncoo.eshop.cache.chain.CacheLevel;
+import com.roncoo.eshop.cache.chain.CacheReadChain;
+import com.roncoo.eshop.cache.chain.LatencyHistogram;
+import com.roncoo.eshop.cache.chain.SingleFlightLoader;
 import com.roncoo.eshop.cache.model.ProductInfo;
 import com.roncoo.eshop.cache.model.ShopInfo;
+import com.roncoo.eshop.cache.offheap.OffHeapCache;
 import com.roncoo.eshop.cache.prewarm.CachePrewarmTask;
 import com.roncoo.eshop.cache.service.CacheService;
-import com.roncoo.eshop.cache.task.RebuildProductCacheQueue;
-import com.roncoo.eshop.cache.task.RebuildShopCacheQueue;
+import com.roncoo.eshop.cache.utils.CacheRebuildLock;
+import com.roncoo.eshop.cache.utils.ZookeeperUtils;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 商品详情页面url：http://192.168.11.102/product?requestPath=product&productId=1&shopId=1
@@ -26,14 +36,35 @@ public class CacheController {
     @Resource
     private CacheService cacheService;
 
-    @ApiOperation("测试EhCache写请求")
+    @Resource
+    private CacheManager cacheManager;
+
+    @Resource
+    private OffHeapCache<ProductInfo> productInfoOffHeapCache;
+
+    @Resource
+    private OffHeapCache<ShopInfo> shopInfoOffHeapCache;
+
+    @Resource
+    private CacheReadChain<ProductInfo> productInfoReadChain;
+
+    @Resource
+    private CacheReadChain<ShopInfo> shopInfoReadChain;
+
+    @Resource
+    private SingleFlightLoader<ProductInfo> productInfoLoader;
+
+    @Resource
+    private SingleFlightLoader<ShopInfo> shopInfoLoader;
+
+    @ApiOperation("测试本地缓存写请求")
     @PostMapping("/testPutCache")
     public String testPutCache(ProductInfo productInfo) {
         cacheService.saveLocalCache(productInfo);
         return "success";
     }
 
-    @ApiOperation("测试EhCache读请求")
+    @ApiOperation("测试本地缓存读请求")
     @GetMapping("/testGetCache")
     public ProductInfo testGetCache(Long id) {
         return cacheService.getLocalCache(id);
@@ -43,56 +74,40 @@ public class CacheController {
     /* ============================================================================  */
 
 
-    @ApiOperation("商品信息查询")
+    @ApiOperation(value = "商品信息查询", notes = "按读取链逐级查询(默认 本地缓存 -> 堆外缓存 -> Redis)，命中后回填上层；都未命中则回源并重建缓存")
     @GetMapping("/getProductInfo")
     public ProductInfo getProductInfo(Long productId) {
-        ProductInfo productInfo;
-        // 1 先查询Redis缓存
-        productInfo = cacheService.getProductInfoFromRedisCache(productId);
-        log.debug("从redis中获取到的商品信息={}", productInfo);
-
-        // 2 未命中Redis缓存，再查询本地ehcache缓存
-        if (productInfo == null) {
-            productInfo = cacheService.getProductInfoFromLocalCache(productId);
-            log.debug("从ehcache中获取到的商品信息={}", productInfo);
+        // 1 按读取链逐级查询缓存
+        ProductInfo productInfo = productInfoReadChain.get(productId);
+        if (productInfo != null) {
+            log.debug("从缓存中获取到的商品信息={}", productInfo);
+            return productInfo;
         }
 
-        // 3 若缓存都未命中，则需要从数据库重新读数据，并重建缓存
-        if (productInfo == null) {
-            // 模拟数据库查询返回的结果
-            new GetProductInfoCommand(productId).execute();
-            // 放入缓存重建队列
-            RebuildProductCacheQueue.getInstance().putProductInfo(productInfo);
-            log.debug("缓存都未命中，重建缓存，从数据库重新读取的商品信息={}", productInfo);
-        }
+        // 2 若缓存都未命中，则需要从数据库重新读数据，并重建缓存；同一个商品同时只回源一次
+        return productInfoLoader.load(productId);
+    }
 
-        return productInfo;
+    @ApiOperation(value = "商品信息批量查询", notes = "按读取链逐级批量查询，每一级只查询上一级未命中的商品(Redis每个集群节点一次网络往返)，命中后回填上层；都未命中的商品不在结果中")
+    @GetMapping("/getProductInfos")
+    public Map<Long, ProductInfo> getProductInfos(@RequestParam List<Long> productIds) {
+        Map<Long, ProductInfo> productInfos = productInfoReadChain.getAll(productIds);
+        log.debug("从缓存中批量获取到商品信息{}/{}个", productInfos.size(), productIds.size());
+        return productInfos;
     }
 
-    @ApiOperation("店铺信息查询")
+    @ApiOperation(value = "店铺信息查询", notes = "按读取链逐级查询(默认 本地缓存 -> 堆外缓存 -> Redis)，命中后回填上层；都未命中则回源并重建缓存")
     @GetMapping("/getShopInfo")
     public ShopInfo getShopInfo(Long shopId) {
-        ShopInfo shopInfo;
-        // 1 先查询Redis缓存
-        shopInfo = cacheService.getShopInfoFromRedisCache(shopId);
-        log.debug("从redis中获取到的店铺信息={}", shopInfo);
-
-        // 2 未命中Redis缓存，再查询本地ehcache缓存
-        if (shopInfo == null) {
-            shopInfo = cacheService.getShopInfoFromLocalCache(shopId);
-            log.debug("从ehcache中获取到的店铺信息={}", shopInfo);
+        // 1 按读取链逐级查询缓存
+        ShopInfo shopInfo = shopInfoReadChain.get(shopId);
+        if (shopInfo != null) {
+            log.debug("从缓存中获取到的店铺信息={}", shopInfo);
+            return shopInfo;
         }
 
-        // 3 若缓存都未命中，则需要从数据库重新读数据，并重建缓存
-        if (shopInfo == null) {
-            // 模拟数据库查询返回的结果
-            String shopInfoJSON = "{\"id\": " + shopId + ", \"name\": \"老王的手机店\", \"level\": 5, \"goodCommentRate\":0.99, \"modifiedTime\": \"2017-01-01 12:00:00\"}";
-            shopInfo = JSONObject.parseObject(shopInfoJSON, ShopInfo.class);
-            // 放入缓存重建队列
-            RebuildShopCacheQueue.getInstance().putShopInfo(shopInfo);
-            log.debug("缓存都未命中，重建缓存，从数据库重新读取的店铺信息={}", shopInfo);
-        }
-        return shopInfo;
+        // 2 若缓存都未命中，则需要从数据库重新读数据，并重建缓存；同一个店铺同时只回源一次
+        return shopInfoLoader.load(shopId);
     }
 
 
@@ -104,4 +119,101 @@ public class CacheController {
         return "success";
     }
 
+    @ApiOperation(value = "zookeeper分布式锁等待统计", notes = "获取成功/超时次数、平均和最长等待时间（毫秒）")
+    @GetMapping("/zkLockMetrics")
+    public ZookeeperUtils.LockMetrics zkLockMetrics() {
+        return ZookeeperUtils.getInstance().getLockMetrics();
+    }
+
+    @ApiOperation(value = "缓存重建两级锁统计", notes = "实际获取zk锁的次数、复用已持有zk锁的次数")
+    @GetMapping("/cacheRebuildLockMetrics")
+    public JSONObject cacheRebuildLockMetrics() {
+        CacheRebuildLock rebuildLock = CacheRebuildLock.getInstance();
+        JSONObject metrics = new JSONObject();
+        metrics.put("zkAcquired", rebuildLock.getZkAcquiredCount());
+        metrics.put("reused", rebuildLock.getReusedCount());
+        return metrics;
+    }
+
+    @ApiOperation(value = "本地缓存统计", notes = "每个缓存区域的命中/未命中次数、命中率、淘汰次数和淘汰的估算字节数、当前条目数和估算字节数")
+    @GetMapping("/localCacheStats")
+    public JSONObject localCacheStats() {
+        JSONObject result = new JSONObject();
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (!(cache instanceof CaffeineCache)) {
+                continue;
+            }
+            com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+            CacheStats stats = nativeCache.stats();
+            JSONObject region = new JSONObject();
+            region.put("hitCount", stats.hitCount());
+            region.put("missCount", stats.missCount());
+            region.put("hitRate", stats.hitRate());
+            region.put("evictionCount", stats.evictionCount());
+            region.put("evictionBytes", stats.evictionWeight());
+            region.put("size", nativeCache.estimatedSize());
+            nativeCache.policy().eviction().ifPresent(eviction ->
+                    eviction.weightedSize().ifPresent(bytes -> region.put("bytes", bytes)));
+            result.put(name, region);
+        }
+        return result;
+    }
+
+    @ApiOperation(value = "堆外缓存统计", notes = "每个缓存区域是否启用、命中/未命中次数、淘汰次数、超过槽大小未缓存的次数、过期删除的次数、当前条目数和最大条目数")
+    @GetMapping("/offHeapCacheStats")
+    public JSONObject offHeapCacheStats() {
+        JSONObject result = new JSONObject();
+        for (OffHeapCache<?> offHeapCache : new OffHeapCache<?>[]{productInfoOffHeapCache, shopInfoOffHeapCache}) {
+            JSONObject region = new JSONObject();
+            region.put("enabled", offHeapCache.isEnabled());
+            region.put("hitCount", offHeapCache.getHitCount());
+            region.put("missCount", offHeapCache.getMissCount());
+            region.put("evictionCount", offHeapCache.getEvictionCount());
+            region.put("tooLargeCount", offHeapCache.getTooLargeCount());
+            region.put("expiredCount", offHeapCache.getExpiredCount());
+            region.put("size", offHeapCache.size());
+            region.put("capacity", offHeapCache.capacity());
+            result.put(offHeapCache.getName(), region);
+        }
+        return result;
+    }
+
+    @ApiOperation(value = "缓存读取链统计", notes = "每条读取链各级的命中/未命中次数，单个读取和批量读取耗时的平均值、p50、p99、最大值（微秒），以及回源次数、合并次数、等待超时次数、返回旧数据次数")
+    @GetMapping("/cacheReadChainStats")
+    public JSONObject cacheReadChainStats() {
+        JSONObject result = new JSONObject();
+        CacheReadChain<?>[] chains = {productInfoReadChain, shopInfoReadChain};
+        SingleFlightLoader<?>[] loaders = {productInfoLoader, shopInfoLoader};
+        for (int i = 0; i < chains.length; i++) {
+            CacheReadChain<?> chain = chains[i];
+            JSONObject levels = new JSONObject(true);
+            for (CacheLevel<?> level : chain.getLevels()) {
+                LatencyHistogram latency = level.getLatency();
+                JSONObject stats = new JSONObject();
+                stats.put("hitCount", level.getHitCount());
+                stats.put("missCount", level.getMissCount());
+                stats.put("meanMicros", latency.getMeanMicros());
+                stats.put("p50Micros", latency.getPercentileMicros(50));
+                stats.put("p99Micros", latency.getPercentileMicros(99));
+                stats.put("maxMicros", latency.getMaxMicros());
+                LatencyHistogram batchLatency = level.getBatchLatency();
+                stats.put("batchCount", batchLatency.getCount());
+                stats.put("batchMeanMicros", batchLatency.getMeanMicros());
+                stats.put("batchP50Micros", batchLatency.getPercentileMicros(50));
+                stats.put("batchP99Micros", batchLatency.getPercentileMicros(99));
+                stats.put("batchMaxMicros", batchLatency.getMaxMicros());
+                levels.put(level.getName(), stats);
+            }
+            JSONObject origin = new JSONObject();
+            origin.put("loadCount", loaders[i].getLoadCount());
+            origin.put("coalescedCount", loaders[i].getCoalescedCount());
+            origin.put("timeoutCount", loaders[i].getTimeoutCount());
+            origin.put("staleServedCount", loaders[i].getStaleServedCount());
+            levels.put("origin", origin);
+            result.put(chain.getName(), levels);
+        }
+        return result;
+    }
+
 }
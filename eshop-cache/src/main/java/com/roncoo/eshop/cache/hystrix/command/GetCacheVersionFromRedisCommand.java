@@ -0,0 +1,38 @@
+package com.roncoo.eshop.cache.hystrix.command;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.roncoo.eshop.cache.utils.RedisVersionScript;
+import com.roncoo.eshop.cache.utils.SpringContextUtils;
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * 从Redis中读取缓存数据的版本号，只读取数据旁边的版本号key，不读取和反序列化缓存数据
+ * <p>
+ * 版本号key不存在(没有缓存或旧版本写入的数据)时返回null，由调用方决定是否读取数据兼容比较
+ */
+public class GetCacheVersionFromRedisCommand extends HystrixCommand<Long> {
+
+    private String key;
+
+    public GetCacheVersionFromRedisCommand(String key) {
+        super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("RedisGroup"))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withExecutionTimeoutInMilliseconds(100)          //超时时长
+                        .withCircuitBreakerRequestVolumeThreshold(1000)   //设置一个滑动窗口(rolling window)中，最少要有多少个请求才启用熔断器
+                        .withCircuitBreakerErrorThresholdPercentage(70)   //设置异常请求量的百分比，当异常请求达到这个百分比时触发断路
+                        .withCircuitBreakerSleepWindowInMilliseconds(60 * 1000))  //设置在断路之后，需要在多长时间内直接reject请求，然后在这段时间之后再重新变为half-open状态，尝试允许请求通过以及自动恢复
+        );
+        this.key = key;
+    }
+
+    @Override
+    protected Long run() throws Exception {
+        JedisCluster jedisCluster = (JedisCluster) SpringContextUtils.getBean("JedisClusterFactory");
+        String version = jedisCluster.get(RedisVersionScript.versionKey(key));
+        return StringUtils.isNumeric(version) ? Long.valueOf(version) : null;
+    }
+
+}
@@ -1,14 +1,15 @@
 package com.roncoo.eshop.cache.hystrix.command;
 
-import com.alibaba.fastjson.JSONObject;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandProperties;
+import com.roncoo.eshop.cache.codec.CacheCodec;
 import com.roncoo.eshop.cache.model.ProductInfo;
 import com.roncoo.eshop.cache.utils.SpringContextUtils;
-import org.apache.commons.lang3.StringUtils;
 import redis.clients.jedis.JedisCluster;
 
+import java.nio.charset.StandardCharsets;
+
 public class GetProductInfoFromRedisCacheCommand extends HystrixCommand<ProductInfo> {
 
     private Long productId;
@@ -27,10 +28,11 @@ public class GetProductInfoFromRedisCacheCommand extends HystrixCommand<ProductI
     @Override
     protected ProductInfo run() throws Exception {
         JedisCluster jedisCluster = (JedisCluster) SpringContextUtils.getBean("JedisClusterFactory");
+        @SuppressWarnings("unchecked")
+        CacheCodec<ProductInfo> codec = (CacheCodec<ProductInfo>) SpringContextUtils.getBean("productInfoCodec");
         String key = "product_info_" + productId;
-        String json = jedisCluster.get(key);
-        return (StringUtils.isBlank(json) || StringUtils.equalsIgnoreCase(json, "null")) ? null :
-                JSONObject.parseObject(json, ProductInfo.class);
+        // 按字节读取，由编解码器区分二进制和json格式
+        return codec.decode(jedisCluster.get(key.getBytes(StandardCharsets.UTF_8)));
     }
 
 }
@@ -1,14 +1,15 @@
 package com.roncoo.eshop.cache.hystrix.command;
 
-import com.alibaba.fastjson.JSONObject;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandProperties;
+import com.roncoo.eshop.cache.codec.CacheCodec;
 import com.roncoo.eshop.cache.model.ShopInfo;
 import com.roncoo.eshop.cache.utils.SpringContextUtils;
-import org.apache.commons.lang3.StringUtils;
 import redis.clients.jedis.JedisCluster;
 
+import java.nio.charset.StandardCharsets;
+
 public class GetShopInfoFromRedisCacheCommand extends HystrixCommand<ShopInfo> {
 
     private Long shopId;
@@ -27,10 +28,11 @@ public class GetShopInfoFromRedisCacheCommand extends HystrixCommand<ShopInfo> {
     @Override
     protected ShopInfo run() throws Exception {
         JedisCluster jedisCluster = (JedisCluster) SpringContextUtils.getBean("JedisClusterFactory");
+        @SuppressWarnings("unchecked")
+        CacheCodec<ShopInfo> codec = (CacheCodec<ShopInfo>) SpringContextUtils.getBean("shopInfoCodec");
         String key = "shop_info_" + shopId;
-        String json = jedisCluster.get(key);
-        return (StringUtils.isBlank(json) || StringUtils.equalsIgnoreCase(json, "null")) ? null :
-                JSONObject.parseObject(json, ShopInfo.class);
+        // 按字节读取，由编解码器区分二进制和json格式
+        return codec.decode(jedisCluster.get(key.getBytes(StandardCharsets.UTF_8)));
     }
 
 }
@@ -0,0 +1,55 @@
+package com.roncoo.eshop.cache.hystrix.command;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.roncoo.eshop.cache.codec.CacheCodec;
+import com.roncoo.eshop.cache.model.ShopInfo;
+import com.roncoo.eshop.cache.utils.RedisClusterPipeline;
+import com.roncoo.eshop.cache.utils.SpringContextUtils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 从Redis中批量获取店铺信息，按节点分组pipeline读取，见 {@link RedisClusterPipeline}
+ * <p>
+ * 返回读取到的部分结果，Redis中没有或读取失败的id不在结果中
+ */
+public class GetShopInfosFromRedisCacheCommand extends HystrixCommand<Map<Long, ShopInfo>> {
+
+    private Collection<Long> shopIds;
+
+    public GetShopInfosFromRedisCacheCommand(Collection<Long> shopIds) {
+        super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("RedisGroup"))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withExecutionTimeoutInMilliseconds(300)          //超时时长，批量读取各节点并行执行，比单个读取稍长
+                        .withCircuitBreakerRequestVolumeThreshold(1000)   //设置一个滑动窗口(rolling window)中，最少要有多少个请求才启用熔断器
+                        .withCircuitBreakerErrorThresholdPercentage(70)   //设置异常请求量的百分比，当异常请求达到这个百分比时触发断路
+                        .withCircuitBreakerSleepWindowInMilliseconds(60 * 1000))  //设置在断路之后，需要在多长时间内直接reject请求，然后在这段时间之后再重新变为half-open状态，尝试允许请求通过以及自动恢复
+        );
+        this.shopIds = shopIds;
+    }
+
+    @Override
+    protected Map<Long, ShopInfo> run() throws Exception {
+        @SuppressWarnings("unchecked")
+        CacheCodec<ShopInfo> codec = (CacheCodec<ShopInfo>) SpringContextUtils.getBean("shopInfoCodec");
+        Map<String, Long> idsByKey = new LinkedHashMap<>();
+        for (Long id : shopIds) {
+            idsByKey.put("shop_info_" + id, id);
+        }
+        Map<String, byte[]> values = RedisClusterPipeline.getInstance().get(idsByKey.keySet());
+        Map<Long, ShopInfo> result = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            ShopInfo shopInfo = codec.decode(entry.getValue());
+            if (shopInfo != null) {
+                result.put(idsByKey.get(entry.getKey()), shopInfo);
+            }
+        }
+        return result;
+    }
+
+}
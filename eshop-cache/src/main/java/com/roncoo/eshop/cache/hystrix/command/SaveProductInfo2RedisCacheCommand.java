@@ -1,18 +1,29 @@
 package com.roncoo.eshop.cache.hystrix.command;
 
-import com.alibaba.fastjson.JSONObject;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandProperties;
+import com.roncoo.eshop.cache.codec.CacheCodec;
 import com.roncoo.eshop.cache.model.ProductInfo;
+import com.roncoo.eshop.cache.utils.RedisVersionScript;
 import com.roncoo.eshop.cache.utils.SpringContextUtils;
 import redis.clients.jedis.JedisCluster;
 
+/**
+ * 保存商品信息到Redis，数据和版本号通过lua脚本一次写入
+ * <p>
+ * onlyIfNewer为true时在Redis中原子地比较版本号，已有更新的版本则不写入，不需要分布式锁；返回是否已写入
+ */
 public class SaveProductInfo2RedisCacheCommand extends HystrixCommand<Boolean> {
 
     private ProductInfo productInfo;
+    private boolean onlyIfNewer;
 
     public SaveProductInfo2RedisCacheCommand(ProductInfo productInfo) {
+        this(productInfo, false);
+    }
+
+    public SaveProductInfo2RedisCacheCommand(ProductInfo productInfo, boolean onlyIfNewer) {
         super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("RedisGroup"))
                 .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
                         .withExecutionTimeoutInMilliseconds(100)          //超时时长
@@ -21,14 +32,18 @@ public class SaveProductInfo2RedisCacheCommand extends HystrixCommand<Boolean> {
                         .withCircuitBreakerSleepWindowInMilliseconds(60 * 1000))  //设置在断路之后，需要在多长时间内直接reject请求，然后在这段时间之后再重新变为half-open状态，尝试允许请求通过以及自动恢复
         );
         this.productInfo = productInfo;
+        this.onlyIfNewer = onlyIfNewer;
     }
 
     @Override
     protected Boolean run() throws Exception {
         JedisCluster jedisCluster = (JedisCluster) SpringContextUtils.getBean("JedisClusterFactory");
+        @SuppressWarnings("unchecked")
+        CacheCodec<ProductInfo> codec = (CacheCodec<ProductInfo>) SpringContextUtils.getBean("productInfoCodec");
         String key = "product_info_" + productInfo.getId();
-        jedisCluster.set(key, JSONObject.toJSONString(productInfo));
-        return true;
+        long version = productInfo.getVersion();
+        return RedisVersionScript.setIfNewer(jedisCluster, key, codec.encode(productInfo), version, !onlyIfNewer,
+                bytes -> codec.decode(bytes).getVersion());
     }
 
 }
@@ -4,14 +4,12 @@ import com.alibaba.fastjson.JSONObject;
 import com.roncoo.eshop.cache.model.ProductInfo;
 import com.roncoo.eshop.cache.model.ShopInfo;
 import com.roncoo.eshop.cache.service.CacheService;
-import com.roncoo.eshop.cache.utils.ZookeeperUtils;
+import com.roncoo.eshop.cache.utils.CacheRebuildLock;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 /**
  * Kafka消息监听器
@@ -26,9 +24,6 @@ import java.util.Date;
 public class KafkaConsumer {
 
     public final static String CACHE_TOPIC = "cache-message";
-    private final static ThreadLocal<SimpleDateFormat> DATE_TIME_FORMATTER = ThreadLocal.withInitial(
-            () -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-    );
 
     @Resource
     private CacheService cacheService;
@@ -65,11 +60,11 @@ public class KafkaConsumer {
 
         // 调用商品信息服务的接口，例如：getProductInfo?productId=1
         // 商品信息服务一般来说会去查询数据库，获取此productId的商品信息，然后返回回来
-        // modifiedTime字段是缓存版本号标识，用于结合分布式锁解决并发重建缓存冲突问题
+        // version字段是缓存版本号(毫秒时间戳)，用于结合分布式锁解决并发重建缓存冲突问题；没有version的旧数据由modifiedTime转换
         String productInfoJSON = "{\"id\": 2, \"name\": \"iphone7手机\", \"price\": 5599, \"pictureList\":\"a.jpg,b.jpg\", \"specification\": \"iphone7的规格\", \"service\": \"iphone7的售后服务\", \"color\": \"红色,白色,黑色\", \"size\": \"5.5\", \"shopId\": 1, \"modifiedTime\": \"2017-01-01 12:00:00\"}";
         ProductInfo productInfo = JSONObject.parseObject(productInfoJSON, ProductInfo.class);
         cacheService.saveProductInfo2LocalCache(productInfo);
-        log.debug("商品信息已保存到本地ehcache缓存，productId={}", productId);
+        log.debug("商品信息已保存到本地缓存，productId={}", productId);
 
         // 先获取分布式锁，再比对缓存版本号，若是最新数据才放入Redis缓存
         this.saveProductInfoRedisCache(productInfo);
@@ -83,28 +78,33 @@ public class KafkaConsumer {
      */
     private void saveProductInfoRedisCache(ProductInfo productInfo) {
         Long productId = productInfo.getId();
-        ZookeeperUtils zkUtils = ZookeeperUtils.getInstance();
+        CacheRebuildLock rebuildLock = CacheRebuildLock.getInstance();
         try {
-            zkUtils.acquireDistributedLock(this.getLockPath(productId, 0));
-            // 比较当前数据的时间版本比已有数据的时间版本是新还是旧
-            ProductInfo oldProductInfo = cacheService.getProductInfoFromRedisCache(productId);
-            if (oldProductInfo != null && oldProductInfo.getModifiedTime() != null) {
-                SimpleDateFormat sdf = DATE_TIME_FORMATTER.get();
-                Date date = sdf.parse(productInfo.getModifiedTime());
-                Date oldDate = sdf.parse(oldProductInfo.getModifiedTime());
-                if (date.before(oldDate)) {
-                    log.debug("缓存版本号比对结果：current date[{}] is before existed date[{}]，不更新Redis缓存", productInfo.getModifiedTime(), oldDate);
-                    return;
-                }
-                log.debug("缓存版本号比对结果：current date[{}] is after existed date[{}]，更新Redis缓存", productInfo.getModifiedTime(), oldDate);
+            // cas模式：在Redis中原子比较版本号并写入，一次网络往返，不需要分布式锁
+            if (cacheService.isRedisCasWrite()) {
+                boolean saved = cacheService.saveProductInfo2RedisCacheIfNewer(productInfo);
+                log.debug("商品信息{}保存到Redis，productId={}", saved ? "已" : "版本较旧，未", productId);
+                return;
             }
+            if (!rebuildLock.lock(this.getLockPath(productId, 0))) {
+                log.warn("获取分布式锁超时，商品信息未保存到Redis，productId={}", productId);
+                return;
+            }
+            // 比较当前数据的版本号比已有数据的版本号是新还是旧，只读取redis中的版本号，不读取和解析已有数据
+            long version = productInfo.getVersion();
+            long oldVersion = cacheService.getProductInfoVersionFromRedisCache(productId);
+            if (version < oldVersion) {
+                log.debug("缓存版本号比对结果：current version[{}] is before existed version[{}]，不更新Redis缓存", version, oldVersion);
+                return;
+            }
+            log.debug("缓存版本号比对结果：current version[{}] is not before existed version[{}]，更新Redis缓存", version, oldVersion);
             // 放入Redis缓存
             cacheService.saveProductInfo2RedisCache(productInfo);
             log.debug("商品信息已保存到Redis，productId={}", productId);
         } catch (Exception e) {
             log.error("商品信息保存到Redis失败", e);
         } finally {
-            zkUtils.releaseDistributedLock(this.getLockPath(productId, 0));
+            rebuildLock.unlock(this.getLockPath(productId, 0));
         }
     }
 
@@ -122,7 +122,7 @@ public class KafkaConsumer {
         String shopInfoJSON = "{\"id\": 2, \"name\": \"老王的手机店\", \"level\": 5, \"goodCommentRate\":0.99}, \"modifiedTime\": \"2017-01-01 12:00:00\"}";
         ShopInfo shopInfo = JSONObject.parseObject(shopInfoJSON, ShopInfo.class);
         cacheService.saveShopInfo2LocalCache(shopInfo);
-        log.debug("店铺信息已保存到本地ehcache缓存，shopId={}", shopId);
+        log.debug("店铺信息已保存到本地缓存，shopId={}", shopId);
         // 先获取分布式锁，再比对缓存版本号，若是最新数据才放入Redis缓存
         this.saveShopInfoRedisCache(shopInfo);
     }
@@ -135,28 +135,33 @@ public class KafkaConsumer {
      */
     private void saveShopInfoRedisCache(ShopInfo shopInfo) {
         Long shopId = shopInfo.getId();
-        ZookeeperUtils zkUtils = ZookeeperUtils.getInstance();
+        CacheRebuildLock rebuildLock = CacheRebuildLock.getInstance();
         try {
-            zkUtils.acquireDistributedLock(this.getLockPath(shopId, 1));
-            // 比较当前数据的时间版本比已有数据的时间版本是新还是旧
-            ShopInfo oldShopInfo = cacheService.getShopInfoFromRedisCache(shopId);
-            if (oldShopInfo != null && oldShopInfo.getModifiedTime() != null) {
-                SimpleDateFormat sdf = DATE_TIME_FORMATTER.get();
-                Date date = sdf.parse(shopInfo.getModifiedTime());
-                Date oldDate = sdf.parse(oldShopInfo.getModifiedTime());
-                if (date.before(oldDate)) {
-                    log.debug("缓存版本号比对结果：current date[{}] is before existed date[{}]，不更新Redis缓存", shopInfo.getModifiedTime(), oldDate);
-                    return;
-                }
-                log.debug("缓存版本号比对结果：current date[{}] is after existed date[{}]，更新Redis缓存", shopInfo.getModifiedTime(), oldDate);
+            // cas模式：在Redis中原子比较版本号并写入，一次网络往返，不需要分布式锁
+            if (cacheService.isRedisCasWrite()) {
+                boolean saved = cacheService.saveShopInfo2RedisCacheIfNewer(shopInfo);
+                log.debug("店铺信息{}保存到Redis，shopId={}", saved ? "已" : "版本较旧，未", shopId);
+                return;
+            }
+            if (!rebuildLock.lock(this.getLockPath(shopId, 1))) {
+                log.warn("获取分布式锁超时，店铺信息未保存到Redis，shopId={}", shopId);
+                return;
+            }
+            // 比较当前数据的版本号比已有数据的版本号是新还是旧，只读取redis中的版本号，不读取和解析已有数据
+            long version = shopInfo.getVersion();
+            long oldVersion = cacheService.getShopInfoVersionFromRedisCache(shopId);
+            if (version < oldVersion) {
+                log.debug("缓存版本号比对结果：current version[{}] is before existed version[{}]，不更新Redis缓存", version, oldVersion);
+                return;
             }
+            log.debug("缓存版本号比对结果：current version[{}] is not before existed version[{}]，更新Redis缓存", version, oldVersion);
             // 放入Redis缓存
             cacheService.saveShopInfo2RedisCache(shopInfo);
             log.debug("店铺信息已保存到Redis，shopId={}", shopId);
         } catch (Exception e) {
             log.error("店铺信息保存到Redis失败", e);
         } finally {
-            zkUtils.releaseDistributedLock(this.getLockPath(shopId, 1));
+            rebuildLock.unlock(this.getLockPath(shopId, 1));
         }
     }
 
@@ -1,5 +1,6 @@
 package com.roncoo.eshop.cache.model;
 
+import com.roncoo.eshop.cache.utils.CacheVersionUtils;
 import lombok.Data;
 
 /**
@@ -13,6 +14,26 @@ public class ShopInfo {
 	private Integer level;
 	private Double goodCommentRate;
 
-	//缓存版本号标识，用于结合分布式锁解决并发重建缓存冲突问题
+	//修改时间，旧版本的缓存数据只有该字段，用于兼容读取版本号
 	private String modifiedTime;
+
+	//缓存版本号(毫秒时间戳)，用于结合分布式锁解决并发重建缓存冲突问题；旧数据在反序列化时由 modifiedTime 转换一次
+	private long version;
+
+	/**
+	 * 兼容只有 modifiedTime 的旧数据：version未设置时由 modifiedTime 转换，之后读取版本号不再解析时间
+	 */
+	public void setModifiedTime(String modifiedTime) {
+		this.modifiedTime = modifiedTime;
+		if (version <= 0) {
+			this.version = CacheVersionUtils.versionOf(modifiedTime);
+		}
+	}
+
+	/**
+	 * @param version 不大于0(没有版本号)时由 modifiedTime 转换
+	 */
+	public void setVersion(long version) {
+		this.version = version > 0 ? version : CacheVersionUtils.versionOf(modifiedTime);
+	}
 }
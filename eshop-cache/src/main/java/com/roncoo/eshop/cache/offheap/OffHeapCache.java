@@ -0,0 +1,359 @@
+package com.roncoo.eshop.cache.offheap;
+
+import com.roncoo.eshop.cache.codec.BinaryCacheCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 堆外缓存：按id缓存编码后的数据，数据保存在直接内存(DirectByteBuffer)中，不在GC扫描范围内
+ * <p>
+ * 1、内存分成多个段，按id的hash选择段，每个段一把锁；段内按固定大小的槽(slot)分配，一个槽保存一条数据：[长度(4字节)][数据]
+ * 2、每个段有自己的索引：开放寻址(线性探测)的hash表，id和槽号都是基本类型数组，数百万条数据也不会产生大量对象
+ * 3、淘汰使用clock算法：每个槽有一个访问标记，读写时设置；没有空闲槽时指针循环扫描，清除有标记的槽的标记，淘汰第一个没有标记的槽
+ * 4、编码后超过槽大小的数据不缓存，由上层继续访问Redis
+ * 5、每个槽记录写入时间，超过过期时间的数据读取时按未命中处理并删除，避免一直被访问的旧数据不会被淘汰、反复回填到上层缓存
+ * <p>
+ * 总容量为0时不分配内存，读取总是返回null，写入忽略
+ */
+@Slf4j
+public class OffHeapCache<T> {
+
+    /**
+     * 单个段的最大字节数，DirectByteBuffer的容量不能超过int范围
+     */
+    private final static long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final static int MIN_SEGMENTS = 16;
+
+    private final String name;
+    private final BinaryCacheCodec<T> codec;
+    private final int slotBytes;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder tooLarge = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxBytes   数据区总字节数，0表示不启用
+     * @param slotBytes  每个槽的字节数，编码后超过 slotBytes-4 的数据不缓存
+     * @param ttlSeconds 写入后的过期时间（秒），0表示不过期
+     */
+    public OffHeapCache(String name, BinaryCacheCodec<T> codec, long maxBytes, int slotBytes, long ttlSeconds) {
+        this(name, codec, maxBytes, slotBytes, ttlSeconds, System::currentTimeMillis);
+    }
+
+    OffHeapCache(String name, BinaryCacheCodec<T> codec, long maxBytes, int slotBytes, long ttlSeconds, LongSupplier clock) {
+        this.name = name;
+        this.codec = codec;
+        this.slotBytes = slotBytes;
+        long totalSlots = maxBytes / slotBytes;
+        if (totalSlots <= 0) {
+            this.segments = new Segment[0];
+            return;
+        }
+        int segmentCount = MIN_SEGMENTS;
+        while (maxBytes / segmentCount > MAX_SEGMENT_BYTES) {
+            segmentCount <<= 1;
+        }
+        int slotsPerSegment = (int) Math.max(1, totalSlots / segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(slotsPerSegment, slotBytes, TimeUnit.SECONDS.toMillis(ttlSeconds), clock, expirations);
+        }
+        log.info("堆外缓存[{}]已分配：{}个段，每段{}个槽，槽大小{}字节，过期时间{}秒", name, segmentCount, slotsPerSegment, slotBytes, ttlSeconds);
+    }
+
+    /**
+     * @return 缓存的数据，没有时返回null
+     */
+    public T get(long id) {
+        if (segments.length == 0) {
+            return null;
+        }
+        byte[] bytes = segmentOf(id).get(id);
+        if (bytes == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return codec.decode(bytes);
+    }
+
+    /**
+     * 写入缓存，已有数据时覆盖；编码后超过槽大小时不缓存并删除旧数据
+     */
+    public void put(long id, T value) {
+        if (segments.length == 0) {
+            return;
+        }
+        byte[] bytes = codec.encode(value);
+        Segment segment = segmentOf(id);
+        if (bytes.length > slotBytes - 4) {
+            tooLarge.increment();
+            segment.remove(id);
+            return;
+        }
+        if (segment.put(id, bytes)) {
+            evictions.increment();
+        }
+    }
+
+    public void remove(long id) {
+        if (segments.length > 0) {
+            segmentOf(id).remove(id);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return segments.length > 0;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return 读取时已过期被删除的次数
+     */
+    public long getExpiredCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return 因超过槽大小未缓存的次数
+     */
+    public long getTooLargeCount() {
+        return tooLarge.sum();
+    }
+
+    /**
+     * @return 当前条目数
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return 总槽数，即最多缓存的条目数
+     */
+    public long capacity() {
+        return segments.length == 0 ? 0 : (long) segments.length * segments[0].slots;
+    }
+
+    private Segment segmentOf(long id) {
+        return segments[(int) (hash(id) >>> 40) & (segments.length - 1)];
+    }
+
+    static long hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * 一个段：直接内存数据区 + 槽元数据 + 索引，所有操作在段锁内执行
+     */
+    static final class Segment {
+
+        private final static byte EMPTY = 0;
+        private final static byte USED = 1;
+        private final static byte REFERENCED = 2;
+
+        private final ByteBuffer data;
+        private final int slotBytes;
+        private final int slots;
+
+        // 槽状态、槽中数据的id及写入时间
+        private final byte[] slotStates;
+        private final long[] slotIds;
+        private final long[] slotWriteMillis;
+        // 空闲槽栈
+        private final int[] freeSlots;
+        private int freeCount;
+        // clock指针
+        private int hand;
+
+        // 索引：id -> 槽号，槽号-1表示空位
+        private final long[] indexIds;
+        private final int[] indexSlots;
+        private final int indexMask;
+
+        // 过期时间，0表示不过期
+        private final long ttlMillis;
+        private final LongSupplier clock;
+        private final LongAdder expirations;
+
+        Segment(int slots, int slotBytes, long ttlMillis, LongSupplier clock, LongAdder expirations) {
+            this.slots = slots;
+            this.slotBytes = slotBytes;
+            this.ttlMillis = ttlMillis;
+            this.clock = clock;
+            this.expirations = expirations;
+            this.data = ByteBuffer.allocateDirect(slots * slotBytes);
+            this.slotStates = new byte[slots];
+            this.slotIds = new long[slots];
+            this.slotWriteMillis = new long[slots];
+            this.freeSlots = new int[slots];
+            for (int i = 0; i < slots; i++) {
+                freeSlots[i] = slots - 1 - i;
+            }
+            this.freeCount = slots;
+            // 负载因子不超过0.5
+            int indexCapacity = Integer.highestOneBit(Math.max(2, slots) * 2 - 1) << 1;
+            this.indexIds = new long[indexCapacity];
+            this.indexSlots = new int[indexCapacity];
+            Arrays.fill(indexSlots, -1);
+            this.indexMask = indexCapacity - 1;
+        }
+
+        synchronized byte[] get(long id) {
+            int index = find(id);
+            if (index < 0) {
+                return null;
+            }
+            int slot = indexSlots[index];
+            if (ttlMillis > 0 && clock.getAsLong() - slotWriteMillis[slot] >= ttlMillis) {
+                free(index, slot);
+                expirations.increment();
+                return null;
+            }
+            slotStates[slot] = REFERENCED;
+            int offset = slot * slotBytes;
+            int length = data.getInt(offset);
+            byte[] bytes = new byte[length];
+            data.position(offset + 4);
+            data.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * @return 是否淘汰了其它数据
+         */
+        synchronized boolean put(long id, byte[] bytes) {
+            boolean evicted = false;
+            int index = find(id);
+            int slot;
+            if (index >= 0) {
+                slot = indexSlots[index];
+            } else {
+                if (freeCount > 0) {
+                    slot = freeSlots[--freeCount];
+                } else {
+                    slot = evict();
+                    evicted = true;
+                }
+                insert(id, slot);
+                slotIds[slot] = id;
+            }
+            slotStates[slot] = REFERENCED;
+            slotWriteMillis[slot] = clock.getAsLong();
+            int offset = slot * slotBytes;
+            data.putInt(offset, bytes.length);
+            data.position(offset + 4);
+            data.put(bytes);
+            return evicted;
+        }
+
+        synchronized void remove(long id) {
+            int index = find(id);
+            if (index >= 0) {
+                free(index, indexSlots[index]);
+            }
+        }
+
+        synchronized int size() {
+            return slots - freeCount;
+        }
+
+        /**
+         * 删除索引位置index，并把它的槽放回空闲栈
+         */
+        private void free(int index, int slot) {
+            removeAt(index);
+            slotStates[slot] = EMPTY;
+            freeSlots[freeCount++] = slot;
+        }
+
+        /**
+         * clock淘汰：有访问标记的清除标记后跳过，返回第一个没有标记的槽，并从索引中删除其数据
+         */
+        private int evict() {
+            while (true) {
+                int slot = hand;
+                hand = hand + 1 == slots ? 0 : hand + 1;
+                if (slotStates[slot] == REFERENCED) {
+                    slotStates[slot] = USED;
+                } else if (slotStates[slot] == USED) {
+                    removeAt(find(slotIds[slot]));
+                    return slot;
+                }
+            }
+        }
+
+        private int find(long id) {
+            int i = (int) hash(id) & indexMask;
+            while (indexSlots[i] != -1) {
+                if (indexIds[i] == id) {
+                    return i;
+                }
+                i = (i + 1) & indexMask;
+            }
+            return -1;
+        }
+
+        private void insert(long id, int slot) {
+            int i = (int) hash(id) & indexMask;
+            while (indexSlots[i] != -1) {
+                i = (i + 1) & indexMask;
+            }
+            indexIds[i] = id;
+            indexSlots[i] = slot;
+        }
+
+        /**
+         * 删除索引位置i，把后面同一探测链上的数据前移，保证查找时不会因为空位中断
+         */
+        private void removeAt(int i) {
+            int j = i;
+            while (true) {
+                j = (j + 1) & indexMask;
+                if (indexSlots[j] == -1) {
+                    break;
+                }
+                int home = (int) hash(indexIds[j]) & indexMask;
+                // home不在(i, j]区间内(循环意义上)时，j上的数据可以移到i
+                boolean stay = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stay) {
+                    indexIds[i] = indexIds[j];
+                    indexSlots[i] = indexSlots[j];
+                    i = j;
+                }
+            }
+            indexSlots[i] = -1;
+        }
+    }
+
+}
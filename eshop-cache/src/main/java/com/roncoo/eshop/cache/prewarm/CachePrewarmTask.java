@@ -8,33 +8,49 @@ import com.roncoo.eshop.cache.utils.SpringContextUtils;
 import com.roncoo.eshop.cache.utils.ZookeeperUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.zookeeper.Watcher;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * 缓存预热
  * <p>
  * 1、服务启动的时候，进行缓存预热
- * 2、从zk中读取taskid列表
+ * 2、从zk中读取存活的taskid列表：storm的每个task在 /hot-product-tasks 下有一个临时顺序子节点(task-{taskid}-{序号})，
+ * task退出后节点自动删除；预热期间监听子节点变化，已退出的task不再预热
  * 3、依次遍历每个taskid，尝试获取分布式锁，如果获取不到，快速报错，不要等待，因为说明已经有其他服务实例在预热了
  * 4、直接尝试获取下一个taskid的分布式锁
  * 5、即使获取到了分布式锁，也要检查一下这个taskid的预热状态，如果已经被预热过了，就不再预热了
- * 6、执行预热操作，遍历productid列表，查询数据，然后写ehcache和redis
+ * 6、执行预热操作，遍历productid列表，查询数据，然后写本地缓存和redis
  * 7、预热完成后，设置taskid对应的预热状态
  */
 @Slf4j
 public class CachePrewarmTask implements Runnable {
 
+    private static final String TASK_MEMBERS_PATH = "/hot-product-tasks";
+
+    private final ZookeeperUtils zkUtils = ZookeeperUtils.getInstance();
+    // 当前存活的taskid，子节点变化时更新
+    private volatile Set<String> liveTaskIds = Collections.emptySet();
+    private volatile boolean finished;
+
     @Override
     public void run() {
         CacheService cacheService = (CacheService) SpringContextUtils.getBean("cacheService");
-        ZookeeperUtils zkUtils = ZookeeperUtils.getInstance();
 
-        // 获取storm taskid列表
-        String taskidList = zkUtils.getNodeData("/taskid-list");
-
-        if (StringUtils.isNotBlank(taskidList)) {
-            String[] taskidListSplited = taskidList.split(",");
+        // 获取存活的storm taskid列表，并监听子节点变化
+        refreshLiveTaskIds();
+        try {
             // 遍历取出每个task统计出的热门商品列表
-            for (String taskid : taskidListSplited) {
+            for (String taskid : liveTaskIds) {
+                // 0 遍历期间已退出的task跳过
+                if (!liveTaskIds.contains(taskid)) {
+                    log.debug("task已退出，跳过预热，taskid={}", taskid);
+                    continue;
+                }
                 // 1 锁定这个task的热门商品列表
                 String taskidLockPath = "/taskid-lock-" + taskid;
                 boolean lock = zkUtils.tryAcquireDistributedLock(taskidLockPath);
@@ -44,7 +60,10 @@ public class CachePrewarmTask implements Runnable {
                 try {
                     // 2 锁定此task的预热状态，防止数据被重复预热
                     String taskidStatusLockPath = "/taskid-status-lock-" + taskid;
-                    zkUtils.acquireDistributedLock(taskidStatusLockPath);
+                    if (!zkUtils.acquireDistributedLock(taskidStatusLockPath)) {
+                        log.warn("获取预热状态锁超时，跳过，taskid={}", taskid);
+                        continue;
+                    }
                     try {
                         // 此task的热门商品列表是否已被预热的标记节点，若已被预热过，则跳过
                         String isThisTaskLoadedPath = "/taskid-status-" + taskid;
@@ -54,7 +73,7 @@ public class CachePrewarmTask implements Runnable {
                             log.debug("热门商品列表已被预热过，跳过，taskid={}，taskidStatus={}", taskid, taskidStatus);
                             continue;
                         }
-                        // 预热逻辑（加载到Redis与本地ehcache缓存）
+                        // 预热逻辑（加载到Redis与本地缓存）
                         String productidList = zkUtils.getNodeData("/task-hot-product-list-" + taskid);
                         JSONArray productidJSONArray = JSONArray.parseArray(productidList);
                         log.debug("获取到热门商品列表，开始预热，taskid={}，productidList={}", taskid, productidList);
@@ -74,7 +93,30 @@ public class CachePrewarmTask implements Runnable {
                     zkUtils.releaseDistributedLock(taskidLockPath);
                 }
             }
+        } finally {
+            // 预热结束后不再重新注册监听
+            finished = true;
+        }
+    }
+
+    /**
+     * 读取 /hot-product-tasks 的子节点(同时重新注册监听)，从节点名称 task-{taskid}-{序号} 中解析出taskid
+     */
+    private void refreshLiveTaskIds() {
+        List<String> children = zkUtils.getChildren(TASK_MEMBERS_PATH, event -> {
+            if (!finished && event.getType() == Watcher.Event.EventType.NodeChildrenChanged) {
+                refreshLiveTaskIds();
+            }
+        });
+        Set<String> taskIds = new LinkedHashSet<>();
+        for (String child : children) {
+            String taskid = StringUtils.substringBetween(child, "task-", "-");
+            if (StringUtils.isNotBlank(taskid)) {
+                taskIds.add(taskid);
+            }
         }
+        this.liveTaskIds = taskIds;
+        log.debug("存活的storm task：{}", taskIds);
     }
 
 }
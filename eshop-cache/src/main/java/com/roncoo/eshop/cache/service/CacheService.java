@@ -3,6 +3,9 @@ package com.roncoo.eshop.cache.service;
 import com.roncoo.eshop.cache.model.ProductInfo;
 import com.roncoo.eshop.cache.model.ShopInfo;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * 缓存service接口
  */
@@ -30,22 +33,22 @@ public interface CacheService {
 
 
     /**
-     * 将商品信息保存到本地的ehcache缓存中
+     * 将商品信息保存到本地缓存中，同时写入堆外缓存
      */
     ProductInfo saveProductInfo2LocalCache(ProductInfo productInfo);
 
     /**
-     * 从本地ehcache缓存中获取商品信息
+     * 从本地缓存中获取商品信息
      */
     ProductInfo getProductInfoFromLocalCache(Long productId);
 
     /**
-     * 将店铺信息保存到本地的ehcache缓存中
+     * 将店铺信息保存到本地缓存中，同时写入堆外缓存
      */
     ShopInfo saveShopInfo2LocalCache(ShopInfo shopInfo);
 
     /**
-     * 从本地ehcache缓存中获取店铺信息
+     * 从本地缓存中获取店铺信息
      */
     ShopInfo getShopInfoFromLocalCache(Long shopId);
 
@@ -59,6 +62,25 @@ public interface CacheService {
      */
     void saveShopInfo2RedisCache(ShopInfo shopInfo);
 
+    /**
+     * 版本号不小于redis中已有的版本号时才保存商品信息，在redis中原子比较，不需要分布式锁
+     *
+     * @return 已保存：true，redis中已有更新的版本：false
+     */
+    boolean saveProductInfo2RedisCacheIfNewer(ProductInfo productInfo);
+
+    /**
+     * 版本号不小于redis中已有的版本号时才保存店铺信息，在redis中原子比较，不需要分布式锁
+     *
+     * @return 已保存：true，redis中已有更新的版本：false
+     */
+    boolean saveShopInfo2RedisCacheIfNewer(ShopInfo shopInfo);
+
+    /**
+     * redis写入模式：true为在redis中原子比较版本号(cas)，false为分布式锁+读取比对(lock，默认)
+     */
+    boolean isRedisCasWrite();
+
 
     /**
      * 从redis中获取商品信息
@@ -70,4 +92,32 @@ public interface CacheService {
      */
     ShopInfo getShopInfoFromRedisCache(Long shopId);
 
+    /**
+     * 从redis中批量获取商品信息，按集群节点分组pipeline读取，各节点并行
+     *
+     * @return 商品id到商品信息的映射，redis中没有或读取失败的id不在结果中
+     */
+    Map<Long, ProductInfo> getProductInfosFromRedisCache(Collection<Long> productIds);
+
+    /**
+     * 从redis中批量获取店铺信息，按集群节点分组pipeline读取，各节点并行
+     *
+     * @return 店铺id到店铺信息的映射，redis中没有或读取失败的id不在结果中
+     */
+    Map<Long, ShopInfo> getShopInfosFromRedisCache(Collection<Long> shopIds);
+
+    /**
+     * 获取redis中商品信息的版本号，优先读取版本号key，不反序列化商品信息；没有版本号key的旧数据读取商品信息兼容
+     *
+     * @return 版本号，redis中没有该商品时返回0
+     */
+    long getProductInfoVersionFromRedisCache(Long productId);
+
+    /**
+     * 获取redis中店铺信息的版本号，优先读取版本号key，不反序列化店铺信息；没有版本号key的旧数据读取店铺信息兼容
+     *
+     * @return 版本号，redis中没有该店铺时返回0
+     */
+    long getShopInfoVersionFromRedisCache(Long shopId);
+
 }
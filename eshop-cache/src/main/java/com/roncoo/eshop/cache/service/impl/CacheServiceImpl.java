@@ -1,13 +1,19 @@
 package com.roncoo.eshop.cache.service.impl;
 
 import com.alibaba.fastjson.JSONObject;
+import com.roncoo.eshop.cache.configuration.LocalCacheConfiguration;
+import com.roncoo.eshop.cache.hystrix.command.GetCacheVersionFromRedisCommand;
 import com.roncoo.eshop.cache.hystrix.command.GetProductInfoFromRedisCacheCommand;
+import com.roncoo.eshop.cache.hystrix.command.GetProductInfosFromRedisCacheCommand;
 import com.roncoo.eshop.cache.hystrix.command.GetShopInfoFromRedisCacheCommand;
+import com.roncoo.eshop.cache.hystrix.command.GetShopInfosFromRedisCacheCommand;
 import com.roncoo.eshop.cache.hystrix.command.SaveProductInfo2RedisCacheCommand;
 import com.roncoo.eshop.cache.hystrix.command.SaveShopInfo2RedisCacheCommand;
 import com.roncoo.eshop.cache.model.ShopInfo;
+import com.roncoo.eshop.cache.offheap.OffHeapCache;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
@@ -16,22 +22,36 @@ import com.roncoo.eshop.cache.model.ProductInfo;
 import com.roncoo.eshop.cache.service.CacheService;
 import redis.clients.jedis.JedisCluster;
 
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * 缓存Service实现类
- * 注解 @CachePut 的 value 是 ehcache.xml 中的 cache name
+ * 注解 @CachePut 的 value 是 {@link LocalCacheConfiguration} 中的缓存区域名称
  */
 @Service("cacheService")
 public class CacheServiceImpl implements CacheService {
 
-    public static final String CACHE_NAME = "local";
-
     @Autowired
     private JedisCluster jedisCluster;
 
+    /**
+     * redis写入模式：lock(默认，分布式锁+读取比对)、cas(在redis中原子比较版本号)
+     */
+    @Value("${eshop.cache.redis.write-mode:lock}")
+    private String redisWriteMode;
+
+    @Resource
+    private OffHeapCache<ProductInfo> productInfoOffHeapCache;
+
+    @Resource
+    private OffHeapCache<ShopInfo> shopInfoOffHeapCache;
+
     /**
      * 将商品信息保存到本地缓存中（测试）
      */
-    @CachePut(value = CACHE_NAME, key = "'key_'+#productInfo.getId()")
+    @CachePut(value = LocalCacheConfiguration.LOCAL_CACHE, key = "'key_'+#productInfo.getId()")
     public ProductInfo saveLocalCache(ProductInfo productInfo) {
         return productInfo;
     }
@@ -41,7 +61,7 @@ public class CacheServiceImpl implements CacheService {
      *
      * @return 先查缓存若命中则直接返回不进入方法体，若未命中缓存则走方法体的返回值
      */
-    @Cacheable(value = CACHE_NAME, key = "'key_'+#id")
+    @Cacheable(value = LocalCacheConfiguration.LOCAL_CACHE, key = "'key_'+#id", unless = "#result == null")
     public ProductInfo getLocalCache(Long id) {
         //若未命中缓存则返回此返回值
         return null;
@@ -53,33 +73,35 @@ public class CacheServiceImpl implements CacheService {
 
 
     /**
-     * 将商品信息保存到本地的ehcache缓存中
+     * 将商品信息保存到本地缓存中，同时写入堆外缓存
      */
-    @CachePut(value = CACHE_NAME, key = "'product_info_'+#productInfo.getId()")
+    @CachePut(value = LocalCacheConfiguration.PRODUCT_INFO_CACHE, key = "#productInfo.getId()")
     public ProductInfo saveProductInfo2LocalCache(ProductInfo productInfo) {
+        productInfoOffHeapCache.put(productInfo.getId(), productInfo);
         return productInfo;
     }
 
     /**
-     * 从本地ehcache缓存中获取商品信息
+     * 从本地缓存中获取商品信息
      */
-    @Cacheable(value = CACHE_NAME, key = "'product_info_'+#productId")
+    @Cacheable(value = LocalCacheConfiguration.PRODUCT_INFO_CACHE, key = "#productId", unless = "#result == null")
     public ProductInfo getProductInfoFromLocalCache(Long productId) {
         return null;
     }
 
     /**
-     * 将店铺信息保存到本地的ehcache缓存中
+     * 将店铺信息保存到本地缓存中，同时写入堆外缓存
      */
-    @CachePut(value = CACHE_NAME, key = "'shop_info_'+#shopInfo.getId()")
+    @CachePut(value = LocalCacheConfiguration.SHOP_INFO_CACHE, key = "#shopInfo.getId()")
     public ShopInfo saveShopInfo2LocalCache(ShopInfo shopInfo) {
+        shopInfoOffHeapCache.put(shopInfo.getId(), shopInfo);
         return shopInfo;
     }
 
     /**
-     * 从本地ehcache缓存中获取店铺信息
+     * 从本地缓存中获取店铺信息
      */
-    @Cacheable(value = CACHE_NAME, key = "'shop_info_'+#shopId")
+    @Cacheable(value = LocalCacheConfiguration.SHOP_INFO_CACHE, key = "#shopId", unless = "#result == null")
     public ShopInfo getShopInfoFromLocalCache(Long shopId) {
         return null;
     }
@@ -99,6 +121,25 @@ public class CacheServiceImpl implements CacheService {
     }
 
 
+    /**
+     * 版本号不小于redis中已有的版本号时才保存商品信息
+     */
+    public boolean saveProductInfo2RedisCacheIfNewer(ProductInfo productInfo) {
+        return new SaveProductInfo2RedisCacheCommand(productInfo, true).execute();
+    }
+
+    /**
+     * 版本号不小于redis中已有的版本号时才保存店铺信息
+     */
+    public boolean saveShopInfo2RedisCacheIfNewer(ShopInfo shopInfo) {
+        return new SaveShopInfo2RedisCacheCommand(shopInfo, true).execute();
+    }
+
+    public boolean isRedisCasWrite() {
+        return "cas".equalsIgnoreCase(redisWriteMode);
+    }
+
+
     /**
      * 从redis中获取商品信息
      */
@@ -113,4 +154,44 @@ public class CacheServiceImpl implements CacheService {
         return new GetShopInfoFromRedisCacheCommand(shopId).execute();
     }
 
+    /**
+     * 从redis中批量获取商品信息
+     */
+    public Map<Long, ProductInfo> getProductInfosFromRedisCache(Collection<Long> productIds) {
+        return new GetProductInfosFromRedisCacheCommand(productIds).execute();
+    }
+
+    /**
+     * 从redis中批量获取店铺信息
+     */
+    public Map<Long, ShopInfo> getShopInfosFromRedisCache(Collection<Long> shopIds) {
+        return new GetShopInfosFromRedisCacheCommand(shopIds).execute();
+    }
+
+    /**
+     * 获取redis中商品信息的版本号
+     */
+    public long getProductInfoVersionFromRedisCache(Long productId) {
+        Long version = new GetCacheVersionFromRedisCommand("product_info_" + productId).execute();
+        if (version != null) {
+            return version;
+        }
+        // 旧版本写入的数据没有版本号key，读取商品信息兼容
+        ProductInfo productInfo = getProductInfoFromRedisCache(productId);
+        return productInfo == null ? 0 : productInfo.getVersion();
+    }
+
+    /**
+     * 获取redis中店铺信息的版本号
+     */
+    public long getShopInfoVersionFromRedisCache(Long shopId) {
+        Long version = new GetCacheVersionFromRedisCommand("shop_info_" + shopId).execute();
+        if (version != null) {
+            return version;
+        }
+        // 旧版本写入的数据没有版本号key，读取店铺信息兼容
+        ShopInfo shopInfo = getShopInfoFromRedisCache(shopId);
+        return shopInfo == null ? 0 : shopInfo.getVersion();
+    }
+
 }
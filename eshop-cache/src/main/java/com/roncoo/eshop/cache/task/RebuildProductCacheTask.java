@@ -2,26 +2,19 @@ package com.roncoo.eshop.cache.task;
 
 import com.roncoo.eshop.cache.model.ProductInfo;
 import com.roncoo.eshop.cache.service.CacheService;
+import com.roncoo.eshop.cache.utils.CacheRebuildLock;
 import com.roncoo.eshop.cache.utils.SpringContextUtils;
-import com.roncoo.eshop.cache.utils.ZookeeperUtils;
 import lombok.extern.slf4j.Slf4j;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 /**
  * 商品缓存重建任务
  */
 @Slf4j
 public class RebuildProductCacheTask implements Runnable {
 
-    private final static ThreadLocal<SimpleDateFormat> DATE_TIME_FORMATTER = ThreadLocal.withInitial(
-            () -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-    );
-
     public void run() {
         RebuildProductCacheQueue rebuildProductCacheQueue = RebuildProductCacheQueue.getInstance();
-        ZookeeperUtils zkUtils = ZookeeperUtils.getInstance();
+        CacheRebuildLock rebuildLock = CacheRebuildLock.getInstance();
         CacheService cacheService = (CacheService) SpringContextUtils.getBean("cacheService");
 
         // 一直消费队列中的请求
@@ -29,32 +22,40 @@ public class RebuildProductCacheTask implements Runnable {
             ProductInfo productInfo = rebuildProductCacheQueue.takeProductInfo();
             Long productId = productInfo.getId();
             try {
-                // 先获取分布式锁，再比对缓存版本号，若是最新数据才放入Redis缓存
-                zkUtils.acquireDistributedLock(this.getLockPath(productId));
-                ProductInfo oldProductInfo = cacheService.getProductInfoFromRedisCache(productId);
-
-                // 比较当前数据的时间版本比已有数据的时间版本是新还是旧
-                if (oldProductInfo != null && oldProductInfo.getModifiedTime() != null) {
-                    SimpleDateFormat sdf = DATE_TIME_FORMATTER.get();
-                    Date date = sdf.parse(productInfo.getModifiedTime());
-                    Date oldDate = sdf.parse(oldProductInfo.getModifiedTime());
-                    if (date.before(oldDate)) {
-                        log.debug("缓存版本号比对结果：current date[{}] is before existed date[{}]，不更新Redis缓存", productInfo.getModifiedTime(), oldDate);
-                        return;
+                // cas模式：在Redis中原子比较版本号并写入，不需要分布式锁
+                if (cacheService.isRedisCasWrite()) {
+                    if (cacheService.saveProductInfo2RedisCacheIfNewer(productInfo)) {
+                        cacheService.saveProductInfo2LocalCache(productInfo);
+                        log.debug("商品信息已保存到Redis和本地缓存，productId={}", productId);
+                    } else {
+                        log.debug("Redis中已有更新版本的商品信息，不更新缓存，productId={}", productId);
                     }
-                    log.debug("缓存版本号比对结果：current date[{}] is after existed date[{}]，更新Redis缓存", productInfo.getModifiedTime(), oldDate);
+                    continue;
+                }
+                // 先获取两级锁(本地锁+分布式锁)，再比对缓存版本号，若是最新数据才放入Redis缓存
+                if (!rebuildLock.lock(this.getLockPath(productId))) {
+                    log.warn("获取分布式锁超时，放弃本次缓存重建，productId={}", productId);
+                    continue;
+                }
+                // 比较当前数据的版本号比已有数据的版本号是新还是旧，只读取redis中的版本号，不读取和解析已有数据
+                long version = productInfo.getVersion();
+                long oldVersion = cacheService.getProductInfoVersionFromRedisCache(productId);
+                if (version < oldVersion) {
+                    log.debug("缓存版本号比对结果：current version[{}] is before existed version[{}]，不更新Redis缓存", version, oldVersion);
+                    continue;
                 }
+                log.debug("缓存版本号比对结果：current version[{}] is not before existed version[{}]，更新Redis缓存", version, oldVersion);
                 // 放入Redis缓存
                 cacheService.saveProductInfo2RedisCache(productInfo);
                 log.debug("商品信息已保存到Redis，productId={}", productId);
 
-                // 放入本地ehcache缓存
+                // 放入本地缓存
                 cacheService.saveProductInfo2LocalCache(productInfo);
-                log.debug("商品信息已保存到本地ehcache缓存，productId={}", productId);
+                log.debug("商品信息已保存到本地缓存，productId={}", productId);
             } catch (Exception e) {
                 log.error("商品信息缓存重建失败", e);
             } finally {
-                zkUtils.releaseDistributedLock(this.getLockPath(productInfo.getId()));
+                rebuildLock.unlock(this.getLockPath(productInfo.getId()));
             }
         }
     }
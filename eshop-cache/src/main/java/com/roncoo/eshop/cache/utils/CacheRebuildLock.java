@@ -0,0 +1,265 @@
+package com.roncoo.eshop.cache.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 商品/店铺缓存重建的两级锁：本地分段锁 + zookeeper分布式锁
+ * <p>
+ * 1、先按锁目录的hash获取本地分段锁，同一个商品在本机的并发操作先在本地排队，不再各自去zk排队
+ * 2、只有拿到本地锁的线程才去获取zk分布式锁；释放时若本机还有线程在等待同一个商品，zk锁不释放，直接交给下一个线程使用
+ * 3、租约(可选，系统属性 eshop.cache.lock.lease.millis，默认0即不开启)：释放后zk锁继续持有一段时间，
+ * 热点商品连续的更新可以复用，不需要每次都写zk；后台线程释放到期的租约
+ * 4、复用zk锁前检查会话id，会话过期重建后旧的锁已失效，需要重新获取
+ * <p>
+ * zk锁使用不与线程绑定的 {@link LeaseLockSupport.LeaseLock}，可以由下一个线程或后台线程释放
+ * <p>
+ * 用法与 {@link ZookeeperUtils#acquireDistributedLock(String)} 相同：获取失败返回false，finally中调用 {@link #unlock(String)}，
+ * 当前线程未持有锁时unlock会忽略
+ */
+@Slf4j
+public class CacheRebuildLock {
+
+    /**
+     * 本地分段锁的段数，2的幂
+     */
+    private final static int STRIPES = 256;
+
+    /**
+     * 本机还有线程等待同一个商品时，zk锁至少保留多久（毫秒），等待的线程超时放弃时由后台线程释放
+     */
+    private final static long HANDOFF_MILLIS = 1000;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final long leaseMillis;
+    private final long timeoutMillis;
+    private final LeaseLockSupport zkUtils;
+
+    private final LongAdder zkAcquired = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    /**
+     * 封装单例的静态内部类
+     */
+    static class Singleton {
+        private static CacheRebuildLock cacheRebuildLock;
+
+        static {
+            cacheRebuildLock = new CacheRebuildLock(ZookeeperUtils.getInstance(),
+                    Long.getLong("eshop.cache.lock.lease.millis", 0), ZookeeperUtils.DEFAULT_LOCK_TIMEOUT_MILLIS);
+        }
+
+        public static CacheRebuildLock getInstance() {
+            return Singleton.cacheRebuildLock;
+        }
+    }
+
+    /**
+     * 获取单例
+     */
+    public static CacheRebuildLock getInstance() {
+        return Singleton.getInstance();
+    }
+
+    /**
+     * @param leaseMillis   释放后zk锁继续持有的时间（毫秒），0表示立即释放
+     * @param timeoutMillis 获取本地锁和zk锁各自的最长等待时间（毫秒）
+     */
+    public CacheRebuildLock(LeaseLockSupport zkUtils, long leaseMillis, long timeoutMillis) {
+        this.zkUtils = zkUtils;
+        this.leaseMillis = leaseMillis;
+        this.timeoutMillis = timeoutMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-rebuild-lock-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, Math.min(leaseMillis, HANDOFF_MILLIS) / 2);
+        reaper.scheduleWithFixedDelay(this::releaseExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取锁
+     *
+     * @return 获取成功：true，超时或失败：false
+     */
+    public boolean lock(String lockPath) {
+        // 计数在返回前才减少，期间租约对象不会被移除
+        Lease lease = leases.compute(lockPath, (path, existing) -> {
+            Lease result = existing == null ? new Lease() : existing;
+            result.waiters.incrementAndGet();
+            return result;
+        });
+        boolean locked;
+        try {
+            locked = lockInternal(lockPath, lease);
+        } finally {
+            lease.waiters.decrementAndGet();
+        }
+        if (!locked) {
+            removeIfIdle(lockPath);
+        }
+        return locked;
+    }
+
+    private boolean lockInternal(String lockPath, Lease lease) {
+        ReentrantLock stripe = stripeOf(lockPath);
+        try {
+            if (!stripe.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("获取本地锁超时，lockPath={}", lockPath);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        // 以下在本地锁内执行，同一个锁目录的租约只会被一个线程修改
+        long sessionId = zkUtils.getSessionId();
+        if (lease.mutex != null) {
+            if (lease.sessionId == sessionId) {
+                lease.expireAtMillis = Long.MAX_VALUE;
+                reused.increment();
+                log.debug("复用已持有的分布式锁，lockPath={}", lockPath);
+                return true;
+            }
+            log.warn("zooKeeper会话已变化，已持有的分布式锁失效，重新获取，lockPath={}", lockPath);
+            lease.mutex = null;
+        }
+        LeaseLockSupport.LeaseLock mutex = zkUtils.newLeaseLock(lockPath);
+        long start = System.currentTimeMillis();
+        boolean acquired;
+        try {
+            acquired = mutex.acquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("获取分布式锁失败，lockPath={}", lockPath, e);
+            acquired = false;
+        }
+        zkUtils.getLockMetrics().record(acquired, System.currentTimeMillis() - start);
+        if (!acquired) {
+            log.warn("获取分布式锁超时，lockPath={}", lockPath);
+            stripe.unlock();
+            return false;
+        }
+        zkAcquired.increment();
+        lease.mutex = mutex;
+        lease.sessionId = sessionId;
+        lease.expireAtMillis = Long.MAX_VALUE;
+        return true;
+    }
+
+    /**
+     * 释放锁：本机还有线程在等待或开启了租约时保留zk锁，否则立即释放；当前线程未持有锁时忽略
+     */
+    public void unlock(String lockPath) {
+        ReentrantLock stripe = stripeOf(lockPath);
+        if (!stripe.isHeldByCurrentThread()) {
+            return;
+        }
+        try {
+            Lease lease = leases.get(lockPath);
+            if (lease == null || lease.mutex == null) {
+                return;
+            }
+            if (lease.waiters.get() > 0) {
+                lease.expireAtMillis = System.currentTimeMillis() + Math.max(leaseMillis, HANDOFF_MILLIS);
+            } else if (leaseMillis > 0) {
+                lease.expireAtMillis = System.currentTimeMillis() + leaseMillis;
+            } else {
+                release(lockPath, lease);
+            }
+        } finally {
+            stripe.unlock();
+        }
+        removeIfIdle(lockPath);
+    }
+
+    /**
+     * 后台线程：释放到期的租约，正在使用的锁(本地锁被其它线程持有)跳过
+     */
+    void releaseExpired() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            if (lease.mutex == null || lease.expireAtMillis > now) {
+                continue;
+            }
+            ReentrantLock stripe = stripeOf(entry.getKey());
+            if (!stripe.tryLock()) {
+                continue;
+            }
+            try {
+                if (lease.mutex != null && lease.expireAtMillis <= now) {
+                    release(entry.getKey(), lease);
+                }
+            } finally {
+                stripe.unlock();
+            }
+            removeIfIdle(entry.getKey());
+        }
+    }
+
+    private void release(String lockPath, Lease lease) {
+        try {
+            // 会话已变化时锁节点已随旧会话删除，不需要释放
+            if (lease.sessionId == zkUtils.getSessionId()) {
+                lease.mutex.release();
+            }
+            log.debug("分布式锁释放成功，lockPath={}", lockPath);
+        } catch (Exception e) {
+            log.error("分布式锁释放失败，lockPath={}", lockPath, e);
+        } finally {
+            lease.mutex = null;
+        }
+    }
+
+    /**
+     * 没有线程等待且没有持有zk锁时移除，避免每个商品都留下一个对象
+     */
+    private void removeIfIdle(String lockPath) {
+        leases.computeIfPresent(lockPath, (path, lease) ->
+                lease.waiters.get() == 0 && lease.mutex == null ? null : lease);
+    }
+
+    private ReentrantLock stripeOf(String lockPath) {
+        int h = lockPath.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * @return 实际向zk获取锁的次数
+     */
+    public long getZkAcquiredCount() {
+        return zkAcquired.sum();
+    }
+
+    /**
+     * @return 复用已持有的zk锁(没有访问zk)的次数
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * 一个锁目录的zk锁及本机等待的线程数；mutex/sessionId/expireAtMillis只在持有本地锁时修改
+     */
+    private static final class Lease {
+
+        private final AtomicInteger waiters = new AtomicInteger();
+        private volatile LeaseLockSupport.LeaseLock mutex;
+        private volatile long sessionId;
+        private volatile long expireAtMillis;
+    }
+
+}
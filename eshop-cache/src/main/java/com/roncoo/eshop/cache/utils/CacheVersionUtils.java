@@ -0,0 +1,34 @@
+package com.roncoo.eshop.cache.utils;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * 缓存版本号工具类：把 modifiedTime(yyyy-MM-dd HH:mm:ss) 转换成数字版本号(毫秒时间戳)，只用于兼容没有 version 字段的旧数据
+ */
+public final class CacheVersionUtils {
+
+    private final static ThreadLocal<SimpleDateFormat> DATE_TIME_FORMATTER = ThreadLocal.withInitial(
+            () -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+    );
+
+    private CacheVersionUtils() {
+    }
+
+    /**
+     * @return 毫秒时间戳，modifiedTime为空或格式错误时返回0(任何有版本号的数据都可以覆盖)
+     */
+    public static long versionOf(String modifiedTime) {
+        if (StringUtils.isBlank(modifiedTime)) {
+            return 0;
+        }
+        try {
+            return DATE_TIME_FORMATTER.get().parse(modifiedTime).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+}
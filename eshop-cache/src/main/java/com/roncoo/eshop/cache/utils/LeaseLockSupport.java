@@ -0,0 +1,38 @@
+package com.roncoo.eshop.cache.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CacheRebuildLock} 依赖的zookeeper操作，由 {@link ZookeeperUtils} 实现
+ */
+public interface LeaseLockSupport {
+
+    /**
+     * 创建一个不与线程绑定的分布式锁，可以由其它线程释放
+     */
+    LeaseLock newLeaseLock(String lockPath);
+
+    /**
+     * @return 当前会话id，会话过期重建后会变化；获取失败返回-1
+     */
+    long getSessionId();
+
+    /**
+     * @return 分布式锁的等待统计
+     */
+    ZookeeperUtils.LockMetrics getLockMetrics();
+
+    /**
+     * 不与线程绑定的分布式锁
+     */
+    interface LeaseLock {
+
+        /**
+         * @return 获取成功：true，超时：false
+         */
+        boolean acquire(long time, TimeUnit unit) throws Exception;
+
+        void release() throws Exception;
+    }
+
+}
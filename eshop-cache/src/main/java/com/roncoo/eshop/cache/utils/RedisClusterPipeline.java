@@ -0,0 +1,231 @@
+package com.roncoo.eshop.cache.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redis集群批量读取：按slot所在节点分组，每个节点一次pipeline，多个节点并行执行
+ * <p>
+ * 1、JedisCluster不支持pipeline，这里通过 CLUSTER SLOTS 维护slot到节点的映射，直接使用JedisCluster中各节点的连接池
+ * 2、N个key只需要每个节点一次网络往返，而不是N次
+ * 3、映射过期(迁移slot、主从切换)时节点返回MOVED/ASK，这些key以及节点整体失败的key改用JedisCluster逐个读取(自动处理重定向)，
+ * 并在下次批量读取前刷新映射
+ */
+@Slf4j
+public class RedisClusterPipeline {
+
+    private final static int SLOTS = 16384;
+
+    /**
+     * 并行执行pipeline的线程数
+     */
+    private final static int THREADS = 8;
+
+    private final JedisCluster jedisCluster;
+    private final ExecutorService executor;
+
+    // 每个slot所在主节点的 host:port，与 JedisCluster#getClusterNodes() 的key相同；null表示需要刷新
+    private volatile String[] slotOwners;
+
+    /**
+     * 封装单例的静态内部类
+     */
+    static class Singleton {
+        private static RedisClusterPipeline redisClusterPipeline;
+
+        static {
+            redisClusterPipeline = new RedisClusterPipeline((JedisCluster) SpringContextUtils.getBean("JedisClusterFactory"));
+        }
+
+        public static RedisClusterPipeline getInstance() {
+            return Singleton.redisClusterPipeline;
+        }
+    }
+
+    /**
+     * 获取单例
+     */
+    public static RedisClusterPipeline getInstance() {
+        return Singleton.getInstance();
+    }
+
+    public RedisClusterPipeline(JedisCluster jedisCluster) {
+        this.jedisCluster = jedisCluster;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "redis-pipeline-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 批量读取
+     *
+     * @return key到数据的映射，只包含读取到数据的key；不存在或读取失败的key不在结果中
+     */
+    public Map<String, byte[]> get(Collection<String> keys) {
+        Map<String, byte[]> result = new HashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+        // 按节点分组，映射中找不到节点的key直接逐个读取
+        Map<String, List<String>> keysByNode = new HashMap<>();
+        List<String> retryKeys = new ArrayList<>();
+        String[] owners = slotOwners();
+        for (String key : new LinkedHashSet<>(keys)) {
+            String node = owners == null ? null : owners[JedisClusterCRC16.getSlot(key)];
+            if (node == null) {
+                retryKeys.add(key);
+            } else {
+                keysByNode.computeIfAbsent(node, n -> new ArrayList<>()).add(key);
+            }
+        }
+
+        // 只有一个节点时在当前线程执行，避免线程切换
+        Map<String, Future<NodeResult>> futures = new HashMap<>();
+        if (keysByNode.size() == 1) {
+            Map.Entry<String, List<String>> entry = keysByNode.entrySet().iterator().next();
+            try {
+                collect(getFromNode(entry.getKey(), entry.getValue()), result, retryKeys);
+            } catch (Exception e) {
+                log.warn("redis节点批量读取失败，改为逐个读取，node={}", entry.getKey(), e);
+                retryKeys.addAll(entry.getValue());
+            }
+        } else {
+            keysByNode.forEach((node, nodeKeys) -> futures.put(node, executor.submit(() -> getFromNode(node, nodeKeys))));
+        }
+        for (Map.Entry<String, Future<NodeResult>> entry : futures.entrySet()) {
+            try {
+                collect(entry.getValue().get(), result, retryKeys);
+            } catch (InterruptedException e) {
+                // 调用方已超时，返回已读取的部分结果
+                Thread.currentThread().interrupt();
+                return result;
+            } catch (Exception e) {
+                log.warn("redis节点批量读取失败，改为逐个读取，node={}", entry.getKey(), e);
+                retryKeys.addAll(keysByNode.get(entry.getKey()));
+            }
+        }
+
+        if (!retryKeys.isEmpty()) {
+            // 映射已过期，下次批量读取前刷新
+            slotOwners = null;
+            for (String key : retryKeys) {
+                try {
+                    byte[] value = jedisCluster.get(key.getBytes(StandardCharsets.UTF_8));
+                    if (value != null) {
+                        result.put(key, value);
+                    }
+                } catch (Exception e) {
+                    log.warn("redis读取失败，key={}", key, e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在一个节点上pipeline读取，返回MOVED/ASK等错误的key放入重试列表
+     */
+    private NodeResult getFromNode(String node, List<String> keys) {
+        NodeResult nodeResult = new NodeResult();
+        JedisPool pool = jedisCluster.getClusterNodes().get(node);
+        if (pool == null) {
+            nodeResult.retryKeys.addAll(keys);
+            return nodeResult;
+        }
+        List<Response<byte[]>> responses = new ArrayList<>(keys.size());
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (String key : keys) {
+                responses.add(pipeline.get(key.getBytes(StandardCharsets.UTF_8)));
+            }
+            pipeline.sync();
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            try {
+                byte[] value = responses.get(i).get();
+                if (value != null) {
+                    nodeResult.values.put(keys.get(i), value);
+                }
+            } catch (Exception e) {
+                nodeResult.retryKeys.add(keys.get(i));
+            }
+        }
+        return nodeResult;
+    }
+
+    private void collect(NodeResult nodeResult, Map<String, byte[]> result, List<String> retryKeys) {
+        result.putAll(nodeResult.values);
+        retryKeys.addAll(nodeResult.retryKeys);
+    }
+
+    /**
+     * @return slot到节点的映射，刷新失败返回null
+     */
+    private String[] slotOwners() {
+        String[] owners = slotOwners;
+        if (owners != null) {
+            return owners;
+        }
+        synchronized (this) {
+            if (slotOwners == null) {
+                slotOwners = loadSlotOwners();
+            }
+            return slotOwners;
+        }
+    }
+
+    /**
+     * 从任意一个可用节点读取 CLUSTER SLOTS：[起始slot, 结束slot, [主节点ip, 端口, id], 从节点...]
+     */
+    @SuppressWarnings("unchecked")
+    private String[] loadSlotOwners() {
+        for (JedisPool pool : jedisCluster.getClusterNodes().values()) {
+            try (Jedis jedis = pool.getResource()) {
+                String[] owners = new String[SLOTS];
+                for (Object slotInfo : jedis.clusterSlots()) {
+                    List<Object> range = (List<Object>) slotInfo;
+                    List<Object> master = (List<Object>) range.get(2);
+                    String node = new String((byte[]) master.get(0), StandardCharsets.UTF_8) + ":" + master.get(1);
+                    for (int slot = ((Long) range.get(0)).intValue(); slot <= ((Long) range.get(1)).intValue(); slot++) {
+                        owners[slot] = node;
+                    }
+                }
+                log.debug("已刷新redis集群slot映射");
+                return owners;
+            } catch (Exception e) {
+                log.warn("读取redis集群slot映射失败，尝试下一个节点", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一个节点的读取结果
+     */
+    private static final class NodeResult {
+
+        private final Map<String, byte[]> values = new HashMap<>();
+        private final List<String> retryKeys = new ArrayList<>();
+    }
+
+}
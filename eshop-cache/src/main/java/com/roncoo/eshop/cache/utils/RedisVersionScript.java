@@ -0,0 +1,117 @@
+package com.roncoo.eshop.cache.utils;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * 在Redis中原子地比较版本号并写入缓存的lua脚本
+ * <p>
+ * 1、每个缓存数据旁边保存一个数字版本号，key为 {数据key}:version，hash tag与数据key相同，在集群中落在同一个slot，可以在同一个脚本中访问
+ * 2、新版本号小于已有版本号时不写入，相等或更新时同时写入数据和版本号；比较和写入在Redis中原子执行，不需要分布式锁，一次网络往返
+ * 3、强制模式不比较，直接写入数据和版本号(缓存预热等无需比较的场景)，保证版本号与数据始终一致
+ * 4、旧版本写入的数据没有版本号key，此时脚本不写入并返回-1，由调用方解码已有数据得到其版本号，作为比较基准再执行一次；
+ *    第二次执行时版本号key仍不存在才使用该基准，期间有其它写入则按新写入的版本号比较，避免旧的重建结果覆盖更新的旧格式数据
+ * <p>
+ * 数据为编解码器编码后的字节，使用二进制命令发送；优先使用EVALSHA只发送脚本的sha1，节点上没有缓存脚本(NOSCRIPT)时使用EVAL发送脚本内容，之后节点会缓存
+ */
+public final class RedisVersionScript {
+
+    /**
+     * KEYS[1]：数据key，KEYS[2]：版本号key，ARGV[1]：数据，ARGV[2]：版本号，ARGV[3]：1表示强制写入，
+     * ARGV[4]：版本号key不存在时使用的已有版本号，空字符串表示未知
+     * 返回1表示已写入，0表示已有更新的版本，-1表示已有数据但没有版本号key且未给出已有版本号
+     */
+    private final static String SCRIPT =
+            "if ARGV[3] ~= '1' then\n" +
+            "  local current = redis.call('GET', KEYS[2])\n" +
+            "  if not current then\n" +
+            "    if ARGV[4] ~= '' then\n" +
+            "      current = ARGV[4]\n" +
+            "    elseif redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+            "      return -1\n" +
+            "    end\n" +
+            "  end\n" +
+            "  if current and tonumber(current) > tonumber(ARGV[2]) then\n" +
+            "    return 0\n" +
+            "  end\n" +
+            "end\n" +
+            "redis.call('SET', KEYS[1], ARGV[1])\n" +
+            "redis.call('SET', KEYS[2], ARGV[2])\n" +
+            "return 1";
+
+    private final static byte[] SCRIPT_BYTES = bytes(SCRIPT);
+    private final static byte[] SCRIPT_SHA1_BYTES = bytes(sha1(SCRIPT));
+
+    private RedisVersionScript() {
+    }
+
+    /**
+     * @return 与数据key在同一个slot的版本号key
+     */
+    public static String versionKey(String key) {
+        return "{" + key + "}:version";
+    }
+
+    /**
+     * 版本号不小于已有版本号时写入数据和版本号
+     *
+     * @param value           编码后的数据，见 {@link com.roncoo.eshop.cache.codec.CacheCodec}
+     * @param force           true表示不比较版本号直接写入
+     * @param legacyVersionOf 已有数据没有版本号key时，从已有数据(编码后的字节)中解析版本号
+     * @return 已写入：true，已有更新的版本：false
+     */
+    public static boolean setIfNewer(JedisCluster jedisCluster, String key, byte[] value, long version, boolean force,
+                                     ToLongFunction<byte[]> legacyVersionOf) {
+        byte[] keyBytes = bytes(key);
+        List<byte[]> keys = Arrays.asList(keyBytes, bytes(versionKey(key)));
+        byte[] versionBytes = bytes(String.valueOf(version));
+        byte[] forceBytes = bytes(force ? "1" : "0");
+        Object result = eval(jedisCluster, keys, Arrays.asList(value, versionBytes, forceBytes, new byte[0]));
+        if (Long.valueOf(-1).equals(result)) {
+            byte[] existing = jedisCluster.get(keyBytes);
+            long legacyVersion = existing == null ? 0 : legacyVersionOf.applyAsLong(existing);
+            if (legacyVersion > version) {
+                return false;
+            }
+            result = eval(jedisCluster, keys,
+                    Arrays.asList(value, versionBytes, forceBytes, bytes(String.valueOf(legacyVersion))));
+        }
+        return Long.valueOf(1).equals(result);
+    }
+
+    private static Object eval(JedisCluster jedisCluster, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedisCluster.evalsha(SCRIPT_SHA1_BYTES, keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                throw e;
+            }
+            return jedisCluster.eval(SCRIPT_BYTES, keys, args);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
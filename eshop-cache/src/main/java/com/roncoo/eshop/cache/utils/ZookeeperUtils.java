@@ -1,25 +1,58 @@
 package com.roncoo.eshop.cache.utils;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreMutex;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
 
-import java.util.concurrent.CountDownLatch;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * zookeeper分布式锁
  * <p>
+ * 基于Curator实现：
+ * 1、分布式锁使用 {@link InterProcessMutex}：在锁目录下创建临时顺序子节点，序号最小的获得锁，其余的只监听前一个节点的删除事件，
+ * 按申请顺序公平获得锁，等待期间不再每隔200ms轮询zk
+ * 2、获取锁有超时时间，超时返回false，调用方跳过本次操作，不会无限等待
+ * 3、会话断开后由Curator按重试策略重连，会话过期后自动创建新会话；连接状态变化记录日志，会话过期时已持有的锁不再可靠
+ * 4、统计获取锁的次数、超时次数、等待时间，见 {@link #getLockMetrics()}
+ * <p>
  * Created by lsd
  * 2020-05-09 23:45
  */
 @Slf4j
-public class ZookeeperUtils {
+public class ZookeeperUtils implements LeaseLockSupport {
 
     private final static String ZOOKEEPER_SERVERS = "192.168.11.102:2181";   //以逗号分隔的zookeeper地址
 
-    private ZooKeeper zooKeeper;
-    private final static CountDownLatch connectedSemaphore = new CountDownLatch(1);
+    /**
+     * 获取分布式锁的默认超时时间（毫秒）
+     */
+    public final static long DEFAULT_LOCK_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 等待锁超过该时间（毫秒）记录一条警告日志
+     */
+    private final static long SLOW_LOCK_WAIT_MILLIS = 200;
+
+    private CuratorFramework client;
+
+    // 当前线程持有的锁，释放时按锁目录找到对应的InterProcessMutex(只能由获取锁的线程释放)
+    private final ThreadLocal<Map<String, InterProcessMutex>> heldLocks = ThreadLocal.withInitial(HashMap::new);
+
+    private final LockMetrics lockMetrics = new LockMetrics();
 
     /**
      * 封装单例的静态内部类
@@ -56,20 +89,27 @@ public class ZookeeperUtils {
      */
     public ZookeeperUtils() {
         try {
-            // 异步创建zk客户端，会返回一个状态CONNECTING（连接中）
-            this.zooKeeper = new ZooKeeper(
-                    ZOOKEEPER_SERVERS,
-                    60000,
-                    // 监听初始化完成事件，连接建立完成则打开门闩
-                    (WatchedEvent event) -> {
-                        log.debug("zk session watcher接收到事件: {}", event.getState());
-                        if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
-                            connectedSemaphore.countDown();
-                        }
-                    });
-            log.debug("正在创建zooKeeper会话，状态：{}", zooKeeper.getState());
+            this.client = CuratorFrameworkFactory.builder()
+                    .connectString(ZOOKEEPER_SERVERS)
+                    .sessionTimeoutMs(60000)
+                    .connectionTimeoutMs(15000)
+                    // 连接失败时按指数退避重试，最多重试3次
+                    .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+                    .build();
+            // 监听连接状态变化
+            client.getConnectionStateListenable().addListener((curator, newState) -> {
+                if (newState == ConnectionState.LOST) {
+                    log.error("zooKeeper会话已过期，已持有的分布式锁不再可靠，等待重新建立会话");
+                } else if (newState == ConnectionState.SUSPENDED) {
+                    log.warn("zooKeeper连接已断开，正在重连");
+                } else {
+                    log.debug("zooKeeper连接状态: {}", newState);
+                }
+            });
+            client.start();
+            log.debug("正在创建zooKeeper会话");
             // 等待初始化完成
-            connectedSemaphore.await();
+            client.blockUntilConnected();
             log.debug("zooKeeper会话连接已建立");
         } catch (Exception e) {
             log.error("创建zooKeeper会话连接失败", e);
@@ -77,65 +117,81 @@ public class ZookeeperUtils {
     }
 
     /**
-     * 自旋获取分布式锁，获取失败会每隔200ms进行重试，直到成功获得锁
+     * 获取分布式锁，最多等待 {@link #DEFAULT_LOCK_TIMEOUT_MILLIS} 毫秒
+     *
+     * @return 获取成功：true，超时或失败：false
      */
-    public void acquireDistributedLock(String lockPath) {
-        // 创建临时节点，默认acl权限
+    public boolean acquireDistributedLock(String lockPath) {
+        return acquireDistributedLock(lockPath, DEFAULT_LOCK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 获取分布式锁，排队等待前一个申请者释放，同一线程可重入
+     *
+     * @param timeoutMillis 最长等待时间（毫秒），0表示获取不到立即返回
+     * @return 获取成功：true，超时或失败：false
+     */
+    public boolean acquireDistributedLock(String lockPath, long timeoutMillis) {
+        Map<String, InterProcessMutex> locks = heldLocks.get();
+        InterProcessMutex lock = locks.get(lockPath);
+        if (lock == null) {
+            lock = new InterProcessMutex(client, lockPath);
+        }
+        long start = System.currentTimeMillis();
+        boolean acquired;
         try {
-            zooKeeper.create(lockPath, "".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            acquired = lock.acquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("获取分布式锁失败，lockPath={}", lockPath, e);
+            acquired = false;
+        }
+        long waitMillis = System.currentTimeMillis() - start;
+        lockMetrics.record(acquired, waitMillis);
+        if (!acquired) {
+            log.debug("获取分布式锁失败，lockPath={}，已等待{}ms", lockPath, waitMillis);
+            return false;
+        }
+        locks.put(lockPath, lock);
+        if (waitMillis >= SLOW_LOCK_WAIT_MILLIS) {
+            log.warn("获取分布式锁等待时间过长，lockPath={}，已等待{}ms", lockPath, waitMillis);
+        } else {
             log.debug("成功获取分布式锁，lockPath={}", lockPath);
-        } catch (Exception e) {  //每隔200ms进行重试，直到成功获得锁
-            log.debug("获取分布式锁失败，lockPath={}，原因:{}", lockPath, e.getMessage());
-            int count = 0;
-            while (true) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(200);
-                    zooKeeper.create(lockPath, "".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
-                } catch (Exception ex) {
-                    log.debug("获取分布式锁失败，lockPath={}，原因:{}", lockPath, e.getMessage());
-                    count++;
-                    continue;
-                }
-                // 没抛异常则成功
-                log.debug("获取分布式锁成功，lockPath={}，已重试次数:{}", lockPath, count);
-                break;
-            }
         }
+        return true;
     }
 
     /**
-     * 尝试获取分布式锁
+     * 尝试获取分布式锁，获取不到立即返回
      *
      * @return 获取成功：true，获取失败：false
      */
     public boolean tryAcquireDistributedLock(String lockPath) {
-        try {
-            zooKeeper.create(lockPath, "".getBytes(),
-                    ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
-            log.debug("成功获取分布式锁，lockPath={}", lockPath);
-            return true;
-        } catch (Exception e) {
-            log.debug("获取分布式锁失败，lockPath={}，原因:{}", lockPath, e.getMessage());
-        }
-        return false;
+        return acquireDistributedLock(lockPath, 0);
     }
 
 
     /**
-     * 释放分布式锁
+     * 释放当前线程持有的分布式锁，未持有时忽略
      */
     public boolean releaseDistributedLock(String lockPath) {
+        Map<String, InterProcessMutex> locks = heldLocks.get();
+        InterProcessMutex lock = locks.get(lockPath);
+        if (lock == null) {
+            log.debug("当前线程未持有分布式锁，忽略本次释放操作，lockPath={}", lockPath);
+            return true;
+        }
         try {
-            zooKeeper.delete(lockPath, -1);
+            lock.release();
             log.info("分布式锁释放成功，lockPath={}", lockPath);
             return true;
         } catch (Exception e) {
-            if (e instanceof KeeperException.NodeExistsException) {
-                log.info("分布式锁节点不存在，忽略本次释放操作，lockPath={}", lockPath);
-                return true;
-            }
             log.error("分布式锁释放失败", e);
             return false;
+        } finally {
+            // 重入的锁全部释放后才移除
+            if (!lock.isOwnedByCurrentThread()) {
+                locks.remove(lockPath);
+            }
         }
     }
 
@@ -144,7 +200,7 @@ public class ZookeeperUtils {
      */
     public String getNodeData(String path) {
         try {
-            return new String(zooKeeper.getData(path, false, new Stat()));
+            return new String(client.getData().forPath(path), StandardCharsets.UTF_8);
         } catch (Exception e) {
             log.error("读取zookeeper节点信息失败", e);
             return "";
@@ -156,26 +212,126 @@ public class ZookeeperUtils {
      */
     public void setNodeData(String path, String data) {
         try {
-            zooKeeper.setData(path, data.getBytes(), -1);
+            client.setData().forPath(path, data.getBytes(StandardCharsets.UTF_8));
         } catch (Exception e) {
             log.error("设置zookeeper节点信息失败", e);
         }
     }
 
+    /**
+     * 读取子节点列表并注册子节点变化的监听，节点不存在时返回空列表
+     * <p>
+     * zk的监听只触发一次，收到事件后需要再次调用本方法重新注册
+     */
+    public List<String> getChildren(String path, Watcher watcher) {
+        try {
+            return client.getChildren().usingWatcher(watcher).forPath(path);
+        } catch (KeeperException.NoNodeException e) {
+            log.info("zookeeper节点不存在，path={}", path);
+            return Collections.emptyList();
+        } catch (Exception e) {
+            log.error("读取zookeeper子节点失败，path={}", path, e);
+            return Collections.emptyList();
+        }
+    }
+
     /**
      * 创建节点，若节点已存在会忽略创建操作
      * 读/写节点数据前都必须先创建出节点
      */
     public void createNode(String path) {
         try {
-            zooKeeper.create(path, "".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            client.create().forPath(path, new byte[0]);
+        } catch (KeeperException.NodeExistsException e) {
+            log.info("zookeeper节点已存在，忽略本次创建操作");
         } catch (Exception e) {
-            if (e instanceof KeeperException.NodeExistsException) {
-                log.info("zookeeper节点已存在，忽略本次创建操作");
-                return;
-            }
             log.error("创建zookeeper节点信息失败", e);
         }
     }
 
+    /**
+     * 创建一个不与线程绑定的分布式锁，可以由其它线程释放，用于跨多次操作持有的锁租约
+     */
+    @Override
+    public LeaseLock newLeaseLock(String lockPath) {
+        InterProcessSemaphoreMutex mutex = new InterProcessSemaphoreMutex(client, lockPath);
+        return new LeaseLock() {
+            @Override
+            public boolean acquire(long time, TimeUnit unit) throws Exception {
+                return mutex.acquire(time, unit);
+            }
+
+            @Override
+            public void release() throws Exception {
+                mutex.release();
+            }
+        };
+    }
+
+    /**
+     * @return 当前会话id，会话过期重建后会变化；获取失败返回-1
+     */
+    @Override
+    public long getSessionId() {
+        try {
+            return client.getZookeeperClient().getZooKeeper().getSessionId();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return 分布式锁的等待统计
+     */
+    @Override
+    public LockMetrics getLockMetrics() {
+        return lockMetrics;
+    }
+
+    /**
+     * 分布式锁的等待统计，线程安全
+     */
+    public static class LockMetrics {
+
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder totalWaitMillis = new LongAdder();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+
+        void record(boolean success, long waitMillis) {
+            (success ? acquired : failed).increment();
+            totalWaitMillis.add(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        }
+
+        /**
+         * @return 获取成功的次数
+         */
+        public long getAcquired() {
+            return acquired.sum();
+        }
+
+        /**
+         * @return 超时或失败的次数
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return 平均等待时间（毫秒）
+         */
+        public double getAvgWaitMillis() {
+            long count = acquired.sum() + failed.sum();
+            return count == 0 ? 0 : (double) totalWaitMillis.sum() / count;
+        }
+
+        /**
+         * @return 最长等待时间（毫秒）
+         */
+        public long getMaxWaitMillis() {
+            return maxWaitMillis.get();
+        }
+    }
+
 }
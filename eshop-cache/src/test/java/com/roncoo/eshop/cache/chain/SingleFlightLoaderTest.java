@@ -0,0 +1,119 @@
+package com.roncoo.eshop.cache.chain;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import junit.framework.TestCase;
+
+/**
+ * 回源合并单元测试，回源方法阻塞到测试放行为止
+ */
+public class SingleFlightLoaderTest extends TestCase {
+
+    private final AtomicInteger originCalls = new AtomicInteger();
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Override
+    protected void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private SingleFlightLoader<String> loader(long followerTimeoutMillis) {
+        return new SingleFlightLoader<>("product", id -> {
+            originCalls.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "product-" + id;
+        }, followerTimeoutMillis, 100, 60);
+    }
+
+    private Future<String> leader(SingleFlightLoader<String> loader) throws Exception {
+        Future<String> leader = executor.submit(() -> loader.load(1L));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        return leader;
+    }
+
+    private static void await(LongSupplier counter, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.getAsLong() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    public void testLeader() throws Exception {
+        SingleFlightLoader<String> loader = loader(5000);
+        release.countDown();
+        assertEquals("product-1", loader.load(1L));
+        assertEquals(1, loader.getLoadCount());
+        assertEquals(0, loader.getCoalescedCount());
+    }
+
+    public void testCoalescedFollower() throws Exception {
+        SingleFlightLoader<String> loader = loader(5000);
+        Future<String> leader = leader(loader);
+        Future<String> follower = executor.submit(() -> loader.load(1L));
+        await(loader::getCoalescedCount, 1);
+        release.countDown();
+
+        assertEquals("product-1", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("product-1", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, originCalls.get());
+        assertEquals(1, loader.getCoalescedCount());
+    }
+
+    public void testFollowerTimeoutWithStale() throws Exception {
+        SingleFlightLoader<String> loader = loader(50);
+        loader.remember(1L, "stale-1");
+        Future<String> leader = leader(loader);
+
+        assertEquals("stale-1", loader.load(1L));
+        assertEquals(1, loader.getTimeoutCount());
+        assertEquals(1, loader.getStaleServedCount());
+        release.countDown();
+        assertEquals("product-1", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    public void testFollowerTimeoutWithoutStale() throws Exception {
+        SingleFlightLoader<String> loader = loader(50);
+        Future<String> leader = leader(loader);
+        Future<String> follower = executor.submit(() -> loader.load(1L));
+        // 超时后没有旧数据，继续等待回源结果，不返回null
+        await(loader::getTimeoutCount, 1);
+        assertFalse(follower.isDone());
+        release.countDown();
+
+        assertEquals("product-1", follower.get(5, TimeUnit.SECONDS));
+        assertEquals("product-1", leader.get(5, TimeUnit.SECONDS));
+        assertEquals(1, originCalls.get());
+        assertEquals(0, loader.getStaleServedCount());
+    }
+
+    public void testResultWrittenToTopLevelBeforeRemoval() throws Exception {
+        SingleFlightLoader<String> loader = loader(5000);
+        Map<Long, String> local = new ConcurrentHashMap<>();
+        loader.setTopLevel(new CacheLevel<>("local", local::get, value -> local.put(1L, value)));
+        release.countDown();
+        assertEquals("product-1", loader.load(1L));
+        assertEquals("product-1", local.get(1L));
+
+        // 在写入缓存之前未命中、回源结束之后才到达的请求，不再回源
+        assertEquals("product-1", loader.load(1L));
+        assertEquals(1, originCalls.get());
+        assertEquals(1, loader.getLoadCount());
+    }
+
+}
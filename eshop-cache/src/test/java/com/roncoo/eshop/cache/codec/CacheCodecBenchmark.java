@@ -0,0 +1,104 @@
+package com.roncoo.eshop.cache.codec;
+
+import com.alibaba.fastjson.JSONObject;
+import com.roncoo.eshop.cache.model.ProductInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品信息编解码器基准测试：json、binary、binary+LZ4
+ * <p>
+ * 数据使用商品服务返回的实际结构：small为当前接口返回的商品信息，large为规格、售后说明、图片列表较长的商品信息
+ * <p>
+ * 运行：在IDE中执行main方法，或 mvn test-compile 后以 org.openjdk.jmh.Main 运行；main方法会先打印各编码的字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private final static String SMALL_PRODUCT_JSON = "{\"id\": 1, \"name\": \"iphone7手机\", \"price\": 5599, \"pictureList\":\"a.jpg,b.jpg\", \"specification\": \"iphone7的规格\", \"service\": \"iphone7的售后服务\", \"color\": \"红色,白色,黑色\", \"size\": \"5.5\", \"shopId\": 1, \"modifiedTime\": \"2017-01-01 12:00:00\"}";
+
+    @Param({"json", "binary", "binary-lz4"})
+    private String codecName;
+
+    @Param({"small", "large"})
+    private String shape;
+
+    private CacheCodec<ProductInfo> codec;
+    private ProductInfo productInfo;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        codec = codecOf(codecName);
+        productInfo = productOf(shape);
+        encoded = codec.encode(productInfo);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(productInfo);
+    }
+
+    @Benchmark
+    public ProductInfo decode() {
+        return codec.decode(encoded);
+    }
+
+    private static CacheCodec<ProductInfo> codecOf(String name) {
+        switch (name) {
+            case "binary":
+                return new ProductInfoBinaryCodec(0);
+            case "binary-lz4":
+                return new ProductInfoBinaryCodec(512);
+            default:
+                return new JsonCacheCodec<>(ProductInfo.class);
+        }
+    }
+
+    private static ProductInfo productOf(String shape) {
+        ProductInfo productInfo = JSONObject.parseObject(SMALL_PRODUCT_JSON, ProductInfo.class);
+        if ("large".equals(shape)) {
+            StringBuilder pictures = new StringBuilder();
+            StringBuilder specification = new StringBuilder();
+            StringBuilder service = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                pictures.append(i == 0 ? "" : ",").append("http://img.eshop.com/product/1/detail_").append(i).append(".jpg");
+                specification.append("规格参数").append(i).append("：iphone7 A1660 全网通 4G手机 ").append(i * 32).append("GB；");
+                service.append("售后条款").append(i).append("：自购买之日起7天内无理由退货，15天内质量问题换货；");
+            }
+            productInfo.setPictureList(pictures.toString());
+            productInfo.setSpecification(specification.toString());
+            productInfo.setService(service.toString());
+        }
+        return productInfo;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String shape : new String[]{"small", "large"}) {
+            for (String name : new String[]{"json", "binary", "binary-lz4"}) {
+                System.out.printf("%s/%s: %d bytes%n", shape, name, codecOf(name).encode(productOf(shape)).length);
+            }
+        }
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.roncoo.eshop.cache.codec;
+
+import com.roncoo.eshop.cache.model.ProductInfo;
+import com.roncoo.eshop.cache.model.ShopInfo;
+import com.roncoo.eshop.cache.utils.CacheVersionUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+/**
+ * 缓存编解码器单元测试
+ */
+public class CacheCodecTest extends TestCase {
+
+    public void testProductInfoRoundTrip() {
+        ProductInfoBinaryCodec codec = new ProductInfoBinaryCodec(0);
+        ProductInfo productInfo = product("iphone7的规格");
+        byte[] bytes = codec.encode(productInfo);
+
+        assertTrue(BinaryCacheCodec.isBinary(bytes));
+        assertEquals(0, bytes[2]);
+        assertEquals(productInfo, codec.decode(bytes));
+        assertEquals(CacheVersionUtils.versionOf("2018-01-01 12:00:00"), codec.decode(bytes).getVersion());
+    }
+
+    public void testNullFields() {
+        ProductInfoBinaryCodec productCodec = new ProductInfoBinaryCodec(0);
+        ProductInfo productInfo = new ProductInfo();
+        productInfo.setId(1L);
+        productInfo.setShopId(2L);
+        ProductInfo decodedProduct = productCodec.decode(productCodec.encode(productInfo));
+        assertEquals(productInfo, decodedProduct);
+        assertNull(decodedProduct.getName());
+        assertNull(decodedProduct.getPrice());
+        assertNull(decodedProduct.getModifiedTime());
+
+        ShopInfoBinaryCodec shopCodec = new ShopInfoBinaryCodec(0);
+        ShopInfo shopInfo = new ShopInfo();
+        shopInfo.setId(1L);
+        shopInfo.setGoodCommentRate(0.99);
+        ShopInfo decodedShop = shopCodec.decode(shopCodec.encode(shopInfo));
+        assertEquals(shopInfo, decodedShop);
+        assertNull(decodedShop.getLevel());
+        assertNull(decodedShop.getName());
+    }
+
+    public void testShopInfoRoundTrip() {
+        ShopInfoBinaryCodec codec = new ShopInfoBinaryCodec(0);
+        ShopInfo shopInfo = new ShopInfo();
+        shopInfo.setId(1L);
+        shopInfo.setName("小王的手机店");
+        shopInfo.setLevel(5);
+        shopInfo.setGoodCommentRate(0.99);
+        shopInfo.setModifiedTime("2018-01-01 12:00:00");
+        shopInfo.setVersion(1514779200123L);
+
+        assertEquals(shopInfo, codec.decode(codec.encode(shopInfo)));
+    }
+
+    public void testLegacyVersionResolvedOnSet() {
+        long legacyVersion = CacheVersionUtils.versionOf("2018-01-01 12:00:00");
+        ProductInfo productInfo = new ProductInfo();
+        productInfo.setModifiedTime("2018-01-01 12:00:00");
+        assertEquals(legacyVersion, productInfo.getVersion());
+
+        // 显式的版本号优先，与字段的设置顺序无关
+        productInfo.setVersion(1514779200123L);
+        assertEquals(1514779200123L, productInfo.getVersion());
+        ShopInfo shopInfo = new ShopInfo();
+        shopInfo.setVersion(1514779200123L);
+        shopInfo.setModifiedTime("2018-01-01 12:00:00");
+        assertEquals(1514779200123L, shopInfo.getVersion());
+
+        // 没有版本号的json反序列化后直接持有转换后的版本号
+        ProductInfo legacy = new JsonCacheCodec<>(ProductInfo.class).decode(
+                "{\"id\": 1, \"modifiedTime\": \"2018-01-01 12:00:00\"}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(legacyVersion, legacy.getVersion());
+    }
+
+    public void testLz4() {
+        StringBuilder specification = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            specification.append("屏幕尺寸5.5英寸，分辨率1920x1080；");
+        }
+        ProductInfo productInfo = product(specification.toString());
+        ProductInfoBinaryCodec plain = new ProductInfoBinaryCodec(0);
+        ProductInfoBinaryCodec compressed = new ProductInfoBinaryCodec(512);
+        byte[] plainBytes = plain.encode(productInfo);
+        byte[] compressedBytes = compressed.encode(productInfo);
+
+        assertEquals(0, plainBytes[2]);
+        assertEquals(1, compressedBytes[2]);
+        assertTrue(compressedBytes.length < plainBytes.length / 4);
+        assertEquals(productInfo, compressed.decode(compressedBytes));
+        // 是否压缩由标志位决定，与读取方的压缩阈值无关
+        assertEquals(productInfo, plain.decode(compressedBytes));
+    }
+
+    public void testLz4SkippedBelowThreshold() {
+        ProductInfoBinaryCodec codec = new ProductInfoBinaryCodec(4096);
+        byte[] bytes = codec.encode(product("iphone7的规格"));
+        assertEquals(0, bytes[2]);
+    }
+
+    public void testJsonFallback() {
+        JsonCacheCodec<ProductInfo> jsonCodec = new JsonCacheCodec<>(ProductInfo.class);
+        ProductInfoBinaryCodec binaryCodec = new ProductInfoBinaryCodec(512);
+        JsonFallbackCacheCodec<ProductInfo> jsonWrite = new JsonFallbackCacheCodec<>(binaryCodec, jsonCodec, false);
+        JsonFallbackCacheCodec<ProductInfo> binaryWrite = new JsonFallbackCacheCodec<>(binaryCodec, jsonCodec, true);
+        ProductInfo productInfo = product("iphone7的规格");
+
+        byte[] jsonBytes = jsonWrite.encode(productInfo);
+        byte[] binaryBytes = binaryWrite.encode(productInfo);
+        assertEquals('{', jsonBytes[0]);
+        assertEquals(BinaryCacheCodec.MAGIC, binaryBytes[0]);
+
+        // 两种格式都可以读取
+        assertEquals(productInfo, jsonWrite.decode(binaryBytes));
+        assertEquals(productInfo, binaryWrite.decode(jsonBytes));
+
+        // 之前写入的json字符串、空串和"null"
+        String legacyJson = "{\"id\": 1, \"name\": \"iphone7手机\", \"price\": 5599, \"shopId\": 1, \"modifiedTime\": \"2018-01-01 12:00:00\"}";
+        ProductInfo legacy = binaryWrite.decode(legacyJson.getBytes(StandardCharsets.UTF_8));
+        assertEquals(Long.valueOf(1), legacy.getId());
+        assertEquals(CacheVersionUtils.versionOf("2018-01-01 12:00:00"), legacy.getVersion());
+        assertNull(binaryWrite.decode("".getBytes(StandardCharsets.UTF_8)));
+        assertNull(binaryWrite.decode("null".getBytes(StandardCharsets.UTF_8)));
+        assertNull(binaryWrite.decode(null));
+    }
+
+    public void testNewerSchemaVersionRejected() {
+        ProductInfoBinaryCodec codec = new ProductInfoBinaryCodec(0);
+        byte[] bytes = codec.encode(product("iphone7的规格"));
+        bytes[1] = 2;
+        try {
+            codec.decode(bytes);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // 新代码写入的数据无法读取
+        }
+    }
+
+    private static ProductInfo product(String specification) {
+        ProductInfo productInfo = new ProductInfo();
+        productInfo.setId(1L);
+        productInfo.setName("iphone7手机");
+        productInfo.setPrice(5599.0);
+        productInfo.setPictureList("a.jpg,b.jpg");
+        productInfo.setSpecification(specification);
+        productInfo.setService("iphone7的售后服务");
+        productInfo.setColor("红色,白色,黑色");
+        productInfo.setSize("5.5");
+        productInfo.setShopId(1L);
+        productInfo.setModifiedTime("2018-01-01 12:00:00");
+        return productInfo;
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.roncoo.eshop.cache.offheap;
+
+import com.roncoo.eshop.cache.codec.ProductInfoBinaryCodec;
+import com.roncoo.eshop.cache.model.ProductInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import junit.framework.TestCase;
+
+/**
+ * 堆外缓存单元测试：段内索引的开放寻址和后移删除、clock淘汰、过期、超过槽大小的数据
+ */
+public class OffHeapCacheTest extends TestCase {
+
+    // 4个槽的段，索引有8个位置
+    private static final int SLOTS = 4;
+    private static final int INDEX_MASK = 7;
+
+    private final AtomicLong now = new AtomicLong();
+    private final LongAdder expirations = new LongAdder();
+
+    public void testWrapAroundProbeChain() {
+        OffHeapCache.Segment segment = segment(0);
+        // 三个id都散列到索引的最后一个位置，探测链为 7 -> 0 -> 1
+        long[] ids = idsWithHome(INDEX_MASK, 3);
+        for (long id : ids) {
+            segment.put(id, bytes(id));
+        }
+        for (long id : ids) {
+            assertEquals(String.valueOf(id), string(segment.get(id)));
+        }
+        assertNull(segment.get(idsWithHome(INDEX_MASK, 4)[3]));
+        assertEquals(3, segment.size());
+    }
+
+    public void testRemoveInMiddleOfChain() {
+        OffHeapCache.Segment segment = segment(0);
+        long[] wrapped = idsWithHome(INDEX_MASK, 3);
+        // 散列到位置0的id排在链尾(位置2)，删除链中间后需要跨过环形边界前移
+        long tail = idsWithHome(0, 1)[0];
+        segment.put(wrapped[0], bytes(wrapped[0]));
+        segment.put(wrapped[1], bytes(wrapped[1]));
+        segment.put(wrapped[2], bytes(wrapped[2]));
+        segment.put(tail, bytes(tail));
+
+        segment.remove(wrapped[1]);
+        assertNull(segment.get(wrapped[1]));
+        assertEquals(String.valueOf(wrapped[0]), string(segment.get(wrapped[0])));
+        assertEquals(String.valueOf(wrapped[2]), string(segment.get(wrapped[2])));
+        assertEquals(String.valueOf(tail), string(segment.get(tail)));
+        assertEquals(3, segment.size());
+
+        // 删除链头后剩余的数据仍然可以找到，空出的槽可以复用
+        segment.remove(wrapped[0]);
+        assertEquals(String.valueOf(wrapped[2]), string(segment.get(wrapped[2])));
+        assertEquals(String.valueOf(tail), string(segment.get(tail)));
+        segment.put(wrapped[1], bytes(wrapped[1]));
+        assertEquals(String.valueOf(wrapped[1]), string(segment.get(wrapped[1])));
+        assertEquals(3, segment.size());
+    }
+
+    public void testEvictWhenFull() {
+        OffHeapCache.Segment segment = segment(0);
+        for (long id = 1; id <= SLOTS; id++) {
+            assertFalse(segment.put(id, bytes(id)));
+        }
+        // 所有槽都有访问标记，指针转一圈清除标记后淘汰第一个槽
+        assertTrue(segment.put(5, bytes(5)));
+        assertNull(segment.get(1));
+        assertEquals(SLOTS, segment.size());
+
+        // 被访问过的3跳过，淘汰2；再淘汰时跳过3，淘汰4
+        segment.get(3);
+        assertTrue(segment.put(6, bytes(6)));
+        assertNull(segment.get(2));
+        assertTrue(segment.put(7, bytes(7)));
+        assertNull(segment.get(4));
+        assertEquals("3", string(segment.get(3)));
+        assertEquals("5", string(segment.get(5)));
+        assertEquals(SLOTS, segment.size());
+    }
+
+    public void testOverwrite() {
+        OffHeapCache.Segment segment = segment(0);
+        segment.put(1, bytes("first"));
+        assertFalse(segment.put(1, bytes("second, longer than first")));
+        assertEquals("second, longer than first", string(segment.get(1)));
+        assertFalse(segment.put(1, bytes("third")));
+        assertEquals("third", string(segment.get(1)));
+        assertEquals(1, segment.size());
+    }
+
+    public void testExpire() {
+        OffHeapCache.Segment segment = segment(1000);
+        segment.put(1, bytes(1));
+        now.set(999);
+        assertEquals("1", string(segment.get(1)));
+        // 覆盖写入重新计时
+        segment.put(2, bytes(2));
+        segment.put(1, bytes(1));
+        now.set(1500);
+        assertEquals("1", string(segment.get(1)));
+
+        now.set(2000);
+        assertNull(segment.get(2));
+        assertEquals(1, segment.size());
+        assertEquals(1, expirations.sum());
+        now.set(2500);
+        assertNull(segment.get(1));
+        assertEquals(0, segment.size());
+        assertEquals(2, expirations.sum());
+    }
+
+    public void testTooLargeRemovesOldValue() {
+        OffHeapCache<ProductInfo> cache = new OffHeapCache<>("product_info", new ProductInfoBinaryCodec(0),
+                16 * 64, 64, 0, now::get);
+        ProductInfo productInfo = new ProductInfo();
+        productInfo.setId(1L);
+        productInfo.setName("iphone7手机");
+        cache.put(1L, productInfo);
+        assertEquals(productInfo, cache.get(1L));
+        assertEquals(1, cache.size());
+
+        StringBuilder specification = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            specification.append("iphone7的规格");
+        }
+        productInfo.setSpecification(specification.toString());
+        cache.put(1L, productInfo);
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getTooLargeCount());
+    }
+
+    public void testDisabled() {
+        OffHeapCache<ProductInfo> cache = new OffHeapCache<>("product_info", new ProductInfoBinaryCodec(0), 0, 1024, 0);
+        ProductInfo productInfo = new ProductInfo();
+        productInfo.setId(1L);
+        cache.put(1L, productInfo);
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.capacity());
+    }
+
+    private OffHeapCache.Segment segment(long ttlMillis) {
+        return new OffHeapCache.Segment(SLOTS, 64, ttlMillis, now::get, expirations);
+    }
+
+    /**
+     * 找出n个散列到指定索引位置的id
+     */
+    private static long[] idsWithHome(int home, int n) {
+        long[] ids = new long[n];
+        int found = 0;
+        for (long id = 1; found < n; id++) {
+            if (((int) OffHeapCache.hash(id) & INDEX_MASK) == home) {
+                ids[found++] = id;
+            }
+        }
+        return ids;
+    }
+
+    private static byte[] bytes(long id) {
+        return bytes(String.valueOf(id));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.roncoo.eshop.cache.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * 缓存重建两级锁单元测试，zookeeper操作由 {@link FakeZookeeper} 模拟
+ */
+public class CacheRebuildLockTest extends TestCase {
+
+    private static final String LOCK_PATH = "/product-lock-1";
+
+    private final FakeZookeeper zk = new FakeZookeeper();
+
+    public void testHandoffToWaitingThread() throws Exception {
+        CacheRebuildLock lock = new CacheRebuildLock(zk, 0, 5000);
+        assertTrue(lock.lock(LOCK_PATH));
+
+        AtomicBoolean locked = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            locked.set(lock.lock(LOCK_PATH));
+            lock.unlock(LOCK_PATH);
+        });
+        waiter.start();
+        // 等待线程在本地锁上排队
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        lock.unlock(LOCK_PATH);
+        waiter.join();
+
+        // zk锁直接交给等待的线程，没有释放后再获取
+        assertTrue(locked.get());
+        assertEquals(1, zk.acquired.get());
+        assertEquals(1, lock.getZkAcquiredCount());
+        assertEquals(1, lock.getReusedCount());
+        // 最后一个线程释放时没有等待者，未开启租约，立即释放
+        assertEquals(1, zk.released.get());
+    }
+
+    public void testLeaseReusedAndExpired() throws Exception {
+        CacheRebuildLock lock = new CacheRebuildLock(zk, 50, 5000);
+        assertTrue(lock.lock(LOCK_PATH));
+        lock.unlock(LOCK_PATH);
+        assertTrue(lock.lock(LOCK_PATH));
+        lock.unlock(LOCK_PATH);
+        assertEquals(1, zk.acquired.get());
+        assertEquals(1, lock.getReusedCount());
+        assertEquals(0, zk.released.get());
+
+        // 租约到期后由后台线程释放，之后重新获取
+        Thread.sleep(60);
+        lock.releaseExpired();
+        assertEquals(1, zk.released.get());
+        assertTrue(lock.lock(LOCK_PATH));
+        assertEquals(2, zk.acquired.get());
+        lock.unlock(LOCK_PATH);
+    }
+
+    public void testSessionChangedReacquires() throws Exception {
+        CacheRebuildLock lock = new CacheRebuildLock(zk, 60000, 5000);
+        assertTrue(lock.lock(LOCK_PATH));
+        lock.unlock(LOCK_PATH);
+
+        zk.sessionId = 2;
+        assertTrue(lock.lock(LOCK_PATH));
+        assertEquals(2, zk.acquired.get());
+        assertEquals(0, lock.getReusedCount());
+        // 旧会话的锁节点已随会话删除，不再释放
+        assertEquals(0, zk.released.get());
+        lock.unlock(LOCK_PATH);
+    }
+
+    public void testUnlockAfterFailedLock() throws Exception {
+        CacheRebuildLock lock = new CacheRebuildLock(zk, 0, 5000);
+        zk.available = false;
+        assertFalse(lock.lock(LOCK_PATH));
+        assertEquals(1, zk.getLockMetrics().getFailed());
+
+        // finally中的unlock被忽略，本地锁已释放，之后可以正常获取
+        lock.unlock(LOCK_PATH);
+        assertEquals(0, zk.released.get());
+        zk.available = true;
+        AtomicBoolean locked = new AtomicBoolean();
+        Thread other = new Thread(() -> {
+            locked.set(lock.lock(LOCK_PATH));
+            lock.unlock(LOCK_PATH);
+        });
+        other.start();
+        other.join();
+        assertTrue(locked.get());
+        assertEquals(1, zk.released.get());
+    }
+
+    /**
+     * 只在内存中记录获取/释放次数的zookeeper
+     */
+    private static class FakeZookeeper implements LeaseLockSupport {
+
+        private final ZookeeperUtils.LockMetrics lockMetrics = new ZookeeperUtils.LockMetrics();
+        private final AtomicInteger acquired = new AtomicInteger();
+        private final AtomicInteger released = new AtomicInteger();
+        private volatile boolean available = true;
+        private volatile long sessionId = 1;
+
+        @Override
+        public LeaseLock newLeaseLock(String lockPath) {
+            return new LeaseLock() {
+                @Override
+                public boolean acquire(long time, TimeUnit unit) {
+                    if (!available) {
+                        return false;
+                    }
+                    acquired.incrementAndGet();
+                    return true;
+                }
+
+                @Override
+                public void release() {
+                    released.incrementAndGet();
+                }
+            };
+        }
+
+        @Override
+        public long getSessionId() {
+            return sessionId;
+        }
+
+        @Override
+        public ZookeeperUtils.LockMetrics getLockMetrics() {
+            return lockMetrics;
+        }
+    }
+
+}
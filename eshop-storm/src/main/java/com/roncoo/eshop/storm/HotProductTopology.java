@@ -1,6 +1,5 @@
 package com.roncoo.eshop.storm;
 
-import com.roncoo.eshop.storm.zk.ZookeeperUtils;
 import org.apache.storm.Config;
 import org.apache.storm.LocalCluster;
 import org.apache.storm.StormSubmitter;
@@ -10,7 +9,7 @@ import org.apache.storm.utils.Utils;
 
 import com.roncoo.eshop.storm.bolt.LogParseBolt;
 import com.roncoo.eshop.storm.bolt.ProductCountBolt;
-import com.roncoo.eshop.storm.spout.AccessLogKafkaSpout;
+import com.roncoo.eshop.storm.spout.ReliableAccessLogKafkaSpout;
 
 /**
  * 热数据统计拓扑
@@ -24,7 +23,8 @@ public class HotProductTopology {
         // 将spout和bolts组合起来，构建成一个拓扑
         TopologyBuilder builder = new TopologyBuilder();
 
-        builder.setSpout("AccessLogKafkaSpout", new AccessLogKafkaSpout(), 1);
+        // spout并行度设置为access-log的partition数，每个task消费其中一部分partition
+        builder.setSpout("AccessLogKafkaSpout", new ReliableAccessLogKafkaSpout(), 1);
         builder.setBolt("LogParseBolt", new LogParseBolt(), 2)
                 .setNumTasks(2)
                 .shuffleGrouping("AccessLogKafkaSpout");
@@ -32,10 +32,9 @@ public class HotProductTopology {
                 .setNumTasks(2)
                 .fieldsGrouping("LogParseBolt", new Fields("productId"));
 
-        // 先清除旧数据
-        ZookeeperUtils.getInstance().releaseDistributedLock("/taskid-list");
-
         Config config = new Config();
+        // 每个spout task已发射未ack的tuple上限
+        config.setMaxSpoutPending(10000);
         // 若参数不为空，则说明是在命令行打算提交到storm集群上去
         if (args != null && args.length > 0) {
             config.setNumWorkers(3);
@@ -1,8 +1,16 @@
 package com.roncoo.eshop.storm.bolt;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.roncoo.eshop.storm.conf.HotProductConf;
+import com.roncoo.eshop.storm.counter.ProductCountCombiner;
+import com.roncoo.eshop.storm.parser.AccessLogParser;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.storm.Config;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -10,19 +18,46 @@ import org.apache.storm.topology.base.BaseRichBolt;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
-
-import com.alibaba.fastjson.JSONObject;
+import org.apache.storm.utils.TupleUtils;
 
 /**
  * Nginx日志解析的bolt
+ * <p>
+ * 1、上游spout发射的是kafka消息的原始字节，用 {@link AccessLogParser} 直接从字节中提取 uri_args.productId，不构建json对象
+ * 2、解析出的productId先在本task内预聚合(combiner)，收到tick tuple或攒够一批后再发射 (productId, count)，
+ * 同一个热点商品在每个批次里只发射一个tuple，大大减少按productId分组后集中到单个ProductCountBolt task的tuple数
+ * 3、每个 (productId, count) 只锚定这个商品对应的输入tuple，发射后统一ack整个批次的输入tuple
  */
 @Slf4j
 public class LogParseBolt extends BaseRichBolt {
 
     private static final long serialVersionUID = -8017609899644290359L;
 
+    // 预聚合批次的最长时间（秒），即tick tuple的频率
+    private final int flushIntervalSecs;
+
     private OutputCollector collector;
 
+    private transient AccessLogParser parser;
+    private transient ProductCountCombiner combiner;
+    // 下标与combiner中商品的下标对应，存放每个商品在本批次中的输入tuple，列表在批次之间重复使用
+    private transient List<List<Tuple>> anchors;
+    // 本批次中没有解析出productId的输入tuple
+    private transient List<Tuple> unmatched;
+    private transient int batchTuples;
+    private int maxBatchSize;
+
+    public LogParseBolt() {
+        this(HotProductConf.DEFAULT_COMBINER_FLUSH_SECS);
+    }
+
+    /**
+     * @param flushIntervalSecs 预聚合批次的最长时间（秒）
+     */
+    public LogParseBolt(int flushIntervalSecs) {
+        this.flushIntervalSecs = flushIntervalSecs;
+    }
+
     /**
      * 对于bolt来说，第一个方法，就是prepare方法
      * <p>
@@ -31,6 +66,12 @@ public class LogParseBolt extends BaseRichBolt {
     @SuppressWarnings("rawtypes")
     public void prepare(Map conf, TopologyContext context, OutputCollector collector) {
         this.collector = collector;
+        this.parser = new AccessLogParser();
+        this.combiner = new ProductCountCombiner();
+        this.anchors = new ArrayList<>();
+        this.unmatched = new ArrayList<>();
+        this.maxBatchSize = Math.max(1, HotProductConf.getInt(conf,
+                HotProductConf.COMBINER_MAX_BATCH, HotProductConf.DEFAULT_COMBINER_MAX_BATCH));
     }
 
 
@@ -40,25 +81,86 @@ public class LogParseBolt extends BaseRichBolt {
      * 就是说，每次接收到一条数据后，就会交给这个executor方法来执行
      */
     public void execute(Tuple tuple) {
-        // 从日志中提取出productId，并发射出去
-        String message = tuple.getStringByField("message");
-        log.info("接收到一条消息：{}", message);
+        if (TupleUtils.isTick(tuple)) {
+            flush();
+            return;
+        }
+
+        // 从日志中提取出productId，累加到本批次的预聚合结果中
+        byte[] message = messageBytes(tuple.getValueByField("message"));
+        if (log.isDebugEnabled()) {
+            log.debug("接收到一条消息：{}", new String(message, StandardCharsets.UTF_8));
+        }
+
+        long productId = parser.parseProductId(message);
+        if (productId != AccessLogParser.NOT_FOUND) {
+            int slot = combiner.add(productId, 1);
+            if (slot == anchors.size()) {
+                anchors.add(new ArrayList<>());
+            }
+            anchors.get(slot).add(tuple);
+        } else {
+            // 格式错误或没有productId的日志重放也无法解析，随批次一起ack
+            unmatched.add(tuple);
+        }
+        if (++batchTuples >= maxBatchSize) {
+            flush();
+        }
+    }
 
-        JSONObject messageJSON = JSONObject.parseObject(message);
-        JSONObject uriArgsJSON = messageJSON.getJSONObject("uri_args");
-        Long productId = uriArgsJSON.getLong("productId");
+    /**
+     * 发射本批次的预聚合结果，再ack本批次所有的输入tuple
+     */
+    private void flush() {
+        int size = combiner.size();
+        for (int slot = 0; slot < size; slot++) {
+            long productId = combiner.productIdAt(slot);
+            long count = combiner.countAt(slot);
+            collector.emit(anchors.get(slot), new Values(productId, count));
+            if (log.isDebugEnabled()) {
+                log.debug("发射商品访问次数，productId={}，count={}", productId, count);
+            }
+        }
+        for (int slot = 0; slot < size; slot++) {
+            List<Tuple> inputs = anchors.get(slot);
+            for (Tuple input : inputs) {
+                collector.ack(input);
+            }
+            inputs.clear();
+        }
+        for (Tuple input : unmatched) {
+            collector.ack(input);
+        }
+        unmatched.clear();
+        combiner.clear();
+        batchTuples = 0;
+    }
 
-        if (productId != null) {
-            collector.emit(new Values(productId));
-            log.info("发射一个商品id={}", productId);
+    /**
+     * spout发射的是byte[]，兼容旧的String格式
+     */
+    private static byte[] messageBytes(Object message) {
+        if (message instanceof byte[]) {
+            return (byte[]) message;
         }
+        return String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 每flushIntervalSecs秒收到一次tick tuple
+     */
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, flushIntervalSecs);
+        return conf;
     }
 
     /**
      * 定义发射出去的tuple，每个field的名称
      */
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
-        declarer.declare(new Fields("productId"));
+        declarer.declare(new Fields("productId", "count"));
     }
 
 }
@@ -1,41 +1,86 @@
 package com.roncoo.eshop.storm.bolt;
 
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import com.alibaba.fastjson.JSONArray;
-import com.roncoo.eshop.storm.http.HttpClientUtils;
+import com.roncoo.eshop.storm.conf.HotProductConf;
+import com.roncoo.eshop.storm.counter.ApproximateProductCounter;
+import com.roncoo.eshop.storm.counter.CountVisitor;
+import com.roncoo.eshop.storm.counter.ExactProductCounter;
+import com.roncoo.eshop.storm.counter.HotProductCandidates;
+import com.roncoo.eshop.storm.counter.HotProductTracker;
+import com.roncoo.eshop.storm.counter.ProductCountSnapshot;
+import com.roncoo.eshop.storm.counter.ProductCounter;
+import com.roncoo.eshop.storm.counter.QuantileSketch;
+import com.roncoo.eshop.storm.counter.TopNSelector;
+import com.roncoo.eshop.storm.http.HotProductPusher;
+import com.roncoo.eshop.storm.http.PushEndpointRegistry;
 import com.roncoo.eshop.storm.zk.ZookeeperUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.protocol.HTTP;
+import org.apache.storm.Config;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.topology.base.BaseRichBolt;
-import org.apache.storm.trident.util.LRUMap;
 import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
 import org.apache.storm.utils.Utils;
 
 /**
  * 商品访问次数统计bolt，上游是Nginx日志解析的bolt {@link com.roncoo.eshop.storm.bolt.LogParseBolt}
+ * <p>
+ * 1、计数器只由executor线程单线程写入，每收到一个tick tuple，executor线程让窗口前进
+ * 2、默认(tick模式)topN计算和热点发现也由tick tuple驱动，在executor线程中按配置的间隔直接读取计数器，不复制快照，
+ * 不再有自行启动的线程，storm停止或重新分配task时不会残留
+ * 3、thread模式保留原先的两个后台线程，executor线程每个tick发布一次 {@link ProductCountSnapshot}，
+ * 后台线程只读取已发布的快照，cleanup时停止
  */
 @Slf4j
 public class ProductCountBolt extends BaseRichBolt {
 
     private static final long serialVersionUID = -8761807561458126413L;
 
-    // 存放访问次数统计结果<productId,访问次数>
-    private LRUMap<Long, Long> productCountMap = new LRUMap<>(1000);
+    // 存放访问次数统计结果<productId,最近N秒的访问次数>，在prepare中按配置创建(精确模式或内存固定的近似模式)
+    private transient ProductCounter productCounter;
+    // 热点发现的候选商品：累加后的访问次数超过上一轮取消热点阈值的商品，热点发现只检查这些商品
+    private transient HotProductCandidates hotCandidates;
+
+    // thread模式：计数器只由executor线程写入；executor线程每个tick发布一次不可变快照，后台线程只读快照，无需加锁
+    private transient volatile ProductCountSnapshot snapshot;
+
+    // 每个task发布到zk的热门商品个数，以及写入zk的间隔
+    private int topN;
+    private int topNIntervalMillis;
+    // 热点发现的执行间隔、热点/取消热点的阈值倍数、最短保持时间以及衰减半衰期
+    private int hotFindIntervalMillis;
+    private int hotThresholdMultiple;
+    private int hotExitThresholdMultiple;
+    private int hotMinHoldMillis;
+    private int hotDecayHalfLifeMillis;
+
+    // tick模式下，按tick计数调度topN计算和热点发现(tick从1开始计数，0表示还没有执行过)
+    private boolean tickMode;
+    private transient long ticks;
+    private transient long lastTopNTick;
+    private transient long lastHotFindTick;
+    private transient TopNPublisher topNPublisher;
+    private transient HotProductFinder hotProductFinder;
+    // 热点商品的异步推送
+    private transient HotProductPusher hotProductPusher;
+
+    // thread模式下的后台线程
+    private transient volatile boolean running;
+    private transient List<Thread> workers;
 
     private ZookeeperUtils zkUtils;
     private int taskid;
+    // 本task在zk中的临时顺序节点，关闭即删除
+    private transient Closeable taskMember;
+
+    private OutputCollector collector;
 
 
     /**
@@ -44,18 +89,70 @@ public class ProductCountBolt extends BaseRichBolt {
      * OutputCollector，这个也是Bolt的这个tuple的发射器
      */
     public void prepare(Map conf, TopologyContext context, OutputCollector collector) {
-        // 启动topN结果集计算线程
-        new Thread(new ProductCountThread()).start();
-        // 启动热点发现线程
-        new Thread(new HotProductFindThread()).start();
+        this.collector = collector;
+        // 默认统计最近60秒(60个1秒的时间桶)的访问次数
+        this.productCounter = createProductCounter(conf);
+        this.hotCandidates = new HotProductCandidates();
+        this.topN = HotProductConf.getInt(conf, HotProductConf.TOP_N, HotProductConf.DEFAULT_TOP_N);
+        this.topNIntervalMillis = HotProductConf.getInt(conf, HotProductConf.TOP_N_INTERVAL_MILLIS, HotProductConf.DEFAULT_TOP_N_INTERVAL_MILLIS);
+        this.hotFindIntervalMillis = HotProductConf.getInt(conf, HotProductConf.HOT_FIND_INTERVAL_MILLIS, HotProductConf.DEFAULT_HOT_FIND_INTERVAL_MILLIS);
+        this.hotThresholdMultiple = HotProductConf.getInt(conf, HotProductConf.HOT_THRESHOLD_MULTIPLE, HotProductConf.DEFAULT_HOT_THRESHOLD_MULTIPLE);
+        this.hotExitThresholdMultiple = HotProductConf.getInt(conf, HotProductConf.HOT_EXIT_THRESHOLD_MULTIPLE, HotProductConf.DEFAULT_HOT_EXIT_THRESHOLD_MULTIPLE);
+        this.hotMinHoldMillis = HotProductConf.getInt(conf, HotProductConf.HOT_MIN_HOLD_MILLIS, HotProductConf.DEFAULT_HOT_MIN_HOLD_MILLIS);
+        this.hotDecayHalfLifeMillis = HotProductConf.getInt(conf, HotProductConf.HOT_DECAY_HALF_LIFE_MILLIS, HotProductConf.DEFAULT_HOT_DECAY_HALF_LIFE_MILLIS);
+        this.tickMode = !HotProductConf.SCHEDULE_MODE_THREAD.equalsIgnoreCase(
+                HotProductConf.getString(conf, HotProductConf.SCHEDULE_MODE, HotProductConf.SCHEDULE_MODE_TICK));
+        this.topNPublisher = new TopNPublisher();
+        this.hotProductFinder = new HotProductFinder();
         // 初始化zk连接
         this.zkUtils = ZookeeperUtils.getInstance();
-        // 1、将自己的taskid追加到一个zookeeper node中，形成taskid的列表(格式就是逗号分隔，拼接成一个列表)
+        this.hotProductPusher = new HotProductPusher(conf, new PushEndpointRegistry(conf, zkUtils));
+        // 1、在task成员父节点下创建自己的临时顺序子节点，task退出后自动删除
         // 2、然后每次都将自己的热门商品列表，写入自己的taskid对应的zookeeper节点
-        // 3、然后这样的话，并行的预热程序才能从taskid列表中知道有哪些taskid
+        // 3、然后这样的话，并行的预热程序才能从子节点列表中知道有哪些存活的taskid
         // 4、然后并行预热程序根据每个taskid去获取一个锁，然后再从对应的zk node中拿到热门商品列表
-        this.addTaskId(context.getThisTaskId());
         this.taskid = context.getThisTaskId();
+        this.registerTask(taskid);
+        if (!tickMode) {
+            startWorkers();
+        }
+    }
+
+    /**
+     * thread模式：启动topN结果集计算线程和热点发现线程
+     */
+    private void startWorkers() {
+        this.running = true;
+        this.workers = new ArrayList<>(2);
+        workers.add(new Thread(new ProductCountThread(), "product-count-topn-" + taskid));
+        workers.add(new Thread(new HotProductFindThread(), "product-count-hot-find-" + taskid));
+        for (Thread worker : workers) {
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * 停止thread模式的后台线程，关闭热点推送
+     */
+    @Override
+    public void cleanup() {
+        running = false;
+        if (workers != null) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        if (hotProductPusher != null) {
+            hotProductPusher.close();
+        }
+        if (taskMember != null) {
+            try {
+                taskMember.close();
+            } catch (IOException e) {
+                log.warn("删除task的zk节点失败，taskid={}", taskid, e);
+            }
+        }
     }
 
     /**
@@ -64,16 +161,82 @@ public class ProductCountBolt extends BaseRichBolt {
      * 就是说，每次接收到一条数据后，就会交给这个executor方法来执行
      */
     public void execute(Tuple tuple) {
-        Long productId = tuple.getLongByField("productId");
-        log.info("接收到一个商品id={}", productId);
+        if (TupleUtils.isTick(tuple)) {
+            onTick(System.currentTimeMillis());
+            return;
+        }
+        // 上游已按商品预聚合，delta为一个批次内该商品的访问次数
+        long productId = tuple.getLongByField("productId");
+        long delta = tuple.getLongByField("count");
+        long now = System.currentTimeMillis();
+        long count = productCounter.add(productId, delta, now);
+        hotCandidates.onCount(productId, count);
+        if (log.isDebugEnabled()) {
+            log.debug("商品访问计数+{}，productId={}，count={}", delta, productId, count);
+        }
+        collector.ack(tuple);
+    }
 
-        Long count = productCountMap.get(productId);
-        if (count == null) {
-            count = 0L;
+    /**
+     * 每个tick：窗口前进到当前时间；thread模式下发布快照，tick模式下按tick计数直接基于计数器执行到期的topN计算和热点发现
+     * <p>
+     * 与原先的线程一样，窗口内没有访问记录时不计算，等有数据后立即执行一次，之后按间隔执行
+     */
+    private void onTick(long now) {
+        productCounter.advance(now);
+        if (!tickMode) {
+            this.snapshot = ProductCountSnapshot.of(productCounter, hotCandidates);
+            return;
+        }
+        ticks++;
+        if (productCounter.size() == 0) {
+            return;
         }
-        count++;
-        productCountMap.put(productId, count);
-        log.info("商品访问计数+1，productId={}，count={}", productId, count);
+        if (lastTopNTick == 0 || ticks - lastTopNTick >= intervalTicks(topNIntervalMillis)) {
+            lastTopNTick = ticks;
+            try {
+                topNPublisher.publish(productCounter::forEach);
+            } catch (Exception e) {
+                log.error("【热门商品列表统计】失败，taskid=" + taskid, e);
+            }
+        }
+        if (lastHotFindTick == 0 || ticks - lastHotFindTick >= intervalTicks(hotFindIntervalMillis)) {
+            lastHotFindTick = ticks;
+            try {
+                hotProductFinder.find(productCounter.distribution(),
+                        visitor -> hotCandidates.forEach(productCounter, visitor));
+            } catch (Exception e) {
+                log.error("【热点发现】任务执行失败", e);
+            }
+        }
+    }
+
+    /**
+     * 执行间隔换算成tick个数，至少为1
+     */
+    private static long intervalTicks(long intervalMillis) {
+        return Math.max(1, intervalMillis / (HotProductConf.DEFAULT_TICK_SECS * 1000L));
+    }
+
+    /**
+     * thread模式：读取最近发布的快照，若还没有快照或窗口内没有访问记录则返回null
+     */
+    private ProductCountSnapshot latestSnapshot() {
+        ProductCountSnapshot current = this.snapshot;
+        if (current == null || current.size() == 0) {
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * 每DEFAULT_TICK_SECS秒收到一次tick tuple
+     */
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, HotProductConf.DEFAULT_TICK_SECS);
+        return conf;
     }
 
     /**
@@ -84,225 +247,179 @@ public class ProductCountBolt extends BaseRichBolt {
 
 
     /**
-     * ProductCountBolt所有的task启动的时候， 都会将自己的taskid写到同一个专用于记录taskid列表的 zk node 中
-     * 格式就是逗号分隔，拼接成一个taskid列表
+     * ProductCountBolt所有的task启动的时候，都在 {@link #getTaskMembersPath()} 下创建一个自己的临时顺序子节点，
+     * 节点名称为 task-{taskid}-{序号}，节点数据为taskid
+     * <p>
+     * 1、每个task只创建自己的节点，不需要分布式锁，拓扑启动时各task不再排队访问zk
+     * 2、task所在的worker退出后会话结束，节点由zk自动删除，缓存预热只会看到存活的task
      *
      * @param taskid storm任务id
      */
-    private void addTaskId(int taskid) {
-        zkUtils.acquireDistributedLock(getLockPath());
-        try {
-            zkUtils.createNode("/taskid-list");  // 读/写节点数据前都必须先创建出节点
-            String taskidList = zkUtils.getNodeData("/taskid-list");
-            //非空则以逗号分隔拼接
-            taskidList = StringUtils.isNotBlank(taskidList) ? taskidList + "," + taskid : String.valueOf(taskid);
-            zkUtils.setNodeData("/taskid-list", taskidList);
-            log.info("新加入taskid={}，当前taskidList={}", taskid, taskidList);
-        } finally {
-            zkUtils.releaseDistributedLock(getLockPath());
+    private void registerTask(int taskid) {
+        this.taskMember = zkUtils.createEphemeralSequentialNode(getTaskMembersPath(), "task-" + taskid + "-", String.valueOf(taskid));
+        log.info("task已注册，taskid={}", taskid);
+    }
+
+    /**
+     * 计算topN结果集存入zk，提供给冷启动时的缓存预热接口使用
+     */
+    private class TopNPublisher {
+
+        // 基于小顶堆的topN选择器，每轮计算重复使用
+        private final TopNSelector topNSelector = new TopNSelector(topN);
+
+        /**
+         * @param counts 遍历商品访问次数：tick模式为计数器，thread模式为快照
+         */
+        void publish(Consumer<CountVisitor> counts) {
+            // 1 一次遍历商品访问次数，选出访问次数最多的N个商品，再按访问次数降序排列
+            topNSelector.reset();
+            counts.accept(topNSelector);
+            topNSelector.sortDescending();
+
+            // 2 每次都将自己的热门商品列表，写入自己的taskid对应的zookeeper节点
+            List<Long> topNProductIds = new ArrayList<>(topNSelector.size());
+            for (int i = 0; i < topNSelector.size(); i++) {
+                topNProductIds.add(topNSelector.productIdAt(i));
+            }
+            String topNProductIdsJSON = JSONArray.toJSONString(topNProductIds);
+            // 更新自己的taskid对应的热门商品列表
+            String thisTaskPath = ProductCountBolt.getTopN4ThisTaskPath(taskid);
+            zkUtils.createNode(thisTaskPath);
+            zkUtils.setNodeData(thisTaskPath, topNProductIdsJSON);
+            log.info("当前task统计的top{}结果为:{}", topN, topNProductIdsJSON);
+            // 清除此task的热门商品列表是否已被预热的标记节点
+            zkUtils.deleteNode("/taskid-status-" + taskid);
         }
     }
 
     /**
-     * 每分钟计算1次topN结果集存入zk，提供给冷启动时的缓存预热接口使用
+     * thread模式：每分钟(可配置)计算1次topN结果集存入zk
      */
     private class ProductCountThread implements Runnable {
         @Override
         public void run() {
             log.info("topN计算线程正在运行...");
-            // 当前LRUMap的访问次数排序后的topN结果集
-            List<Map.Entry<Long, Long>> topNProductList = new ArrayList<>();
-            while (true) {
+            while (running) {
                 try {
-                    topNProductList.clear();    //每次重新计算topN结果集
-                    int n = 3;
-
-                    if (productCountMap.size() == 0) {  //若LRUMap为空则100ms后再计算
+                    ProductCountSnapshot snapshot = latestSnapshot();
+                    if (snapshot == null) {  //若窗口内没有访问记录则100ms后再计算
                         Utils.sleep(100);
                         continue;
                     }
-
-                    // 1 遍历存放访问次数统计结果的LRUMap，并(排名)筛选出放入topN结果集的元素
-                    for (Map.Entry<Long, Long> productCountEntry : productCountMap.entrySet()) {
-                        // 若topN结果集为空则直接放入
-                        if (topNProductList.size() == 0) {
-                            topNProductList.add(productCountEntry);
-                        } else {   //否则需要与topN结果集已有的数据做比较
-                            boolean bigger = false;
-                            // 2 遍历当前topN结果集
-                            for (int i = 0; i < topNProductList.size(); i++) {
-                                // 若LRUMap的当前元素 > topN结果集的当前元素，则需要把topN结果集lastIndex以后的所有元素往后移1位(腾出空位)，再放入topN结果集
-                                if (productCountEntry.getValue() > topNProductList.get(i).getValue()) {
-                                    int lastIndex = topNProductList.size() < n ? topNProductList.size() - 1 : n - 2; // 最后一个元素的下标
-                                    for (int j = lastIndex; j >= i; j--) {
-                                        if (j + 1 == topNProductList.size()) {  //越界情况处理：添加空元素触发扩容
-                                            topNProductList.add(null);
-                                        }
-                                        topNProductList.set(j + 1, topNProductList.get(j));
-                                    }
-                                    topNProductList.set(i, productCountEntry);
-                                    bigger = true;
-                                    break;
-                                }
-                            }
-                            // 若LRUMap的当前元素比topN结果集中所有元素都小，且topN结果集还没满，则直接放入最后一个位置
-                            if (!bigger && topNProductList.size() < n) {
-                                topNProductList.add(productCountEntry);
-                            }
-                        }
-                    }
-
-                    // 每次都将自己的热门商品列表，写入自己的taskid对应的zookeeper节点
-                    List<Long> topNProductIds = topNProductList
-                            .stream()
-                            .map(Map.Entry::getKey)
-                            .collect(Collectors.toList());
-                    String topNProductIdsJSON = JSONArray.toJSONString(topNProductIds);
-                    // 更新自己的taskid对应的热门商品列表
-                    String thisTaskPath = ProductCountBolt.getTopN4ThisTaskPath(taskid);
-                    zkUtils.createNode(thisTaskPath);
-                    zkUtils.setNodeData(thisTaskPath, topNProductIdsJSON);
-                    log.info("当前task统计的topN结果为:{}", topNProductIdsJSON);
-                    // 清除此task的热门商品列表是否已被预热的标记节点
-                    zkUtils.deleteNode("/taskid-status-" + taskid);
-                    // 休眠1分钟
-                    Utils.sleep(60000);
+                    topNPublisher.publish(snapshot::forEach);
+                    Utils.sleep(topNIntervalMillis);
                 } catch (Exception e) {
-                    log.error("【热门商品列表统计】失败，taskid=" + taskid, e);
+                    if (running) {
+                        log.error("【热门商品列表统计】失败，taskid=" + taskid, e);
+                    }
                 }
             }
+            log.info("topN计算线程已停止");
         }
     }
 
 
     /**
-     * 每 5s 进行一次热点发现(达到平均访问次数值的10倍)，用于Nginx缓存以及流量分发策略自动降级，详细如下：
+     * 每 5s(可配置) 进行一次热点发现(达到后95%商品平均访问次数值的10倍)，用于Nginx缓存以及流量分发策略自动降级，详细如下：
      * 1.请求流量分发的nginx触发流量分发策略降级的接口（在nginx缓存该productId的"热点"标记，在处理客户端请求时若热点标记为true则降级为随机负载均衡，否则走hash策略）
      * 2.请求商品服务查询该热点商品的数据，并将热点的数据反向推送到所有应用层nginx中缓存起来
      */
+    private class HotProductFinder {
+
+        // 热点商品的冷/热状态机：进入和取消使用不同的阈值，成为热点后至少保持一段时间，流量回落后按半衰期逐渐冷却
+        private final HotProductTracker hotProductTracker = new HotProductTracker(hotMinHoldMillis, hotDecayHalfLifeMillis);
+        private final List<Long> newHotProductIds = new ArrayList<>();                  //本轮新出现的热点商品
+        private final List<Long> goneHotProductIds = new ArrayList<>();                 //本轮消失的热点商品
+
+        /**
+         * @param countSketch 商品访问次数的分布
+         * @param candidates  遍历热点发现的候选商品：tick模式直接读取计数器，thread模式为快照中的候选
+         */
+        void find(QuantileSketch countSketch, Consumer<CountVisitor> candidates) {
+            // 1、从访问次数分布的分位数草图中，直接读取后95%的商品的访问次数的平均值，不再对全部商品排序
+            // 2、如果某个商品比如它的访问量是平均值的10倍，就认为是热点；已经是热点的商品降到平均值的5倍以下(并保持足够久)才取消
+            long avgCount = (long) countSketch.meanOfLowest(0.95);
+            long threshold = hotThresholdMultiple * avgCount;
+            long exitThreshold = Math.min(hotExitThresholdMultiple * avgCount, threshold);
+            log.info("计算出窗口内后95%的商品的访问次数平均值avgCount={}，商品个数={}，热点阈值={}，取消热点阈值={}",
+                    avgCount, countSketch.size(), threshold, exitThreshold);
+
+            // 3、只检查候选商品(累加时访问次数超过上一轮取消热点阈值的商品)，不再遍历窗口内的全部商品；
+            // 已经是热点的商品访问次数只要超过取消热点阈值就在候选中，没有调用visit的视为0
+            candidates.accept((productId, count) -> {
+                if (count > exitThreshold) {
+                    hotProductTracker.visit(productId, count);
+                }
+            });
+            // 下一轮的候选阈值：之后累加时访问次数超过本轮取消热点阈值的商品才需要检查
+            hotCandidates.setThreshold(exitThreshold);
+            newHotProductIds.clear();
+            goneHotProductIds.clear();
+            hotProductTracker.endRound(threshold, exitThreshold, System.currentTimeMillis(), newHotProductIds, goneHotProductIds);
+
+            // 4、只有状态真正变化的商品才推送：新热点异步推送给分发层和应用层nginx，消失的热点异步通知分发层nginx取消
+            for (Long productId : newHotProductIds) {
+                log.info("发现一个热点，productId={}", productId);
+            }
+            hotProductPusher.pushHot(newHotProductIds);
+            for (Long productId : goneHotProductIds) {
+                log.info("发现一个热点消失了，productId={}", productId);
+            }
+            hotProductPusher.cancelHot(goneHotProductIds);
+            // 之前没有送达(地址冷却中或重试后仍失败)的推送，地址恢复后重新发送
+            hotProductPusher.redeliver();
+            if (!newHotProductIds.isEmpty() || !goneHotProductIds.isEmpty()) {
+                log.info("当前热点商品个数={}", hotProductTracker.size());
+            }
+        }
+    }
+
+    /**
+     * thread模式：每 5s(可配置) 进行一次热点发现
+     */
     private class HotProductFindThread implements Runnable {
         @Override
         public void run() {
             log.info("热点发现线程正在运行...");
-            List<Map.Entry<Long, Long>> productCountList = new ArrayList<>(); // 当前LRUMap的访问次数排序后的结果集
-            List<Long> hotProductIdList = new ArrayList<>();                  // 热点商品结果集
-            List<Long> lastTimeHotProductIds = new ArrayList<>();             //暂存上一次发现的热点商品
-
-            while (true) {
-                // 1、将LRUMap中的数据按照访问次数，进行全局的排序
-                // 2、计算95%的商品的访问次数的平均值
-                // 3、遍历排序后的商品访问次数，从最大的开始
-                // 4、如果某个商品比如它的访问量是平均值的10倍，就认为是热点
+            while (running) {
                 try {
-                    productCountList.clear();
-                    hotProductIdList.clear();
-
-                    if (productCountMap.size() == 0) {
+                    ProductCountSnapshot snapshot = latestSnapshot();
+                    if (snapshot == null) {
                         Utils.sleep(100);
                         continue;
                     }
-
-                    // 1、先做全局的排序，排序算法与ProductCountThread一样
-                    for (Map.Entry<Long, Long> productCountEntry : productCountMap.entrySet()) {
-                        if (productCountList.size() == 0) {
-                            productCountList.add(productCountEntry);
-                        } else {
-                            boolean bigger = false;
-
-                            for (int i = 0; i < productCountList.size(); i++) {
-                                if (productCountEntry.getValue() > productCountList.get(i).getValue()) {
-                                    // 最后一个元素的下标
-                                    int lastIndex = productCountList.size() < productCountMap.size() ? productCountList.size() - 1 : productCountMap.size() - 2;
-                                    for (int j = lastIndex; j >= i; j--) {
-                                        if (j + 1 == productCountList.size()) {
-                                            productCountList.add(null);
-                                        }
-                                        productCountList.set(j + 1, productCountList.get(j));
-                                    }
-                                    productCountList.set(i, productCountEntry);
-                                    bigger = true;
-                                    break;
-                                }
-                            }
-                            if (!bigger) {
-                                if (productCountList.size() < productCountMap.size()) {
-                                    productCountList.add(productCountEntry);
-                                }
-                            }
-                        }
-                    }
-                    // 2、取出商品访问次数LRUMap中的后95%条数据，计算出商品访问次数的平均值
-                    Long totalCount = 0L;  //后95%条数据的总访问量
-                    int calculateCount = Math.max(1, (int) Math.floor(productCountList.size() * 0.95));  //第95%条数据下标(保证>0)
-                    for (int i = productCountList.size() - 1; i >= productCountList.size() - calculateCount; i--) {
-                        totalCount += productCountList.get(i).getValue();
-                    }
-                    long avgCount = totalCount / calculateCount;
-                    log.info("计算出LRUMap中后95%的商品的访问次数平均值avgCount={}，totalCount={}，calculateCount={}", avgCount, totalCount, calculateCount);
-
-                    // 3、从第一个元素开始遍历，超过平均访问次数值的10倍则视为热点
-                    for (Map.Entry<Long, Long> productCountEntry : productCountList) {
-                        if (productCountEntry.getValue() <= 10 * avgCount) {
-                            continue;
-                        }
-                        log.info("发现一个热点，productCountEntry={}", productCountEntry);
-                        Long productId = productCountEntry.getKey();
-                        hotProductIdList.add(productId);
-                        // 若上次已经有发现此热点则跳过
-                        if (lastTimeHotProductIds.contains(productId)) {
-                            log.info("上次已经发现过此热点，忽略，productCountEntry={}", productCountEntry);
-                            continue;
-                        }
-                        // 请求流量分发的nginx触发流量分发策略降级的接口（在nginx缓存该productId的"热点"标记，在处理客户端请求时若热点标记为true则降级为随机负载均衡，否则走hash策略）
-                        String distributeNginxURL = "http://192.168.11.102/hot?productId=" + productId;
-                        HttpClientUtils.sendGetRequest(distributeNginxURL);
-                        // 请求商品服务查询该热点商品的数据，并将热点的数据反向推送到所有应用层nginx中缓存起来
-                        String cacheServiceURL = "http://192.168.101.10:8080/getProductInfo?productId=" + productId;
-                        String response = HttpClientUtils.sendGetRequest(cacheServiceURL);
-                        List<NameValuePair> params = new ArrayList<>();
-                        params.add(new BasicNameValuePair("productInfo", response));
-                        String productInfo = URLEncodedUtils.format(params, StandardCharsets.UTF_8);
-                        String[] appNginxURLs = new String[]{
-                                "http://192.168.11.103/hot?productId=" + productId + "&" + productInfo,
-                                "http://192.168.11.104/hot?productId=" + productId + "&" + productInfo
-                        };
-                        for (String appNginxURL : appNginxURLs) {
-                            HttpClientUtils.sendGetRequest(appNginxURL);
-                        }
-                        log.info("已通知分发层nginx流量分发策略降级，已把热点数据发送给应用层nginx缓存，productCountEntry={}", productCountEntry);
-                    }
-                    // 4、处理消失的热点数据
-                    // 若第一次发现热点则直接放入上次发现的热点列表
-                    if (CollectionUtils.isEmpty(lastTimeHotProductIds) &&
-                            CollectionUtils.isNotEmpty(hotProductIdList)) {
-                        lastTimeHotProductIds.addAll(hotProductIdList);
-                        log.info("保存上次热点数据，lastTimeHotProductIdList={}", lastTimeHotProductIds);
-                    } else {   // 否则与上一次的热点进行比对，请求取消已消失的热点的nginx缓存
-                        for (Long productId : lastTimeHotProductIds) {
-                            if (!hotProductIdList.contains(productId)) {
-                                log.info("发现一个热点消失了，productId={}", productId);
-                                // 发送一个http请求给到流量分发的nginx中，取消热点缓存的标识
-                                String url = "http://192.168.11.102/cancel_hot?productId=" + productId;
-                                HttpClientUtils.sendGetRequest(url);
-                            }
-                        }
-                        // 清空上次发现的热点列表，若本次有发现热点商品还需要更新为上次发现的热点列表
-                        lastTimeHotProductIds.clear();
-                        if (CollectionUtils.isNotEmpty(hotProductIdList)) {
-                            lastTimeHotProductIds.addAll(hotProductIdList);
-                            log.info("保存上次热点数据，lastTimeHotProductIdList={}", lastTimeHotProductIds);
-                        }
-                    }
-
-                    Utils.sleep(5000);
+                    hotProductFinder.find(snapshot.distribution(), snapshot::forEachCandidate);
+                    Utils.sleep(hotFindIntervalMillis);
                 } catch (Exception e) {
-                    log.error("【热点发现】任务执行失败", e);
+                    if (running) {
+                        log.error("【热点发现】任务执行失败", e);
+                    }
                 }
             }
+            log.info("热点发现线程已停止");
         }
     }
 
 
+    /**
+     * 按配置创建商品访问次数统计：默认精确模式；近似模式下内存固定，与商品个数无关
+     */
+    @SuppressWarnings("rawtypes")
+    private static ProductCounter createProductCounter(Map conf) {
+        int numBuckets = HotProductConf.getInt(conf, HotProductConf.WINDOW_BUCKETS, HotProductConf.DEFAULT_WINDOW_BUCKETS);
+        int bucketMillis = HotProductConf.getInt(conf, HotProductConf.WINDOW_BUCKET_MILLIS, HotProductConf.DEFAULT_WINDOW_BUCKET_MILLIS);
+        String mode = HotProductConf.getString(conf, HotProductConf.COUNTER_MODE, HotProductConf.COUNTER_MODE_EXACT);
+        if (HotProductConf.COUNTER_MODE_APPROXIMATE.equalsIgnoreCase(mode)) {
+            double epsilon = HotProductConf.getDouble(conf, HotProductConf.APPROX_EPSILON, HotProductConf.DEFAULT_APPROX_EPSILON);
+            double delta = HotProductConf.getDouble(conf, HotProductConf.APPROX_DELTA, HotProductConf.DEFAULT_APPROX_DELTA);
+            int capacity = HotProductConf.getInt(conf, HotProductConf.APPROX_CAPACITY, HotProductConf.DEFAULT_APPROX_CAPACITY);
+            log.info("商品访问次数使用近似模式统计，epsilon={}，delta={}，capacity={}", epsilon, delta, capacity);
+            return new ApproximateProductCounter(epsilon, delta, capacity, (long) numBuckets * bucketMillis);
+        }
+        return new ExactProductCounter(numBuckets, bucketMillis);
+    }
+
     /**
      * 存放该 storm task 自己的热门商品列表的 zk node path
      *
@@ -314,10 +431,10 @@ public class ProductCountBolt extends BaseRichBolt {
     }
 
     /**
-     * 获取锁定目录
+     * 所有task的临时顺序子节点的父节点，缓存预热从这里读取存活的taskid
      */
-    public static String getLockPath() {
-        return "/taskid-list-lock";
+    public static String getTaskMembersPath() {
+        return "/hot-product-tasks";
     }
 
 }
@@ -0,0 +1,299 @@
+package com.roncoo.eshop.storm.conf;
+
+import java.util.Map;
+
+/**
+ * 热数据统计拓扑的自定义配置项
+ * <p>
+ * 在 {@link com.roncoo.eshop.storm.HotProductTopology} 中放入storm的 Config，各个spout/bolt在open/prepare时读取，未配置则使用默认值
+ */
+public final class HotProductConf {
+
+    /**
+     * 滑动窗口的时间桶个数，默认60个
+     */
+    public static final String WINDOW_BUCKETS = "eshop.hot.window.buckets";
+    public static final int DEFAULT_WINDOW_BUCKETS = 60;
+
+    /**
+     * 每个时间桶的时长（毫秒），默认1秒，即默认统计最近60秒的访问次数
+     */
+    public static final String WINDOW_BUCKET_MILLIS = "eshop.hot.window.bucket.millis";
+    public static final int DEFAULT_WINDOW_BUCKET_MILLIS = 1000;
+
+    /**
+     * 每个ProductCountBolt task写入zk的热门商品个数(topN)，供缓存预热使用，默认3个
+     */
+    public static final String TOP_N = "eshop.hot.topn";
+    public static final int DEFAULT_TOP_N = 3;
+
+    /**
+     * 热点发现的执行间隔（毫秒），默认5秒
+     */
+    public static final String HOT_FIND_INTERVAL_MILLIS = "eshop.hot.find.interval.millis";
+    public static final int DEFAULT_HOT_FIND_INTERVAL_MILLIS = 5000;
+
+    /**
+     * topN结果集写入zk的间隔（毫秒），默认1分钟
+     */
+    public static final String TOP_N_INTERVAL_MILLIS = "eshop.hot.topn.interval.millis";
+    public static final int DEFAULT_TOP_N_INTERVAL_MILLIS = 60000;
+
+    /**
+     * ProductCountBolt的tick tuple频率（秒），每个tick发布一次访问次数快照，topN和热点发现的间隔按tick取整，默认1秒
+     */
+    public static final int DEFAULT_TICK_SECS = 1;
+
+    /**
+     * topN计算和热点发现的调度方式：tick(默认，由tick tuple驱动在executor线程中执行)、thread(后台线程定时执行)
+     */
+    public static final String SCHEDULE_MODE = "eshop.hot.schedule.mode";
+    public static final String SCHEDULE_MODE_TICK = "tick";
+    public static final String SCHEDULE_MODE_THREAD = "thread";
+
+    /**
+     * 热点阈值：访问次数超过后95%商品平均访问次数的多少倍视为热点，默认10倍
+     */
+    public static final String HOT_THRESHOLD_MULTIPLE = "eshop.hot.threshold.multiple";
+    public static final int DEFAULT_HOT_THRESHOLD_MULTIPLE = 10;
+
+    /**
+     * 取消热点的阈值：衰减后的访问次数不超过后95%商品平均访问次数的多少倍时取消热点，默认5倍，不能大于热点阈值
+     */
+    public static final String HOT_EXIT_THRESHOLD_MULTIPLE = "eshop.hot.exit.threshold.multiple";
+    public static final int DEFAULT_HOT_EXIT_THRESHOLD_MULTIPLE = 5;
+
+    /**
+     * 成为热点后至少保持多久（毫秒）才允许取消，默认30秒
+     */
+    public static final String HOT_MIN_HOLD_MILLIS = "eshop.hot.min.hold.millis";
+    public static final int DEFAULT_HOT_MIN_HOLD_MILLIS = 30000;
+
+    /**
+     * 热点访问次数衰减的半衰期（毫秒），默认10秒；0表示不衰减
+     */
+    public static final String HOT_DECAY_HALF_LIFE_MILLIS = "eshop.hot.decay.half.life.millis";
+    public static final int DEFAULT_HOT_DECAY_HALF_LIFE_MILLIS = 10000;
+
+    /**
+     * 商品访问次数的统计模式：exact(默认，精确的滑动窗口计数)、approximate(Count-Min Sketch + Space-Saving，内存固定)
+     */
+    public static final String COUNTER_MODE = "eshop.hot.counter.mode";
+    public static final String COUNTER_MODE_EXACT = "exact";
+    public static final String COUNTER_MODE_APPROXIMATE = "approximate";
+
+    /**
+     * 近似模式：Count-Min Sketch 相对于总访问次数的误差上界，默认0.001
+     */
+    public static final String APPROX_EPSILON = "eshop.hot.approx.epsilon";
+    public static final double DEFAULT_APPROX_EPSILON = 0.001;
+
+    /**
+     * 近似模式：误差超出上界的概率，默认0.001
+     */
+    public static final String APPROX_DELTA = "eshop.hot.approx.delta";
+    public static final double DEFAULT_APPROX_DELTA = 0.001;
+
+    /**
+     * 近似模式：Space-Saving 跟踪的高频商品个数，默认1000
+     */
+    public static final String APPROX_CAPACITY = "eshop.hot.approx.capacity";
+    public static final int DEFAULT_APPROX_CAPACITY = 1000;
+
+    /**
+     * spout每次从kafka拉取的最大消息条数(max.poll.records)，默认500
+     */
+    public static final String SPOUT_BATCH_SIZE = "eshop.spout.batch.size";
+    public static final int DEFAULT_SPOUT_BATCH_SIZE = 500;
+
+    /**
+     * spout拉取kafka消息时等待新消息的最长时间（毫秒），默认10毫秒，有消息到达会立刻返回
+     */
+    public static final String SPOUT_POLL_TIMEOUT_MILLIS = "eshop.spout.poll.timeout.millis";
+    public static final int DEFAULT_SPOUT_POLL_TIMEOUT_MILLIS = 10;
+
+    /**
+     * ReliableAccessLogKafkaSpout：kafka集群地址
+     */
+    public static final String KAFKA_BOOTSTRAP_SERVERS = "eshop.kafka.bootstrap.servers";
+    public static final String DEFAULT_KAFKA_BOOTSTRAP_SERVERS = "192.168.11.102:9092";
+
+    /**
+     * ReliableAccessLogKafkaSpout：消费的topic
+     */
+    public static final String KAFKA_TOPIC = "eshop.kafka.topic";
+    public static final String DEFAULT_KAFKA_TOPIC = "access-log";
+
+    /**
+     * ReliableAccessLogKafkaSpout：消费者组
+     */
+    public static final String KAFKA_GROUP_ID = "eshop.kafka.group.id";
+    public static final String DEFAULT_KAFKA_GROUP_ID = "eshop-storm";
+
+    /**
+     * ReliableAccessLogKafkaSpout：提交已ack的offset的间隔（毫秒），默认1秒
+     */
+    public static final String KAFKA_COMMIT_INTERVAL_MILLIS = "eshop.kafka.commit.interval.millis";
+    public static final int DEFAULT_KAFKA_COMMIT_INTERVAL_MILLIS = 1000;
+
+    /**
+     * ReliableAccessLogKafkaSpout：每个task已发射未提交的消息条数上限，超过则暂停拉取，默认10000
+     */
+    public static final String KAFKA_MAX_UNCOMMITTED = "eshop.kafka.max.uncommitted";
+    public static final int DEFAULT_KAFKA_MAX_UNCOMMITTED = 10000;
+
+    /**
+     * LogParseBolt预聚合批次的最长时间（秒），通过构造方法设置为tick tuple的频率，默认1秒
+     */
+    public static final int DEFAULT_COMBINER_FLUSH_SECS = 1;
+
+    /**
+     * LogParseBolt预聚合批次最多包含的输入tuple数，攒够即发射，默认1000；配置为1即不做预聚合
+     */
+    public static final String COMBINER_MAX_BATCH = "eshop.combiner.max.batch";
+    public static final int DEFAULT_COMBINER_MAX_BATCH = 1000;
+
+    /**
+     * 热点推送：流量分发层nginx地址
+     */
+    public static final String PUSH_DISTRIBUTE_NGINX = "eshop.push.distribute.nginx";
+    public static final String DEFAULT_PUSH_DISTRIBUTE_NGINX = "http://192.168.11.102";
+
+    /**
+     * 热点推送：应用层nginx地址，逗号分隔
+     */
+    public static final String PUSH_APP_NGINXES = "eshop.push.app.nginxes";
+    public static final String DEFAULT_PUSH_APP_NGINXES = "http://192.168.11.103,http://192.168.11.104";
+
+    /**
+     * 热点推送：查询商品数据的缓存服务地址，逗号分隔，多个时轮询
+     */
+    public static final String PUSH_CACHE_SERVICE = "eshop.push.cache.service";
+    public static final String DEFAULT_PUSH_CACHE_SERVICE = "http://192.168.101.10:8080";
+
+    /**
+     * 热点推送：是否把同一轮的多个热点合并成每个nginx一次请求(需要nginx支持逗号分隔的productId)，默认false
+     */
+    public static final String PUSH_BATCH = "eshop.push.batch";
+
+    /**
+     * 热点推送：每个请求的连接/读取超时（毫秒），默认1秒
+     */
+    public static final String PUSH_TIMEOUT_MILLIS = "eshop.push.timeout.millis";
+    public static final int DEFAULT_PUSH_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * 热点推送：每个请求失败后的重试次数，默认2次
+     */
+    public static final String PUSH_RETRIES = "eshop.push.retries";
+    public static final int DEFAULT_PUSH_RETRIES = 2;
+
+    /**
+     * 热点推送：第一次重试前等待的时间（毫秒），之后每次重试翻倍，默认100毫秒
+     */
+    public static final String PUSH_RETRY_BACKOFF_MILLIS = "eshop.push.retry.backoff.millis";
+    public static final int DEFAULT_PUSH_RETRY_BACKOFF_MILLIS = 100;
+
+    /**
+     * 热点推送：并行发送请求的线程数，也是每个nginx的最大连接数，默认8
+     */
+    public static final String PUSH_THREADS = "eshop.push.threads";
+    public static final int DEFAULT_PUSH_THREADS = 8;
+
+    /**
+     * 热点推送：存放推送地址的zk节点，节点存在时覆盖拓扑配置中的地址，并监听其变化
+     */
+    public static final String PUSH_ENDPOINTS_ZK_PATH = "eshop.push.endpoints.zk.path";
+    public static final String DEFAULT_PUSH_ENDPOINTS_ZK_PATH = "/hot-push-endpoints";
+
+    /**
+     * 热点推送：一个地址连续失败多少次后暂时不再请求，默认3次
+     */
+    public static final String PUSH_ENDPOINT_FAILURE_THRESHOLD = "eshop.push.endpoint.failure.threshold";
+    public static final int DEFAULT_PUSH_ENDPOINT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * 热点推送：不可用地址的冷却时间（毫秒），默认30秒
+     */
+    public static final String PUSH_ENDPOINT_COOLDOWN_MILLIS = "eshop.push.endpoint.cooldown.millis";
+    public static final int DEFAULT_PUSH_ENDPOINT_COOLDOWN_MILLIS = 30000;
+
+    /**
+     * 热点推送：推送给应用层nginx的商品数据是否放在POST请求体中，默认true；false时沿用GET请求的productInfo参数
+     */
+    public static final String PUSH_PAYLOAD_POST = "eshop.push.payload.post";
+
+    /**
+     * 热点推送：POST请求体达到多少字节时gzip压缩，默认2048；0表示不压缩
+     */
+    public static final String PUSH_GZIP_MIN_BYTES = "eshop.push.gzip.min.bytes";
+    public static final int DEFAULT_PUSH_GZIP_MIN_BYTES = 2048;
+
+    /**
+     * 热点推送：已推送的商品数据在本地缓存多久（毫秒），期间再次成为热点不再查询缓存服务，默认60秒；0表示不缓存
+     */
+    public static final String PUSH_PAYLOAD_TTL_MILLIS = "eshop.push.payload.ttl.millis";
+    public static final int DEFAULT_PUSH_PAYLOAD_TTL_MILLIS = 60000;
+
+    /**
+     * 热点推送：本地缓存最多保存多少个商品的数据
+     */
+    public static final int DEFAULT_PUSH_PAYLOAD_CACHE_SIZE = 1000;
+
+    /**
+     * 热点推送：等待发送的请求队列容量
+     */
+    public static final int DEFAULT_PUSH_QUEUE_CAPACITY = 1000;
+
+    /**
+     * 热点推送：每个地址最多保存多少个没有送达、等待恢复后重新发送的请求
+     */
+    public static final int DEFAULT_PUSH_BACKLOG_PER_ENDPOINT = 1000;
+
+    private HotProductConf() {
+    }
+
+    /**
+     * 读取int类型的配置项
+     *
+     * @param conf         storm Config
+     * @param key          配置项
+     * @param defaultValue 未配置时的默认值
+     */
+    @SuppressWarnings("rawtypes")
+    public static int getInt(Map conf, String key, int defaultValue) {
+        Object value = conf == null ? null : conf.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt(value.toString().trim());
+    }
+
+    /**
+     * 读取double类型的配置项
+     */
+    @SuppressWarnings("rawtypes")
+    public static double getDouble(Map conf, String key, double defaultValue) {
+        Object value = conf == null ? null : conf.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(value.toString().trim());
+    }
+
+    /**
+     * 读取String类型的配置项
+     */
+    @SuppressWarnings("rawtypes")
+    public static String getString(Map conf, String key, String defaultValue) {
+        Object value = conf == null ? null : conf.get(key);
+        return value == null ? defaultValue : value.toString().trim();
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.roncoo.eshop.storm.counter;
+
+/**
+ * 近似模式的商品访问次数统计，内存固定，与access-log中出现多少个不同的商品id无关
+ * <p>
+ * 1、Count-Min Sketch 估计任意商品的访问次数，误差上界由epsilon/delta配置
+ * 2、Space-Saving 跟踪访问次数最多的capacity个商品，提供给topN统计和热点发现
+ * 3、访问次数分布只统计被跟踪的高频商品，即热点阈值以"高频商品中后95%的平均访问次数"为基准；
+ *    分布与forEach使用同一个访问次数(Space-Saving计数与Count-Min估计值中较小的一个)，热点阈值和参与比较的访问次数口径一致
+ * 4、不再按时间桶精确滑动，而是每隔一个窗口时长把所有计数减半(半衰期为一个窗口)，让旧的访问次数逐渐淡出
+ * <p>
+ * 非线程安全
+ */
+public class ApproximateProductCounter implements ProductCounter {
+
+    private final CountMinSketch frequencies;
+    private final SpaceSaving heavyHitters;
+    private final QuantileSketch sketch = new QuantileSketch();
+    private final long decayMillis;
+
+    private long currentEpoch = Long.MIN_VALUE;
+
+    /**
+     * @param epsilon     Count-Min Sketch 相对于总访问次数的误差上界
+     * @param delta       误差超出上界的概率
+     * @param capacity    跟踪的高频商品个数
+     * @param decayMillis 计数减半的周期（毫秒）
+     */
+    public ApproximateProductCounter(double epsilon, double delta, int capacity, long decayMillis) {
+        if (decayMillis <= 0) {
+            throw new IllegalArgumentException("decayMillis必须大于0");
+        }
+        this.frequencies = new CountMinSketch(epsilon, delta);
+        this.heavyHitters = new SpaceSaving(capacity);
+        this.decayMillis = decayMillis;
+    }
+
+    @Override
+    public long add(long productId, long delta, long nowMillis) {
+        advance(nowMillis);
+        if (delta <= 0) {
+            return get(productId);
+        }
+        long estimate = frequencies.add(productId, delta);
+        return Math.min(heavyHitters.add(productId, delta), estimate);
+    }
+
+    @Override
+    public void advance(long nowMillis) {
+        long epoch = nowMillis / decayMillis;
+        if (currentEpoch == Long.MIN_VALUE) {
+            currentEpoch = epoch;
+            return;
+        }
+        if (epoch <= currentEpoch) {
+            return;
+        }
+        long steps = epoch - currentEpoch;
+        currentEpoch = epoch;
+        if (steps >= Long.SIZE) {
+            frequencies.clear();
+            heavyHitters.clear();
+            return;
+        }
+        for (long i = 0; i < steps; i++) {
+            frequencies.halve();
+            heavyHitters.halve();
+        }
+    }
+
+    /**
+     * 被跟踪的商品与forEach口径一致，取 Space-Saving 计数与 Count-Min 估计值中较小的一个；其它商品为 Count-Min 估计值
+     */
+    @Override
+    public long get(long productId) {
+        long estimate = frequencies.estimate(productId);
+        long tracked = heavyHitters.count(productId);
+        return tracked == 0 ? estimate : Math.min(tracked, estimate);
+    }
+
+    /**
+     * 遍历被跟踪的高频商品，访问次数取 Space-Saving 计数与 Count-Min 估计值中较小的一个
+     */
+    @Override
+    public void forEach(CountVisitor visitor) {
+        heavyHitters.forEach((productId, count) ->
+                visitor.visit(productId, Math.min(count, frequencies.estimate(productId))));
+    }
+
+    @Override
+    public int size() {
+        return heavyHitters.size();
+    }
+
+    /**
+     * 按forEach遍历到的访问次数重建分布
+     * <p>
+     * 不能直接用 Space-Saving 的计数增量维护：替换进来的商品继承了被替换商品的计数，原始计数偏高，
+     * 用它算出的热点阈值会比forEach给出的访问次数整体偏大
+     */
+    @Override
+    public QuantileSketch distribution() {
+        sketch.clear();
+        forEach((productId, count) -> sketch.add(count));
+        return sketch;
+    }
+
+}
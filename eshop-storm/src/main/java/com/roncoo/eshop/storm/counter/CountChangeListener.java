@@ -0,0 +1,15 @@
+package com.roncoo.eshop.storm.counter;
+
+/**
+ * 商品访问次数变化的回调，计数器在累加以及时间桶过期时通知，用于增量维护访问次数的分布
+ */
+@FunctionalInterface
+public interface CountChangeListener {
+
+    /**
+     * @param oldCount 变化前的访问次数，0表示此前不在窗口内
+     * @param newCount 变化后的访问次数，0表示已滑出窗口
+     */
+    void onCountChange(long oldCount, long newCount);
+
+}
@@ -0,0 +1,101 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min Sketch，固定内存估计任意多个商品的访问次数
+ * <p>
+ * 1、depth行、每行width个计数器，每次访问在每一行按各自的哈希函数累加一个计数器
+ * 2、估计值取所有行中的最小值，只会高估不会低估：误差不超过 epsilon * 总访问次数 的概率为 1 - delta
+ * 3、width = ceil(e / epsilon)，depth = ceil(ln(1 / delta))
+ * <p>
+ * 非线程安全
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[] table;
+    private final long[] seeds;
+    private long totalCount;
+
+    /**
+     * @param epsilon 相对于总访问次数的误差上界，例如0.001
+     * @param delta   误差超出上界的概率，例如0.001
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon和delta必须在(0, 1)之间");
+        }
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        this.table = new long[width * depth];
+        this.seeds = new long[depth];
+        for (int row = 0; row < depth; row++) {
+            seeds[row] = LongHashing.mix(0x9e3779b97f4a7c15L * (row + 1));
+        }
+    }
+
+    /**
+     * 累加访问次数
+     *
+     * @return 累加后的估计值
+     */
+    public long add(long productId, long delta) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = indexOf(row, productId);
+            table[index] += delta;
+            estimate = Math.min(estimate, table[index]);
+        }
+        totalCount += delta;
+        return estimate;
+    }
+
+    /**
+     * @return 访问次数的估计值
+     */
+    public long estimate(long productId) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, table[indexOf(row, productId)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * 所有计数器减半，用于按时间衰减
+     */
+    public void halve() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        totalCount >>>= 1;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        totalCount = 0;
+    }
+
+    /**
+     * @return 总访问次数
+     */
+    public long totalCount() {
+        return totalCount;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    private int indexOf(int row, long productId) {
+        long hash = LongHashing.mix(productId ^ seeds[row]);
+        return row * width + (int) ((hash >>> 1) % width);
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.roncoo.eshop.storm.counter;
+
+/**
+ * 遍历商品访问次数的回调，使用基本类型参数，遍历过程中不产生装箱对象
+ */
+@FunctionalInterface
+public interface CountVisitor {
+
+    /**
+     * @param productId 商品id
+     * @param count     窗口内的访问次数
+     */
+    void visit(long productId, long count);
+
+}
@@ -0,0 +1,50 @@
+package com.roncoo.eshop.storm.counter;
+
+/**
+ * 精确模式的商品访问次数统计：滑动窗口计数器 + 访问次数分布的分位数草图
+ */
+public class ExactProductCounter implements ProductCounter {
+
+    private final SlidingWindowCounter counter;
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    /**
+     * @param numBuckets   时间桶个数
+     * @param bucketMillis 每个时间桶的时长（毫秒）
+     */
+    public ExactProductCounter(int numBuckets, long bucketMillis) {
+        this.counter = new SlidingWindowCounter(numBuckets, bucketMillis);
+        this.counter.setListener(sketch);
+    }
+
+    @Override
+    public long add(long productId, long delta, long nowMillis) {
+        return counter.add(productId, delta, nowMillis);
+    }
+
+    @Override
+    public void advance(long nowMillis) {
+        counter.advance(nowMillis);
+    }
+
+    @Override
+    public long get(long productId) {
+        return counter.get(productId);
+    }
+
+    @Override
+    public void forEach(CountVisitor visitor) {
+        counter.forEach(visitor);
+    }
+
+    @Override
+    public int size() {
+        return counter.size();
+    }
+
+    @Override
+    public QuantileSketch distribution() {
+        return sketch;
+    }
+
+}
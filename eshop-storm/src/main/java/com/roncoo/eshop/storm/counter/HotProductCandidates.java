@@ -0,0 +1,73 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * 热点发现的候选商品集合，避免每轮热点发现遍历窗口内的全部商品
+ * <p>
+ * 1、累加访问次数时，累加后的访问次数超过阈值(上一轮的取消热点阈值)的商品加入候选集合
+ * 2、每轮热点发现只读取候选商品当前的访问次数，已经不超过阈值的商品(窗口滑过后访问次数下降)从集合中移除
+ * 3、窗口内的访问次数只在访问时增加，没有新访问的商品不会新越过阈值，因此候选集合包含了所有超过阈值的商品；
+ * 只有阈值本身下降时，新阈值和旧阈值之间、且之后没有再被访问的商品会被漏掉，这类商品已经没有流量，不应成为热点
+ * <p>
+ * 集合只由写入计数器的线程访问，阈值可以由其它线程更新
+ */
+public class HotProductCandidates {
+
+    private final Set<Long> productIds = new HashSet<>();
+
+    // 初始为0：第一轮热点发现之前所有被访问的商品都是候选
+    private volatile long threshold;
+
+    /**
+     * 累加访问次数后调用
+     *
+     * @param productId 商品id
+     * @param count     累加后的访问次数
+     */
+    public void onCount(long productId, long count) {
+        if (count > threshold) {
+            productIds.add(productId);
+        }
+    }
+
+    /**
+     * 遍历访问次数仍然超过阈值的候选商品，同时移除不再超过阈值的商品
+     *
+     * @param counter 商品访问次数统计，读取候选商品当前的访问次数
+     */
+    public void forEach(ProductCounter counter, CountVisitor visitor) {
+        long current = threshold;
+        Iterator<Long> iterator = productIds.iterator();
+        while (iterator.hasNext()) {
+            long productId = iterator.next();
+            long count = counter.get(productId);
+            if (count > current) {
+                visitor.visit(productId, count);
+            } else {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 更新阈值，下一次累加和遍历时生效
+     */
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return 候选商品个数
+     */
+    public int size() {
+        return productIds.size();
+    }
+
+}
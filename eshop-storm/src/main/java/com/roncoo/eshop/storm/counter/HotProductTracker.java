@@ -0,0 +1,120 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热点商品的状态机(冷/热)，带滞后区间、最短保持时间和访问次数的指数衰减，避免阈值附近的商品在两种流量分发策略之间反复切换
+ * <p>
+ * 1、冷 -> 热：本轮窗口内的访问次数超过进入阈值
+ * 2、热 -> 冷：衰减后的访问次数不超过退出阈值(低于进入阈值)，并且成为热点的时间已达到最短保持时间
+ * 3、热点的衰减访问次数 = max(本轮访问次数, 上一轮衰减访问次数 * 0.5^(间隔/半衰期))，流量回落后按半衰期逐渐冷却，
+ * 偶尔一轮统计偏低不会立即取消热点
+ * 4、只有状态真正发生变化时才输出到entered/exited，调用方只需推送这些商品
+ * <p>
+ * 每轮先对访问次数超过退出阈值的商品调用 {@link #visit(long, long)}(没有调用的视为0)，再调用 {@link #endRound}
+ * <p>
+ * 只为热点商品保存状态，非线程安全
+ */
+public class HotProductTracker implements CountVisitor {
+
+    private final long minHoldMillis;
+    private final long halfLifeMillis;
+
+    private final Map<Long, State> hotProducts = new HashMap<>();
+    private final Map<Long, Long> roundCounts = new HashMap<>();
+
+    /**
+     * @param minHoldMillis  成为热点后至少保持多久（毫秒）
+     * @param halfLifeMillis 访问次数衰减的半衰期（毫秒），小于等于0表示不衰减(只看本轮访问次数)
+     */
+    public HotProductTracker(long minHoldMillis, long halfLifeMillis) {
+        this.minHoldMillis = minHoldMillis;
+        this.halfLifeMillis = halfLifeMillis;
+    }
+
+    /**
+     * 记录本轮一个商品的访问次数
+     */
+    @Override
+    public void visit(long productId, long count) {
+        roundCounts.put(productId, count);
+    }
+
+    /**
+     * 结束一轮热点发现，更新每个商品的状态
+     *
+     * @param enterThreshold 访问次数超过该值成为热点
+     * @param exitThreshold  衰减后的访问次数不超过该值时取消热点，大于进入阈值时按进入阈值处理
+     * @param nowMillis      当前时间
+     * @param entered        输出：本轮新成为热点的商品
+     * @param exited         输出：本轮取消热点的商品
+     */
+    public void endRound(long enterThreshold, long exitThreshold, long nowMillis,
+                         List<Long> entered, List<Long> exited) {
+        long exit = Math.min(exitThreshold, enterThreshold);
+        Iterator<Map.Entry<Long, State>> iterator = hotProducts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, State> entry = iterator.next();
+            State state = entry.getValue();
+            Long count = roundCounts.remove(entry.getKey());
+            state.decay(count == null ? 0 : count, nowMillis, halfLifeMillis);
+            if (state.score <= exit && nowMillis - state.enteredMillis >= minHoldMillis) {
+                iterator.remove();
+                exited.add(entry.getKey());
+            }
+        }
+        // 剩下的都是当前不是热点的商品
+        for (Map.Entry<Long, Long> entry : roundCounts.entrySet()) {
+            if (entry.getValue() > enterThreshold) {
+                hotProducts.put(entry.getKey(), new State(entry.getValue(), nowMillis));
+                entered.add(entry.getKey());
+            }
+        }
+        roundCounts.clear();
+    }
+
+    public boolean isHot(long productId) {
+        return hotProducts.containsKey(productId);
+    }
+
+    /**
+     * @return 当前热点商品个数
+     */
+    public int size() {
+        return hotProducts.size();
+    }
+
+    /**
+     * @return 热点商品衰减后的访问次数，不是热点返回-1
+     */
+    public double score(long productId) {
+        State state = hotProducts.get(productId);
+        return state == null ? -1 : state.score;
+    }
+
+    private static final class State {
+
+        private final long enteredMillis;
+        private double score;
+        private long updatedMillis;
+
+        private State(long count, long nowMillis) {
+            this.enteredMillis = nowMillis;
+            this.score = count;
+            this.updatedMillis = nowMillis;
+        }
+
+        private void decay(long count, long nowMillis, long halfLifeMillis) {
+            double decayed = 0;
+            if (halfLifeMillis > 0) {
+                decayed = score * Math.pow(0.5, (double) (nowMillis - updatedMillis) / halfLifeMillis);
+            }
+            score = Math.max(count, decayed);
+            updatedMillis = nowMillis;
+        }
+    }
+
+}
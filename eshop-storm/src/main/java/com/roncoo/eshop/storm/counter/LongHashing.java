@@ -0,0 +1,34 @@
+package com.roncoo.eshop.storm.counter;
+
+/**
+ * long类型key的哈希工具
+ */
+final class LongHashing {
+
+    private LongHashing() {
+    }
+
+    /**
+     * murmur3的fmix64，打散连续的商品id
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * 不小于capacity的2的幂
+     */
+    static int tableSizeFor(int capacity, int minCapacity) {
+        int n = minCapacity;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.Arrays;
+
+/**
+ * 商品访问次数的预聚合器(combiner)，在一个微批次内把同一个商品的多次访问合并成一个 (productId, count)
+ * <p>
+ * 1、商品按第一次出现的顺序存放在连续数组中，add返回商品所在的下标，调用方可以用下标关联自己的附加数据(如待ack的tuple)
+ * 2、商品id到下标的索引是开放地址法哈希表，以基本类型存储，不产生装箱对象
+ * 3、每个批次结束后clear，数组重复使用
+ * <p>
+ * 非线程安全
+ */
+public class ProductCountCombiner {
+
+    private static final int EMPTY = -1;
+
+    private long[] productIds;
+    private long[] counts;
+    private int size;
+
+    private long[] indexKeys;
+    private int[] indexSlots;
+    private int indexMask;
+
+    public ProductCountCombiner() {
+        this(256);
+    }
+
+    /**
+     * @param initialCapacity 初始容量（商品个数）
+     */
+    public ProductCountCombiner(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.productIds = new long[capacity];
+        this.counts = new long[capacity];
+        allocateIndex(LongHashing.tableSizeFor(capacity * 2, 16));
+    }
+
+    /**
+     * 累加商品的访问次数
+     *
+     * @return 商品在本批次中的下标
+     */
+    public int add(long productId, long delta) {
+        int index = (int) LongHashing.mix(productId) & indexMask;
+        while (indexSlots[index] != EMPTY) {
+            if (indexKeys[index] == productId) {
+                int slot = indexSlots[index];
+                counts[slot] += delta;
+                return slot;
+            }
+            index = (index + 1) & indexMask;
+        }
+        if (size == productIds.length) {
+            productIds = Arrays.copyOf(productIds, size << 1);
+            counts = Arrays.copyOf(counts, size << 1);
+        }
+        int slot = size++;
+        productIds[slot] = productId;
+        counts[slot] = delta;
+        indexKeys[index] = productId;
+        indexSlots[index] = slot;
+        if (size > (indexMask + 1) >> 1) {
+            allocateIndex((indexMask + 1) << 1);
+        }
+        return slot;
+    }
+
+    public long productIdAt(int slot) {
+        return productIds[slot];
+    }
+
+    public long countAt(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * @return 本批次中的商品个数
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        Arrays.fill(indexSlots, EMPTY);
+    }
+
+    /**
+     * 按新的容量分配索引，并重建已有商品的索引
+     */
+    private void allocateIndex(int capacity) {
+        indexKeys = new long[capacity];
+        indexSlots = new int[capacity];
+        indexMask = capacity - 1;
+        Arrays.fill(indexSlots, EMPTY);
+        for (int slot = 0; slot < size; slot++) {
+            int index = (int) LongHashing.mix(productIds[slot]) & indexMask;
+            while (indexSlots[index] != EMPTY) {
+                index = (index + 1) & indexMask;
+            }
+            indexKeys[index] = productIds[slot];
+            indexSlots[index] = slot;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.Arrays;
+
+/**
+ * 商品访问次数的不可变快照
+ * <p>
+ * thread模式下计数器只由bolt的executor线程写入，executor线程每个tick生成一次快照，通过volatile引用整体替换(发布)
+ * 后台线程只读取最近发布的快照，读到的是同一时刻的一致数据，计数时无需加锁；tick模式直接读取计数器，不生成快照
+ */
+public final class ProductCountSnapshot {
+
+    private final long[] productIds;
+    private final long[] counts;
+    private final int size;
+    private final QuantileSketch distribution;
+    private final long[] candidateIds;
+    private final long[] candidateCounts;
+
+    private ProductCountSnapshot(long[] productIds, long[] counts, int size,
+                                 QuantileSketch distribution, long[] candidateIds, long[] candidateCounts) {
+        this.productIds = productIds;
+        this.counts = counts;
+        this.size = size;
+        this.distribution = distribution;
+        this.candidateIds = candidateIds;
+        this.candidateCounts = candidateCounts;
+    }
+
+    /**
+     * 复制计数器当前的统计结果，必须在写入计数器的线程中调用
+     *
+     * @param counter    商品访问次数统计
+     * @param candidates 热点发现的候选商品
+     */
+    public static ProductCountSnapshot of(ProductCounter counter, HotProductCandidates candidates) {
+        int capacity = counter.size();
+        long[] productIds = new long[capacity];
+        long[] counts = new long[capacity];
+        int[] size = new int[1];
+        counter.forEach((productId, count) -> {
+            if (size[0] < capacity) {
+                productIds[size[0]] = productId;
+                counts[size[0]] = count;
+                size[0]++;
+            }
+        });
+        long[] candidateIds = new long[candidates.size()];
+        long[] candidateCounts = new long[candidates.size()];
+        int[] candidateSize = new int[1];
+        candidates.forEach(counter, (productId, count) -> {
+            candidateIds[candidateSize[0]] = productId;
+            candidateCounts[candidateSize[0]] = count;
+            candidateSize[0]++;
+        });
+        return new ProductCountSnapshot(productIds, counts, size[0],
+                new QuantileSketch(counter.distribution()),
+                Arrays.copyOf(candidateIds, candidateSize[0]), Arrays.copyOf(candidateCounts, candidateSize[0]));
+    }
+
+    /**
+     * 遍历快照中的商品访问次数
+     */
+    public void forEach(CountVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            visitor.visit(productIds[i], counts[i]);
+        }
+    }
+
+    /**
+     * 遍历快照时刻访问次数超过候选阈值的商品，见 {@link HotProductCandidates}
+     */
+    public void forEachCandidate(CountVisitor visitor) {
+        for (int i = 0; i < candidateIds.length; i++) {
+            visitor.visit(candidateIds[i], candidateCounts[i]);
+        }
+    }
+
+    /**
+     * @return 快照中的商品个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 快照时刻的访问次数分布(副本，只读)
+     */
+    public QuantileSketch distribution() {
+        return distribution;
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.roncoo.eshop.storm.counter;
+
+/**
+ * 商品访问次数统计
+ * <p>
+ * 精确模式 {@link ExactProductCounter}：滑动窗口内每个商品一个计数，内存随窗口内的商品个数增长
+ * 近似模式 {@link ApproximateProductCounter}：Count-Min Sketch + Space-Saving，内存固定，与商品个数无关
+ */
+public interface ProductCounter {
+
+    /**
+     * 商品访问次数累加
+     *
+     * @param productId 商品id
+     * @param delta     本次增加的访问次数
+     * @param nowMillis 当前时间戳
+     * @return 此商品当前的访问次数
+     */
+    long add(long productId, long delta, long nowMillis);
+
+    /**
+     * 让统计窗口前进到当前时间
+     */
+    void advance(long nowMillis);
+
+    /**
+     * @return 商品当前的访问次数(近似模式下为估计值)
+     */
+    long get(long productId);
+
+    /**
+     * 遍历参与topN统计和热点发现的商品：精确模式为窗口内所有商品，近似模式为跟踪的高频商品
+     */
+    void forEach(CountVisitor visitor);
+
+    /**
+     * @return forEach会遍历到的商品个数
+     */
+    int size();
+
+    /**
+     * @return forEach所遍历商品的访问次数分布，用于计算热点阈值
+     */
+    QuantileSketch distribution();
+
+}
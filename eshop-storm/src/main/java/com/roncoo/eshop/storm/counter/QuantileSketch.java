@@ -0,0 +1,214 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.Arrays;
+
+/**
+ * 商品访问次数分布的流式分位数草图，用于热点发现时O(1)读取"后95%商品的访问次数"
+ * <p>
+ * 1、采用对数-线性分桶(与HdrHistogram相同的思路)：小于2^precisionBits的值每个值一个桶，
+ * 更大的值每个2的幂区间再等分成2^precisionBits个子桶，相对误差不超过 1/2^precisionBits
+ * 2、每个桶记录商品个数和访问次数之和，分位数和"后x%的平均值"都只需遍历固定个数的桶，与商品总数无关
+ * 3、与t-digest/KLL不同，它支持删除，所以能跟随滑动窗口的过期而减少，由计数器通过 {@link CountChangeListener} 增量维护
+ * <p>
+ * 非线程安全
+ */
+public class QuantileSketch implements CountChangeListener {
+
+    private final int precisionBits;
+    private final int subBucketCount;
+
+    // 每个桶内的商品个数、访问次数之和
+    private final long[] population;
+    private final long[] sums;
+
+    private long totalPopulation;
+    private long totalSum;
+
+    public QuantileSketch() {
+        this(5);
+    }
+
+    /**
+     * @param precisionBits 精度位数，相对误差为 1/2^precisionBits，例如5位约为3%
+     */
+    public QuantileSketch(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits必须在1~16之间");
+        }
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        int bucketCount = subBucketCount + (64 - precisionBits) * subBucketCount;
+        this.population = new long[bucketCount];
+        this.sums = new long[bucketCount];
+    }
+
+    /**
+     * 复制一份草图，用于发布只读快照
+     */
+    public QuantileSketch(QuantileSketch other) {
+        this.precisionBits = other.precisionBits;
+        this.subBucketCount = other.subBucketCount;
+        this.population = other.population.clone();
+        this.sums = other.sums.clone();
+        this.totalPopulation = other.totalPopulation;
+        this.totalSum = other.totalSum;
+    }
+
+    @Override
+    public void onCountChange(long oldCount, long newCount) {
+        if (oldCount > 0 && newCount > 0) {
+            int oldIndex = indexOf(oldCount);
+            int newIndex = indexOf(newCount);
+            if (oldIndex == newIndex) {
+                sums[oldIndex] += newCount - oldCount;
+                totalSum += newCount - oldCount;
+                return;
+            }
+        }
+        if (oldCount > 0) {
+            remove(oldCount);
+        }
+        if (newCount > 0) {
+            add(newCount);
+        }
+    }
+
+    /**
+     * 记录一个商品的访问次数
+     */
+    public void add(long count) {
+        int index = indexOf(count);
+        population[index]++;
+        sums[index] += count;
+        totalPopulation++;
+        totalSum += count;
+    }
+
+    /**
+     * 移除一个商品的访问次数
+     */
+    public void remove(long count) {
+        int index = indexOf(count);
+        population[index]--;
+        sums[index] -= count;
+        totalPopulation--;
+        totalSum -= count;
+    }
+
+    /**
+     * @param quantile 分位点，例如0.95
+     * @return 访问次数的近似分位数，没有数据时返回0
+     */
+    public long quantile(double quantile) {
+        if (totalPopulation == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * totalPopulation));
+        long seen = 0;
+        for (int index = 0; index < population.length; index++) {
+            seen += population[index];
+            if (seen >= rank) {
+                return valueOf(index);
+            }
+        }
+        return max();
+    }
+
+    /**
+     * 计算访问次数最少的那部分商品的平均访问次数，例如fraction=0.95即"后95%商品的访问次数平均值"
+     * <p>
+     * 与原先排序后累加的算法一致：取 max(1, floor(商品个数 * fraction)) 个商品，边界桶内按比例估算
+     *
+     * @param fraction 商品个数占比
+     * @return 平均访问次数，没有数据时返回0
+     */
+    public double meanOfLowest(double fraction) {
+        if (totalPopulation == 0) {
+            return 0;
+        }
+        long remaining = Math.max(1, (long) Math.floor(totalPopulation * fraction));
+        long calculateCount = remaining;
+        double sum = 0;
+        for (int index = 0; index < population.length && remaining > 0; index++) {
+            long bucketPopulation = population[index];
+            if (bucketPopulation == 0) {
+                continue;
+            }
+            if (bucketPopulation <= remaining) {
+                sum += sums[index];
+                remaining -= bucketPopulation;
+            } else {
+                sum += (double) sums[index] * remaining / bucketPopulation;
+                remaining = 0;
+            }
+        }
+        return sum / calculateCount;
+    }
+
+    /**
+     * @return 最大访问次数所在桶的上界，没有数据时返回0
+     */
+    public long max() {
+        for (int index = population.length - 1; index >= 0; index--) {
+            if (population[index] > 0) {
+                return upperBoundOf(index);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return 记录的商品个数
+     */
+    public long size() {
+        return totalPopulation;
+    }
+
+    /**
+     * @return 所有商品的访问次数之和
+     */
+    public long totalCount() {
+        return totalSum;
+    }
+
+    public void clear() {
+        Arrays.fill(population, 0L);
+        Arrays.fill(sums, 0L);
+        totalPopulation = 0;
+        totalSum = 0;
+    }
+
+    private int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - precisionBits;
+        int subBucket = (int) (value >>> shift) - subBucketCount;
+        return subBucketCount + (shift << precisionBits) + subBucket;
+    }
+
+    /**
+     * 桶的下界
+     */
+    private long valueOf(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index - subBucketCount) >>> precisionBits;
+        int subBucket = (index - subBucketCount) & (subBucketCount - 1);
+        return (long) (subBucketCount + subBucket) << shift;
+    }
+
+    /**
+     * 桶的上界(包含)
+     */
+    private long upperBoundOf(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index - subBucketCount) >>> precisionBits;
+        return valueOf(index) + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.Arrays;
+
+/**
+ * 基于时间桶的滑动窗口计数器，统计每个商品"最近N秒"的访问次数
+ * <p>
+ * 1、以基本类型long作为key，开放地址法(线性探测)的哈希表，计数时不产生任何装箱对象
+ * 2、每个商品在每个时间桶中各有一个计数，另外维护窗口内的总数，读取访问次数是O(1)的
+ * 3、时间前进到新的时间桶时，清空最旧的那个时间桶并从总数中减掉，总数归零的商品就地从哈希表中删除(后移删除，不留墓碑)
+ * 4、商品的窗口总数每次变化都会通知 {@link CountChangeListener}，用于增量维护访问次数的分布
+ * <p>
+ * 非线程安全，只能由一个线程写入
+ */
+public class SlidingWindowCounter {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final int numBuckets;
+    private final long bucketMillis;
+
+    // 哈希表：keys[slot]为商品id，totals[slot]为窗口内的总数(0表示空槽)，bucketCounts[slot * numBuckets + bucket]为各时间桶内的计数
+    private long[] keys;
+    private long[] totals;
+    private int[] bucketCounts;
+
+    private int mask;
+    private int size;
+
+    // 当前时间桶的绝对序号(时间戳/桶时长)以及它在环形数组中的下标
+    private long currentEpoch = Long.MIN_VALUE;
+    private int cursor;
+
+    private CountChangeListener listener;
+
+    /**
+     * @param numBuckets   时间桶个数
+     * @param bucketMillis 每个时间桶的时长（毫秒）
+     */
+    public SlidingWindowCounter(int numBuckets, long bucketMillis) {
+        this(numBuckets, bucketMillis, 1024);
+    }
+
+    /**
+     * @param numBuckets      时间桶个数
+     * @param bucketMillis    每个时间桶的时长（毫秒）
+     * @param initialCapacity 初始容量（商品个数）
+     */
+    public SlidingWindowCounter(int numBuckets, long bucketMillis, int initialCapacity) {
+        if (numBuckets <= 0 || bucketMillis <= 0) {
+            throw new IllegalArgumentException("numBuckets和bucketMillis必须大于0");
+        }
+        this.numBuckets = numBuckets;
+        this.bucketMillis = bucketMillis;
+        allocate(LongHashing.tableSizeFor(initialCapacity * 2, MIN_CAPACITY));
+    }
+
+    /**
+     * 商品访问次数累加
+     *
+     * @param productId 商品id
+     * @param delta     本次增加的访问次数，必须大于0
+     * @param nowMillis 当前时间戳
+     * @return 此商品在窗口内的访问次数
+     */
+    public long add(long productId, long delta, long nowMillis) {
+        advance(nowMillis);
+        if (delta <= 0) {
+            return get(productId);
+        }
+        int slot = indexOf(productId);
+        if (totals[slot] == 0) {
+            if (size + 1 > (mask + 1) >> 1) {
+                allocate((mask + 1) << 1);
+                slot = indexOf(productId);
+            }
+            keys[slot] = productId;
+            size++;
+        }
+        int bucketIndex = slot * numBuckets + cursor;
+        bucketCounts[bucketIndex] = (int) Math.min(Integer.MAX_VALUE, bucketCounts[bucketIndex] + delta);
+        long oldCount = totals[slot];
+        totals[slot] += delta;
+        if (listener != null) {
+            listener.onCountChange(oldCount, totals[slot]);
+        }
+        return totals[slot];
+    }
+
+    /**
+     * 查询商品在窗口内的访问次数
+     */
+    public long get(long productId) {
+        return totals[indexOf(productId)];
+    }
+
+    /**
+     * 让窗口前进到当前时间，清空已经滑出窗口的时间桶
+     *
+     * @param nowMillis 当前时间戳
+     */
+    public void advance(long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        if (currentEpoch == Long.MIN_VALUE) {
+            currentEpoch = epoch;
+            return;
+        }
+        if (epoch <= currentEpoch) {
+            return;
+        }
+        long steps = epoch - currentEpoch;
+        currentEpoch = epoch;
+        if (steps >= numBuckets) {
+            clear();
+            return;
+        }
+        for (long i = 0; i < steps; i++) {
+            cursor = cursor + 1 == numBuckets ? 0 : cursor + 1;
+            expireBucket(cursor);
+        }
+    }
+
+    /**
+     * 遍历窗口内所有访问次数大于0的商品
+     */
+    public void forEach(CountVisitor visitor) {
+        for (int slot = 0; slot <= mask; slot++) {
+            if (totals[slot] != 0) {
+                visitor.visit(keys[slot], totals[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return 窗口内有访问记录的商品个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 窗口时长（毫秒）
+     */
+    public long windowMillis() {
+        return numBuckets * bucketMillis;
+    }
+
+    /**
+     * 设置访问次数变化的回调
+     */
+    public void setListener(CountChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 清空所有计数
+     */
+    public void clear() {
+        if (listener != null) {
+            forEach((productId, count) -> listener.onCountChange(count, 0));
+        }
+        Arrays.fill(totals, 0L);
+        Arrays.fill(bucketCounts, 0);
+        size = 0;
+    }
+
+    /**
+     * 清空某个时间桶，并从商品的窗口总数中减掉，总数归零的商品就地删除
+     * <p>
+     * 删除后槽位上可能是后移过来的其它商品，所以不前进，重新检查同一个槽位；
+     * 从表头绕回来的商品可能被再检查一次，此时它在这个时间桶的计数已经清零，不会重复扣减
+     */
+    private void expireBucket(int bucket) {
+        int slot = 0;
+        while (slot <= mask) {
+            if (totals[slot] == 0) {
+                slot++;
+                continue;
+            }
+            int bucketIndex = slot * numBuckets + bucket;
+            int count = bucketCounts[bucketIndex];
+            if (count == 0) {
+                slot++;
+                continue;
+            }
+            bucketCounts[bucketIndex] = 0;
+            long oldCount = totals[slot];
+            totals[slot] -= count;
+            if (listener != null) {
+                listener.onCountChange(oldCount, totals[slot]);
+            }
+            if (totals[slot] == 0) {
+                removeAt(slot);
+            } else {
+                slot++;
+            }
+        }
+    }
+
+    /**
+     * 删除槽位i上的商品，把后面同一探测链上的商品前移，保证查找时不会因为空槽中断
+     */
+    private void removeAt(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (totals[j] == 0) {
+                break;
+            }
+            int home = (int) LongHashing.mix(keys[j]) & mask;
+            // home不在(i, j]区间内(循环意义上)时，j上的商品可以移到i
+            boolean stay = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stay) {
+                keys[i] = keys[j];
+                totals[i] = totals[j];
+                System.arraycopy(bucketCounts, j * numBuckets, bucketCounts, i * numBuckets, numBuckets);
+                i = j;
+            }
+        }
+        totals[i] = 0;
+        Arrays.fill(bucketCounts, i * numBuckets, (i + 1) * numBuckets, 0);
+        size--;
+    }
+
+    /**
+     * 按新的容量分配数组，并把已有的商品迁移过去
+     */
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldTotals = totals;
+        int[] oldBucketCounts = bucketCounts;
+        int oldCapacity = mask + 1;
+
+        keys = new long[capacity];
+        totals = new long[capacity];
+        bucketCounts = new int[capacity * numBuckets];
+        mask = capacity - 1;
+
+        if (oldKeys == null) {
+            return;
+        }
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            if (oldTotals[slot] == 0) {
+                continue;
+            }
+            int target = indexOf(oldKeys[slot]);
+            keys[target] = oldKeys[slot];
+            totals[target] = oldTotals[slot];
+            System.arraycopy(oldBucketCounts, slot * numBuckets, bucketCounts, target * numBuckets, numBuckets);
+        }
+    }
+
+    /**
+     * 线性探测，返回商品所在的槽位，若不存在则返回第一个空槽位
+     */
+    private int indexOf(long productId) {
+        int slot = (int) LongHashing.mix(productId) & mask;
+        while (totals[slot] != 0 && keys[slot] != productId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+}
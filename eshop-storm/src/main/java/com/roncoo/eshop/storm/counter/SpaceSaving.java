@@ -0,0 +1,239 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.Arrays;
+
+/**
+ * Space-Saving 高频商品(heavy hitters)统计，固定跟踪capacity个商品
+ * <p>
+ * 1、商品已被跟踪则直接累加；未被跟踪且还有空位则加入；否则替换掉计数最小的商品，新商品继承其计数并记为误差
+ * 2、任何真实访问次数大于 总访问次数/capacity 的商品一定会被跟踪到，计数最多高估error
+ * 3、计数最小的商品用小顶堆维护，商品id到槽位的索引用开放地址法哈希表，每次更新O(log capacity)且不产生对象
+ * <p>
+ * 非线程安全
+ */
+public class SpaceSaving {
+
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+
+    // 槽位数组：商品id、计数、误差
+    private final long[] productIds;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+
+    // 按计数排列的小顶堆，存放槽位下标；positions[slot]为槽位在堆中的位置
+    private final int[] heap;
+    private final int[] positions;
+
+    // 商品id -> 槽位 的哈希索引
+    private final long[] indexKeys;
+    private final int[] indexSlots;
+    private final int indexMask;
+
+    /**
+     * @param capacity 跟踪的商品个数
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity必须大于0");
+        }
+        this.capacity = capacity;
+        this.productIds = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        int indexCapacity = LongHashing.tableSizeFor(capacity * 2, 16);
+        this.indexKeys = new long[indexCapacity];
+        this.indexSlots = new int[indexCapacity];
+        this.indexMask = indexCapacity - 1;
+        Arrays.fill(indexSlots, EMPTY);
+    }
+
+    /**
+     * 累加商品访问次数
+     *
+     * @return 累加后的计数
+     */
+    public long add(long productId, long delta) {
+        int slot = slotOf(productId);
+        if (slot != EMPTY) {
+            counts[slot] += delta;
+            siftDown(positions[slot]);
+            return counts[slot];
+        }
+        if (size < capacity) {
+            slot = size++;
+            productIds[slot] = productId;
+            counts[slot] = delta;
+            errors[slot] = 0;
+            heap[slot] = slot;
+            positions[slot] = slot;
+            indexPut(productId, slot);
+            siftUp(slot);
+            return delta;
+        }
+        // 替换掉计数最小的商品
+        slot = heap[0];
+        long minCount = counts[slot];
+        indexRemove(productIds[slot]);
+        productIds[slot] = productId;
+        errors[slot] = minCount;
+        counts[slot] = minCount + delta;
+        indexPut(productId, slot);
+        siftDown(0);
+        return counts[slot];
+    }
+
+    /**
+     * @return 商品的计数，未被跟踪返回0
+     */
+    public long count(long productId) {
+        int slot = slotOf(productId);
+        return slot == EMPTY ? 0 : counts[slot];
+    }
+
+    /**
+     * @return 商品计数的高估上限，未被跟踪返回0
+     */
+    public long error(long productId) {
+        int slot = slotOf(productId);
+        return slot == EMPTY ? 0 : errors[slot];
+    }
+
+    /**
+     * 遍历所有被跟踪的商品
+     */
+    public void forEach(CountVisitor visitor) {
+        for (int slot = 0; slot < size; slot++) {
+            visitor.visit(productIds[slot], counts[slot]);
+        }
+    }
+
+    /**
+     * 所有计数和误差减半，计数归零的商品不再跟踪，用于按时间衰减
+     */
+    public void halve() {
+        int newSize = 0;
+        Arrays.fill(indexSlots, EMPTY);
+        for (int slot = 0; slot < size; slot++) {
+            long count = counts[slot] >>> 1;
+            if (count == 0) {
+                continue;
+            }
+            productIds[newSize] = productIds[slot];
+            counts[newSize] = count;
+            errors[newSize] = errors[slot] >>> 1;
+            newSize++;
+        }
+        size = newSize;
+        for (int slot = 0; slot < size; slot++) {
+            indexPut(productIds[slot], slot);
+            heap[slot] = slot;
+            positions[slot] = slot;
+        }
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        Arrays.fill(indexSlots, EMPTY);
+    }
+
+    /**
+     * @return 被跟踪的商品个数
+     */
+    public int size() {
+        return size;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[heap[position]]) {
+                break;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = (position << 1) + 1;
+            int right = left + 1;
+            if (left < size && counts[heap[left]] < counts[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < size && counts[heap[right]] < counts[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int slot = heap[i];
+        heap[i] = heap[j];
+        heap[j] = slot;
+        positions[heap[i]] = i;
+        positions[heap[j]] = j;
+    }
+
+    private int slotOf(long productId) {
+        int index = (int) LongHashing.mix(productId) & indexMask;
+        while (indexSlots[index] != EMPTY) {
+            if (indexKeys[index] == productId) {
+                return indexSlots[index];
+            }
+            index = (index + 1) & indexMask;
+        }
+        return EMPTY;
+    }
+
+    private void indexPut(long productId, int slot) {
+        int index = (int) LongHashing.mix(productId) & indexMask;
+        while (indexSlots[index] != EMPTY && indexKeys[index] != productId) {
+            index = (index + 1) & indexMask;
+        }
+        indexKeys[index] = productId;
+        indexSlots[index] = slot;
+    }
+
+    /**
+     * 线性探测的删除：把后续同一探测链上的元素往前移，保证查找不会中断
+     */
+    private void indexRemove(long productId) {
+        int index = (int) LongHashing.mix(productId) & indexMask;
+        while (indexSlots[index] != EMPTY && indexKeys[index] != productId) {
+            index = (index + 1) & indexMask;
+        }
+        if (indexSlots[index] == EMPTY) {
+            return;
+        }
+        int hole = index;
+        int next = (hole + 1) & indexMask;
+        while (indexSlots[next] != EMPTY) {
+            int home = (int) LongHashing.mix(indexKeys[next]) & indexMask;
+            // home不在(hole, next]的环形区间内，才可以移动到hole
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                indexKeys[hole] = indexKeys[next];
+                indexSlots[hole] = indexSlots[next];
+                hole = next;
+            }
+            next = (next + 1) & indexMask;
+        }
+        indexSlots[hole] = EMPTY;
+    }
+
+}
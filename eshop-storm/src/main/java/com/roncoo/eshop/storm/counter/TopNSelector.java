@@ -0,0 +1,155 @@
+package com.roncoo.eshop.storm.counter;
+
+/**
+ * 基于小顶堆的topN选择器，一次遍历即可选出访问次数最多的N个商品，时间复杂度O(n log k)
+ * <p>
+ * 1、堆使用两个基本类型数组(商品id、访问次数)实现，选择过程中不产生任何对象
+ * 2、堆顶是当前topN中访问次数最少的商品，新商品只有比堆顶大才会替换堆顶
+ * 3、选择完成后调用 {@link #sortDescending()} 原地堆排序，然后按下标读取排名
+ * <p>
+ * 非线程安全，可以通过 {@link #reset()} 重复使用，避免每次计算都分配数组
+ */
+public class TopNSelector implements CountVisitor {
+
+    private final int n;
+    private final long[] productIds;
+    private final long[] counts;
+    private int size;
+    private boolean sorted;
+
+    /**
+     * @param n 需要选出的商品个数
+     */
+    public TopNSelector(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n必须大于0");
+        }
+        this.n = n;
+        this.productIds = new long[n];
+        this.counts = new long[n];
+    }
+
+    @Override
+    public void visit(long productId, long count) {
+        offer(productId, count);
+    }
+
+    /**
+     * 放入一个商品的访问次数
+     *
+     * @return 是否进入了topN
+     */
+    public boolean offer(long productId, long count) {
+        if (sorted) {
+            throw new IllegalStateException("已排序，需要先调用reset()");
+        }
+        if (size < n) {
+            productIds[size] = productId;
+            counts[size] = count;
+            siftUp(size++);
+            return true;
+        }
+        if (count <= counts[0]) {
+            return false;
+        }
+        productIds[0] = productId;
+        counts[0] = count;
+        siftDown(0, size);
+        return true;
+    }
+
+    /**
+     * 原地堆排序，完成后下标0是访问次数最多的商品
+     */
+    public void sortDescending() {
+        if (sorted) {
+            return;
+        }
+        // 小顶堆每次把堆顶(最小值)交换到末尾，最终得到降序数组
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        sorted = true;
+    }
+
+    /**
+     * @return 排名第index的商品id，需要先调用 {@link #sortDescending()}
+     */
+    public long productIdAt(int index) {
+        checkSorted(index);
+        return productIds[index];
+    }
+
+    /**
+     * @return 排名第index的商品访问次数，需要先调用 {@link #sortDescending()}
+     */
+    public long countAt(int index) {
+        checkSorted(index);
+        return counts[index];
+    }
+
+    /**
+     * @return 当前选出的商品个数，不超过n
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 清空选择结果，以便下一轮计算重复使用
+     */
+    public void reset() {
+        size = 0;
+        sorted = false;
+    }
+
+    private void checkSorted(int index) {
+        if (!sorted) {
+            throw new IllegalStateException("需要先调用sortDescending()");
+        }
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + "，size=" + size);
+        }
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[parent] <= counts[index]) {
+                break;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int end) {
+        while (true) {
+            int smallest = index;
+            int left = (index << 1) + 1;
+            int right = left + 1;
+            if (left < end && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < end && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long productId = productIds[i];
+        productIds[i] = productIds[j];
+        productIds[j] = productId;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+
+}
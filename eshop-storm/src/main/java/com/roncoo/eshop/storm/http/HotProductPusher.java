@@ -0,0 +1,404 @@
+package com.roncoo.eshop.storm.http;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.roncoo.eshop.storm.conf.HotProductConf;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * 热点商品的异步推送
+ * <p>
+ * 1、所有请求都提交到有界线程池中并行执行，调用方(热点发现)立即返回，一个慢的nginx不会拖慢其它热点和其它nginx
+ * 2、共用一个连接池化、keep-alive的HttpClient，每个请求有连接/读取超时，失败按配置次数重试，两次尝试之间指数退避
+ * 3、一个热点商品：通知分发层nginx降级、从缓存服务查询商品数据后并行推送给每个应用层nginx
+ * 4、批量模式(默认关闭，需要nginx的lua脚本支持)：同一轮发现的多个热点，每个nginx只发一次请求，productId以逗号分隔，
+ * 应用层nginx的productInfo为商品数据的json数组，顺序与productId一致
+ * 5、目标地址来自 {@link PushEndpointRegistry}，每次推送时读取最新的地址列表；一个请求重试完仍失败才记一次地址失败，
+ * 暂时不可用(连续失败)的nginx在冷却期内跳过；查询商品数据失败时重试会换一个缓存服务
+ * 6、商品数据默认作为POST请求体推送给应用层nginx(不再受URL长度限制)，只编码一次、所有nginx共用，较大时gzip压缩；
+ * 推送过的商品数据在本地缓存一段时间，热点反复出现时不再查询缓存服务
+ * <p>
+ * 7、查询商品数据和发送推送请求使用两个线程池，查询不会占用发送的线程和队列；
+ * 队列满时拒绝新任务：查询被拒绝时按查询失败处理(商品数据为null，仍然推送)
+ * 8、热点发现只在状态变化时推送一次，冷却中跳过、重试后仍失败、发送队列已满的请求保存在 {@link PushBacklog} 中，
+ * 每轮热点发现调用 {@link #redeliver()}，地址恢复可用后重新发送
+ */
+@Slf4j
+public class HotProductPusher implements Closeable {
+
+    private static final String HOT_PATH = "/hot?";
+    private static final String CANCEL_HOT_PATH = "/cancel_hot?";
+
+    private final PushEndpointRegistry registry;
+    private final boolean batch;
+    private final boolean post;
+    private final int gzipMinBytes;
+    private final int retries;
+    private final long retryBackoffMillis;
+    private final ProductPayloadCache payloadCache;
+    private final PushBacklog backlog = new PushBacklog(HotProductConf.DEFAULT_PUSH_BACKLOG_PER_ENDPOINT);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor fetchExecutor;
+
+    /**
+     * @param conf     storm Config，读取超时、重试、线程数等配置
+     * @param registry 推送的目标地址
+     */
+    @SuppressWarnings("rawtypes")
+    public HotProductPusher(Map conf, PushEndpointRegistry registry) {
+        this.registry = registry;
+        this.batch = Boolean.parseBoolean(HotProductConf.getString(conf, HotProductConf.PUSH_BATCH, "false"));
+        this.post = Boolean.parseBoolean(HotProductConf.getString(conf, HotProductConf.PUSH_PAYLOAD_POST, "true"));
+        this.gzipMinBytes = HotProductConf.getInt(conf,
+                HotProductConf.PUSH_GZIP_MIN_BYTES, HotProductConf.DEFAULT_PUSH_GZIP_MIN_BYTES);
+        this.retries = HotProductConf.getInt(conf, HotProductConf.PUSH_RETRIES, HotProductConf.DEFAULT_PUSH_RETRIES);
+        this.retryBackoffMillis = HotProductConf.getInt(conf,
+                HotProductConf.PUSH_RETRY_BACKOFF_MILLIS, HotProductConf.DEFAULT_PUSH_RETRY_BACKOFF_MILLIS);
+        this.payloadCache = new ProductPayloadCache(HotProductConf.getInt(conf,
+                HotProductConf.PUSH_PAYLOAD_TTL_MILLIS, HotProductConf.DEFAULT_PUSH_PAYLOAD_TTL_MILLIS),
+                HotProductConf.DEFAULT_PUSH_PAYLOAD_CACHE_SIZE);
+        int timeoutMillis = HotProductConf.getInt(conf,
+                HotProductConf.PUSH_TIMEOUT_MILLIS, HotProductConf.DEFAULT_PUSH_TIMEOUT_MILLIS);
+        int threads = HotProductConf.getInt(conf, HotProductConf.PUSH_THREADS, HotProductConf.DEFAULT_PUSH_THREADS);
+
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(threads * 4);
+        connectionManager.setDefaultMaxPerRoute(threads);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableAutomaticRetries()
+                .build();
+
+        this.executor = newExecutor("hot-product-pusher-", threads);
+        this.fetchExecutor = newExecutor("hot-product-fetcher-", threads);
+    }
+
+    /**
+     * 有界线程池，队列满时抛出 {@link RejectedExecutionException}，由提交任务的地方处理
+     */
+    private static ThreadPoolExecutor newExecutor(String namePrefix, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(HotProductConf.DEFAULT_PUSH_QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, namePrefix + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 推送新发现的热点商品，异步执行
+     */
+    public void pushHot(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        if (batch) {
+            submitAll(registry.distributeNginxes(), HOT_PATH + "productId=" + StringUtils.join(productIds, ','), null);
+            List<CompletableFuture<ProductPayload>> payloads = new ArrayList<>(productIds.size());
+            for (Long productId : productIds) {
+                payloads.add(loadPayload(productId));
+            }
+            CompletableFuture.allOf(payloads.toArray(new CompletableFuture[0])).thenRun(() -> {
+                // 缓存服务返回的已经是json，直接拼接成数组，不能作为字符串再编码一次
+                StringBuilder infos = new StringBuilder("[");
+                for (CompletableFuture<ProductPayload> payload : payloads) {
+                    if (infos.length() > 1) {
+                        infos.append(',');
+                    }
+                    infos.append(payload.join().isEmpty() ? "null" : payload.join().getJson());
+                }
+                infos.append(']');
+                pushToAppNginxes(StringUtils.join(productIds, ','), ProductPayload.encode(infos.toString(), gzipMinBytes));
+            });
+            return;
+        }
+        for (Long productId : productIds) {
+            // 请求流量分发的nginx触发流量分发策略降级的接口（在nginx缓存该productId的"热点"标记，在处理客户端请求时若热点标记为true则降级为随机负载均衡，否则走hash策略）
+            submitAll(registry.distributeNginxes(), HOT_PATH + "productId=" + productId, null);
+            // 请求商品服务查询该热点商品的数据，并将热点的数据反向推送到所有应用层nginx中缓存起来
+            loadPayload(productId).thenAccept(payload -> pushToAppNginxes(String.valueOf(productId), payload));
+        }
+    }
+
+    /**
+     * 通知分发层nginx取消已消失的热点，异步执行
+     */
+    public void cancelHot(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        if (batch) {
+            submitAll(registry.distributeNginxes(), CANCEL_HOT_PATH + "productId=" + StringUtils.join(productIds, ','), null);
+            return;
+        }
+        for (Long productId : productIds) {
+            submitAll(registry.distributeNginxes(), CANCEL_HOT_PATH + "productId=" + productId, null);
+        }
+    }
+
+    /**
+     * 把商品数据推送给每个应用层nginx，POST时所有nginx共用同一个请求体
+     */
+    private void pushToAppNginxes(String productIds, ProductPayload payload) {
+        if (post) {
+            submitAll(registry.appNginxes(), HOT_PATH + "productId=" + productIds, payload);
+        } else {
+            String productInfo = encode("productInfo", payload.isEmpty() ? null : payload.getJson());
+            submitAll(registry.appNginxes(), HOT_PATH + "productId=" + productIds + "&" + productInfo, null);
+        }
+    }
+
+    /**
+     * 优先使用本地缓存的商品数据，没有则查询缓存服务并编码、缓存
+     */
+    private CompletableFuture<ProductPayload> loadPayload(long productId) {
+        ProductPayload cached = payloadCache.get(productId, System.currentTimeMillis());
+        if (cached != null) {
+            log.debug("热点商品数据命中本地缓存，productId={}", productId);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return fetchProductInfo(productId).thenApply(response -> {
+            ProductPayload payload = ProductPayload.encode(response, gzipMinBytes);
+            payloadCache.put(productId, payload, System.currentTimeMillis());
+            return payload;
+        });
+    }
+
+    /**
+     * 在查询线程池中从缓存服务查询商品数据，失败或队列已满时为null(与原先一样，仍然推送给应用层nginx)
+     */
+    private CompletableFuture<String> fetchProductInfo(long productId) {
+        String path = "/getProductInfo?productId=" + productId;
+        CompletableFuture<String> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                for (int attempt = 0; attempt <= retries; attempt++) {
+                    PushEndpoint cacheService = registry.nextCacheService();
+                    if (cacheService == null) {
+                        log.error("没有配置缓存服务地址，无法查询热点商品数据，productId={}", productId);
+                        return null;
+                    }
+                    // 每次尝试换一个缓存服务，各自记录一次成功或失败
+                    String response = execute(cacheService, path, null, attempt);
+                    if (response != null) {
+                        cacheService.onSuccess();
+                        return response;
+                    }
+                    cacheService.onFailure();
+                }
+                log.error("查询热点商品数据重试{}次后仍失败，productId={}", retries, productId);
+                return null;
+            }, fetchExecutor);
+        } catch (RejectedExecutionException e) {
+            log.warn("热点商品数据查询队列已满，按查询失败处理，productId={}", productId);
+            return CompletableFuture.completedFuture(null);
+        }
+        return future.exceptionally(e -> {
+            log.warn("查询热点商品数据失败，productId={}", productId, e);
+            return null;
+        });
+    }
+
+    /**
+     * 重新发送已恢复可用的地址上保存的请求，热点发现每轮调用一次
+     */
+    public void redeliver() {
+        List<PushEndpoint> endpoints = new ArrayList<>(registry.distributeNginxes());
+        endpoints.addAll(registry.appNginxes());
+        backlog.retain(endpoints);
+        for (PushEndpoint endpoint : endpoints) {
+            if (!endpoint.isAvailable()) {
+                continue;
+            }
+            Map<String, ProductPayload> requests = backlog.drain(endpoint);
+            if (requests.isEmpty()) {
+                continue;
+            }
+            log.info("热点推送地址已可用，重新发送{}个请求，url={}", requests.size(), endpoint.getUrl());
+            requests.forEach((path, payload) -> submit(endpoint, path, payload));
+        }
+    }
+
+    /**
+     * 向每个地址并行发送同一个请求，冷却中的地址先保存请求，恢复后重新发送
+     *
+     * @param payload POST请求体，为null时发送GET请求
+     */
+    private void submitAll(List<PushEndpoint> endpoints, String path, ProductPayload payload) {
+        String supersededPath = supersededPath(path);
+        for (PushEndpoint endpoint : endpoints) {
+            // 之前保存的同一个请求和被取代的请求不再重新发送，避免重新发送时覆盖这次的结果
+            backlog.remove(endpoint, path, supersededPath);
+            if (!endpoint.isAvailable()) {
+                log.warn("热点推送地址暂时不可用，恢复后重新发送，url={}{}", endpoint.getUrl(), path);
+                hold(endpoint, path, payload);
+                continue;
+            }
+            submit(endpoint, path, payload);
+        }
+    }
+
+    private void submit(PushEndpoint endpoint, String path, ProductPayload payload) {
+        try {
+            executor.execute(() -> send(endpoint, path, payload));
+        } catch (RejectedExecutionException e) {
+            log.warn("热点推送队列已满，下一轮重新发送，url={}{}", endpoint.getUrl(), path);
+            hold(endpoint, path, payload);
+        }
+    }
+
+    /**
+     * 向一个地址发送请求，失败后退避重试；重试完仍失败只记一次地址失败，并保存请求等待重新发送
+     */
+    private void send(PushEndpoint endpoint, String path, ProductPayload payload) {
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (attempt > 0 && (!endpoint.isAvailable() || !backoff(attempt))) {
+                break;
+            }
+            if (execute(endpoint, path, payload, attempt) != null) {
+                endpoint.onSuccess();
+                return;
+            }
+        }
+        endpoint.onFailure();
+        log.error("热点推送请求失败，恢复后重新发送，url={}{}", endpoint.getUrl(), path);
+        hold(endpoint, path, payload);
+    }
+
+    /**
+     * 第n次重试前等待 retryBackoffMillis * 2^(n-1)
+     *
+     * @return 等待期间被中断(线程池关闭)返回false
+     */
+    private boolean backoff(int attempt) {
+        if (retryBackoffMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(retryBackoffMillis << Math.min(attempt - 1, 10));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 保存没有送达的请求，同时移除被它取代的请求
+     */
+    private void hold(PushEndpoint endpoint, String path, ProductPayload payload) {
+        String dropped = backlog.hold(endpoint, path, payload, supersededPath(path));
+        if (dropped != null) {
+            log.warn("热点推送地址保存的请求过多，丢弃最早的请求，url={}{}", endpoint.getUrl(), dropped);
+        }
+    }
+
+    /**
+     * @return 被这个请求取代的请求：热点 <-> 取消热点，其它请求返回null
+     */
+    private static String supersededPath(String path) {
+        if (path.startsWith(HOT_PATH)) {
+            return CANCEL_HOT_PATH + path.substring(HOT_PATH.length());
+        }
+        if (path.startsWith(CANCEL_HOT_PATH)) {
+            return HOT_PATH + path.substring(CANCEL_HOT_PATH.length());
+        }
+        return null;
+    }
+
+    /**
+     * 发送一次请求，由调用方记录地址的健康状态
+     *
+     * @param payload POST请求体，为null时发送GET请求
+     * @return 响应内容(2xx时没有响应体则为空串)，失败返回null
+     */
+    private String execute(PushEndpoint endpoint, String path, ProductPayload payload, int attempt) {
+        String url = endpoint.getUrl() + path;
+        HttpUriRequest request;
+        if (payload == null) {
+            request = new HttpGet(url);
+        } else {
+            HttpPost httpPost = new HttpPost(url);
+            // ByteArrayEntity直接引用请求体，不复制
+            httpPost.setEntity(new ByteArrayEntity(payload.getBody(), ContentType.APPLICATION_JSON));
+            if (payload.isGzipped()) {
+                httpPost.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            request = httpPost;
+        }
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+            if (status >= 200 && status < 300) {
+                return body;
+            }
+            log.warn("热点推送请求返回{}，url={}，第{}次", status, url, attempt + 1);
+        } catch (Exception e) {
+            log.warn("热点推送请求失败，url={}，第{}次：{}", url, attempt + 1, e.toString());
+        }
+        return null;
+    }
+
+    private static String encode(String name, String value) {
+        List<NameValuePair> params = Collections.singletonList(new BasicNameValuePair(name, value));
+        return URLEncodedUtils.format(params, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 停止线程池并关闭连接池
+     */
+    @Override
+    public void close() {
+        registry.close();
+        executor.shutdownNow();
+        fetchExecutor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (Exception e) {
+            log.warn("关闭HttpClient失败", e);
+        }
+        connectionManager.shutdown();
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.roncoo.eshop.storm.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 推送给应用层nginx的商品数据，作为POST请求体
+ * <p>
+ * 只编码一次，同一个热点推送给所有应用层nginx时共用同一个字节数组；超过阈值时gzip压缩，请求头带 Content-Encoding: gzip
+ * <p>
+ * 不可变，线程安全
+ */
+public final class ProductPayload {
+
+    /**
+     * 查询商品数据失败时推送的空请求体(与原先一样，仍然通知应用层nginx)
+     */
+    public static final ProductPayload EMPTY = new ProductPayload("", new byte[0], false);
+
+    private final String json;
+    private final byte[] body;
+    private final boolean gzipped;
+
+    private ProductPayload(String json, byte[] body, boolean gzipped) {
+        this.json = json;
+        this.body = body;
+        this.gzipped = gzipped;
+    }
+
+    /**
+     * @param json          商品数据
+     * @param gzipMinBytes  请求体达到多少字节时压缩，小于等于0表示不压缩
+     */
+    public static ProductPayload encode(String json, int gzipMinBytes) {
+        if (json == null || json.isEmpty()) {
+            return EMPTY;
+        }
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        if (gzipMinBytes <= 0 || raw.length < gzipMinBytes) {
+            return new ProductPayload(json, raw, false);
+        }
+        byte[] compressed = gzip(raw);
+        // 压缩后没有变小(例如数据已经是压缩过的)则直接发送原文
+        if (compressed.length >= raw.length) {
+            return new ProductPayload(json, raw, false);
+        }
+        return new ProductPayload(json, compressed, true);
+    }
+
+    private static byte[] gzip(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return 未压缩的商品数据，批量推送时用于拼接json数组
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * @return 请求体，不要修改
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public boolean isGzipped() {
+        return gzipped;
+    }
+
+    public boolean isEmpty() {
+        return body.length == 0;
+    }
+
+}
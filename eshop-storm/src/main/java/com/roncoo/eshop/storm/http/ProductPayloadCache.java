@@ -0,0 +1,86 @@
+package com.roncoo.eshop.storm.http;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 最近推送过的热点商品数据的本地缓存，带过期时间
+ * <p>
+ * 热点在阈值附近反复出现/消失时，过期时间内再次成为热点不需要再查询缓存服务，直接推送缓存的请求体
+ * <p>
+ * 容量有限：写入时若超过容量先清理过期数据，仍然超过则不再缓存新数据(热点商品数量本身很少，正常不会触发)
+ * <p>
+ * 线程安全
+ */
+public class ProductPayloadCache {
+
+    private final long ttlMillis;
+    private final int maxSize;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlMillis 过期时间（毫秒），小于等于0表示不缓存
+     * @param maxSize   最多缓存多少个商品
+     */
+    public ProductPayloadCache(long ttlMillis, int maxSize) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return 未过期的商品数据，没有则返回null
+     */
+    public ProductPayload get(long productId, long nowMillis) {
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAtMillis <= nowMillis) {
+            entries.remove(productId, entry);
+            return null;
+        }
+        return entry.payload;
+    }
+
+    /**
+     * 缓存商品数据，空数据(查询失败)不缓存
+     */
+    public void put(long productId, ProductPayload payload, long nowMillis) {
+        if (ttlMillis <= 0 || payload == null || payload.isEmpty()) {
+            return;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(productId)) {
+            purgeExpired(nowMillis);
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(productId, new Entry(payload, nowMillis + ttlMillis));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void purgeExpired(long nowMillis) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expireAtMillis <= nowMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final ProductPayload payload;
+        private final long expireAtMillis;
+
+        private Entry(ProductPayload payload, long expireAtMillis) {
+            this.payload = payload;
+            this.expireAtMillis = expireAtMillis;
+        }
+    }
+
+}
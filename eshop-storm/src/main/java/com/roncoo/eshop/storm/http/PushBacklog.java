@@ -0,0 +1,111 @@
+package com.roncoo.eshop.storm.http;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 暂时没有送达的热点推送请求，按地址保存，地址恢复可用后重新发送
+ * <p>
+ * 1、地址冷却中被跳过、重试后仍然失败、发送队列已满的请求放入这里；热点发现只在状态变化时推送一次，不保存就再也不会送达
+ * 2、同一个地址的同一个请求(path相同)只保留最新的一份，并移到最后，重新发送时保持先后顺序
+ * 3、保存或者发送一个新请求时同时移除被它取代的请求，例如同一个商品的"热点"和"取消热点"只需要送达最后一个
+ * 4、每个地址最多保存maxPerEndpoint个请求，超过时丢弃最早的
+ * <p>
+ * 线程安全
+ */
+public class PushBacklog {
+
+    private final int maxPerEndpoint;
+
+    // 地址 -> (path -> POST请求体，GET请求为null)，按保存的先后排列
+    private final Map<String, LinkedHashMap<String, ProductPayload>> requests = new HashMap<>();
+
+    /**
+     * @param maxPerEndpoint 每个地址最多保存的请求个数
+     */
+    public PushBacklog(int maxPerEndpoint) {
+        this.maxPerEndpoint = maxPerEndpoint;
+    }
+
+    /**
+     * 保存一个没有送达的请求
+     *
+     * @param payload        POST请求体，GET请求为null
+     * @param supersededPath 被这个请求取代、不需要再发送的请求，没有则为null
+     * @return 因为超过容量被丢弃的最早的请求，没有丢弃则为null
+     */
+    public synchronized String hold(PushEndpoint endpoint, String path, ProductPayload payload, String supersededPath) {
+        LinkedHashMap<String, ProductPayload> held = requests.computeIfAbsent(endpoint.getUrl(), url -> new LinkedHashMap<>());
+        if (supersededPath != null) {
+            held.remove(supersededPath);
+        }
+        held.remove(path);
+        held.put(path, payload);
+        if (held.size() <= maxPerEndpoint) {
+            return null;
+        }
+        Iterator<String> eldest = held.keySet().iterator();
+        String dropped = eldest.next();
+        eldest.remove();
+        return dropped;
+    }
+
+    /**
+     * 移除一个地址上保存的请求，有新的请求要发送时调用，之前保存的同一个请求和被取代的请求不再重新发送
+     */
+    public synchronized void remove(PushEndpoint endpoint, String path, String supersededPath) {
+        LinkedHashMap<String, ProductPayload> held = requests.get(endpoint.getUrl());
+        if (held == null) {
+            return;
+        }
+        held.remove(path);
+        if (supersededPath != null) {
+            held.remove(supersededPath);
+        }
+        if (held.isEmpty()) {
+            requests.remove(endpoint.getUrl());
+        }
+    }
+
+    /**
+     * 取出一个地址保存的全部请求
+     *
+     * @return path -> POST请求体(GET请求为null)，按保存的先后排列
+     */
+    public synchronized Map<String, ProductPayload> drain(PushEndpoint endpoint) {
+        LinkedHashMap<String, ProductPayload> held = requests.remove(endpoint.getUrl());
+        return held == null ? Collections.emptyMap() : held;
+    }
+
+    /**
+     * 只保留这些地址的请求，已经从注册表中移除的地址不会再恢复，丢弃它们的请求
+     */
+    public synchronized void retain(Collection<PushEndpoint> endpoints) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        Set<String> urls = new HashSet<>();
+        for (PushEndpoint endpoint : endpoints) {
+            urls.add(endpoint.getUrl());
+        }
+        requests.keySet().retainAll(urls);
+    }
+
+    /**
+     * @return 所有地址保存的请求总数
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (LinkedHashMap<String, ProductPayload> held : requests.values()) {
+            size += held.size();
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.roncoo.eshop.storm.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 热点推送的一个目标地址(nginx或缓存服务)及其健康状态
+ * <p>
+ * 连续失败的请求数达到阈值后标记为不可用，冷却时间内跳过；冷却结束后允许再次请求，成功即恢复，失败则重新冷却
+ * <p>
+ * 一个请求的多次重试只记一次结果：调用方在请求最终成功或重试完仍失败后调用 {@link #onSuccess()} / {@link #onFailure()}
+ * <p>
+ * 线程安全，同一个地址在注册表重新加载后仍是同一个实例，健康状态不会丢失
+ */
+@Slf4j
+public class PushEndpoint {
+
+    private final String url;
+    private final int failureThreshold;
+    private final long cooldownMillis;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long unavailableUntilMillis;
+
+    /**
+     * @param url              地址，例如 http://192.168.11.103
+     * @param failureThreshold 连续失败多少个请求后标记为不可用
+     * @param cooldownMillis   不可用的冷却时间（毫秒）
+     */
+    public PushEndpoint(String url, int failureThreshold, long cooldownMillis) {
+        this.url = url;
+        this.failureThreshold = failureThreshold;
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return 当前是否可以发送请求
+     */
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableUntilMillis;
+    }
+
+    public void onSuccess() {
+        if (consecutiveFailures.getAndSet(0) >= failureThreshold) {
+            log.info("热点推送地址已恢复，url={}", url);
+        }
+        unavailableUntilMillis = 0;
+    }
+
+    public void onFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failures >= failureThreshold) {
+            unavailableUntilMillis = System.currentTimeMillis() + cooldownMillis;
+            log.warn("热点推送地址连续失败{}次，{}毫秒内不再请求，url={}", failures, cooldownMillis, url);
+        }
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.roncoo.eshop.storm.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.roncoo.eshop.storm.conf.HotProductConf;
+import com.roncoo.eshop.storm.zk.ZookeeperUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+
+/**
+ * 热点推送的目标地址注册表：流量分发层nginx、应用层nginx、缓存服务
+ * <p>
+ * 1、默认使用拓扑配置中的地址；若zk节点(默认 /hot-push-endpoints)存在且内容非空，则以节点中的地址为准，节点数据格式：
+ * {"distributeNginxes":["http://192.168.11.102"],"appNginxes":["http://192.168.11.103","http://192.168.11.104"],"cacheServices":["http://192.168.101.10:8080"]}
+ * 缺少的角色仍使用拓扑配置中的地址
+ * 2、监听zk节点的创建、修改、删除，变化后重新加载，新增的应用层nginx无需重启拓扑即可收到热点推送
+ * 3、地址列表整体替换(volatile发布)，同一个地址的 {@link PushEndpoint} 实例及其健康状态在重新加载后保留
+ */
+@Slf4j
+public class PushEndpointRegistry {
+
+    private final List<String> defaultDistributeNginxes;
+    private final List<String> defaultAppNginxes;
+    private final List<String> defaultCacheServices;
+    private final int failureThreshold;
+    private final long cooldownMillis;
+
+    private final ZookeeperUtils zkUtils;
+    private final String zkPath;
+    private final Watcher watcher = this::onEvent;
+
+    private final Map<String, PushEndpoint> endpointsByUrl = new ConcurrentHashMap<>();
+    private final AtomicInteger cacheServiceCursor = new AtomicInteger();
+    private volatile Endpoints endpoints;
+    private volatile boolean closed;
+
+    /**
+     * @param conf    storm Config
+     * @param zkUtils zk客户端，为null时只使用拓扑配置中的地址
+     */
+    @SuppressWarnings("rawtypes")
+    public PushEndpointRegistry(Map conf, ZookeeperUtils zkUtils) {
+        this.defaultDistributeNginxes = splitUrls(HotProductConf.getString(conf,
+                HotProductConf.PUSH_DISTRIBUTE_NGINX, HotProductConf.DEFAULT_PUSH_DISTRIBUTE_NGINX));
+        this.defaultAppNginxes = splitUrls(HotProductConf.getString(conf,
+                HotProductConf.PUSH_APP_NGINXES, HotProductConf.DEFAULT_PUSH_APP_NGINXES));
+        this.defaultCacheServices = splitUrls(HotProductConf.getString(conf,
+                HotProductConf.PUSH_CACHE_SERVICE, HotProductConf.DEFAULT_PUSH_CACHE_SERVICE));
+        this.failureThreshold = HotProductConf.getInt(conf,
+                HotProductConf.PUSH_ENDPOINT_FAILURE_THRESHOLD, HotProductConf.DEFAULT_PUSH_ENDPOINT_FAILURE_THRESHOLD);
+        this.cooldownMillis = HotProductConf.getInt(conf,
+                HotProductConf.PUSH_ENDPOINT_COOLDOWN_MILLIS, HotProductConf.DEFAULT_PUSH_ENDPOINT_COOLDOWN_MILLIS);
+        this.zkUtils = zkUtils;
+        this.zkPath = HotProductConf.getString(conf,
+                HotProductConf.PUSH_ENDPOINTS_ZK_PATH, HotProductConf.DEFAULT_PUSH_ENDPOINTS_ZK_PATH);
+        reload();
+    }
+
+    /**
+     * @return 流量分发层nginx
+     */
+    public List<PushEndpoint> distributeNginxes() {
+        return endpoints.distributeNginxes;
+    }
+
+    /**
+     * @return 应用层nginx
+     */
+    public List<PushEndpoint> appNginxes() {
+        return endpoints.appNginxes;
+    }
+
+    /**
+     * 轮询选择一个可用的缓存服务，都不可用时仍按轮询返回一个(冷却期内也要尽量查到商品数据)
+     *
+     * @return 没有配置缓存服务时返回null
+     */
+    public PushEndpoint nextCacheService() {
+        List<PushEndpoint> cacheServices = endpoints.cacheServices;
+        if (cacheServices.isEmpty()) {
+            return null;
+        }
+        int start = cacheServiceCursor.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < cacheServices.size(); i++) {
+            PushEndpoint endpoint = cacheServices.get((start + i) % cacheServices.size());
+            if (endpoint.isAvailable()) {
+                return endpoint;
+            }
+        }
+        return cacheServices.get(start % cacheServices.size());
+    }
+
+    /**
+     * 不再响应zk节点的变化
+     */
+    public void close() {
+        closed = true;
+    }
+
+    private void onEvent(WatchedEvent event) {
+        if (closed || event.getType() == Watcher.Event.EventType.None) {
+            return;
+        }
+        log.info("热点推送地址zk节点发生变化，event={}，重新加载", event.getType());
+        reload();
+    }
+
+    /**
+     * 读取zk节点(同时重新注册监听)，与拓扑配置合并后整体替换地址列表
+     */
+    private synchronized void reload() {
+        String data = zkUtils == null ? null : zkUtils.getNodeData(zkPath, watcher);
+        JSONObject json = null;
+        if (StringUtils.isNotBlank(data)) {
+            try {
+                json = JSONObject.parseObject(data);
+            } catch (Exception e) {
+                log.error("热点推送地址zk节点内容格式错误，使用拓扑配置中的地址，path={}，data={}", zkPath, data, e);
+            }
+        }
+        Endpoints loaded = new Endpoints(
+                toEndpoints(urlsOf(json, "distributeNginxes", defaultDistributeNginxes)),
+                toEndpoints(urlsOf(json, "appNginxes", defaultAppNginxes)),
+                toEndpoints(urlsOf(json, "cacheServices", defaultCacheServices)));
+        this.endpoints = loaded;
+        log.info("热点推送地址：分发层nginx={}，应用层nginx={}，缓存服务={}",
+                loaded.distributeNginxes, loaded.appNginxes, loaded.cacheServices);
+    }
+
+    private static List<String> urlsOf(JSONObject json, String key, List<String> defaults) {
+        if (json == null || !json.containsKey(key)) {
+            return defaults;
+        }
+        JSONArray array = json.getJSONArray(key);
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; array != null && i < array.size(); i++) {
+            String url = array.getString(i);
+            if (StringUtils.isNotBlank(url)) {
+                urls.add(StringUtils.removeEnd(url.trim(), "/"));
+            }
+        }
+        return urls;
+    }
+
+    private List<PushEndpoint> toEndpoints(List<String> urls) {
+        List<PushEndpoint> result = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            result.add(endpointsByUrl.computeIfAbsent(url,
+                    key -> new PushEndpoint(key, failureThreshold, cooldownMillis)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static List<String> splitUrls(String urls) {
+        List<String> result = new ArrayList<>();
+        for (String url : StringUtils.split(urls, ',')) {
+            if (StringUtils.isNotBlank(url)) {
+                result.add(StringUtils.removeEnd(url.trim(), "/"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 某一时刻的全部地址，不可变
+     */
+    private static final class Endpoints {
+
+        private final List<PushEndpoint> distributeNginxes;
+        private final List<PushEndpoint> appNginxes;
+        private final List<PushEndpoint> cacheServices;
+
+        private Endpoints(List<PushEndpoint> distributeNginxes, List<PushEndpoint> appNginxes,
+                          List<PushEndpoint> cacheServices) {
+            this.distributeNginxes = distributeNginxes;
+            this.appNginxes = appNginxes;
+            this.cacheServices = cacheServices;
+        }
+    }
+
+}
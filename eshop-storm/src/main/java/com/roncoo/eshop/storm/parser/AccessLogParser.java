@@ -0,0 +1,280 @@
+package com.roncoo.eshop.storm.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Nginx访问日志(json格式)中 uri_args.productId 的流式提取器
+ * <p>
+ * 1、直接扫描原始字节，只识别顶层的 uri_args 对象和其中的 productId，其余的键值对按json语法跳过，不构建json对象树
+ * 2、productId 可以是数字，也可以是只包含数字的字符串(nginx的uri_args取值都是字符串)，找到后立即返回，不再扫描剩余内容
+ * 3、整个解析过程不分配任何对象，格式错误或没有productId时返回 {@link #NOT_FOUND}
+ * <p>
+ * 非线程安全，每个bolt实例各自持有一个
+ */
+public final class AccessLogParser {
+
+    /**
+     * 没有找到productId，或日志格式错误
+     */
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+
+    private static final byte[] URI_ARGS = "uri_args".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PRODUCT_ID = "productId".getBytes(StandardCharsets.UTF_8);
+
+    private byte[] buf;
+    private int pos;
+    private int limit;
+
+    // 最近一次读取的key在buf中的范围
+    private int keyStart;
+    private int keyEnd;
+
+    public long parseProductId(byte[] data) {
+        return parseProductId(data, 0, data.length);
+    }
+
+    /**
+     * @param data   日志的UTF-8字节
+     * @param offset 起始位置
+     * @param length 长度
+     * @return uri_args.productId，没有找到或格式错误返回 {@link #NOT_FOUND}
+     */
+    public long parseProductId(byte[] data, int offset, int length) {
+        this.buf = data;
+        this.pos = offset;
+        this.limit = offset + length;
+        try {
+            return scanRoot();
+        } finally {
+            this.buf = null;
+        }
+    }
+
+    private long scanRoot() {
+        if (!expect('{')) {
+            return NOT_FOUND;
+        }
+        if (peekIs('}')) {
+            return NOT_FOUND;
+        }
+        while (true) {
+            if (!readKey() || !expect(':')) {
+                return NOT_FOUND;
+            }
+            if (keyEquals(URI_ARGS) && peekIs('{')) {
+                return scanUriArgs();
+            }
+            if (!skipValue()) {
+                return NOT_FOUND;
+            }
+            if (!nextMember()) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    /**
+     * 扫描uri_args对象，pos位于'{'
+     */
+    private long scanUriArgs() {
+        pos++;
+        if (peekIs('}')) {
+            pos++;
+            return NOT_FOUND;
+        }
+        while (true) {
+            if (!readKey() || !expect(':')) {
+                return NOT_FOUND;
+            }
+            if (keyEquals(PRODUCT_ID)) {
+                return readLong();
+            }
+            if (!skipValue()) {
+                return NOT_FOUND;
+            }
+            if (!nextMember()) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    /**
+     * 读取下一个成员前的','；若遇到'}'说明对象已结束
+     *
+     * @return 是否还有下一个成员
+     */
+    private boolean nextMember() {
+        skipWhitespace();
+        if (pos < limit && buf[pos] == ',') {
+            pos++;
+            return true;
+        }
+        if (pos < limit && buf[pos] == '}') {
+            pos++;
+        }
+        return false;
+    }
+
+    /**
+     * 读取一个字符串key，记录其内容范围(不处理转义，带转义的key不会与要查找的key匹配)
+     */
+    private boolean readKey() {
+        skipWhitespace();
+        if (pos >= limit || buf[pos] != '"') {
+            return false;
+        }
+        keyStart = pos + 1;
+        if (!skipString()) {
+            return false;
+        }
+        keyEnd = pos - 1;
+        return true;
+    }
+
+    private boolean keyEquals(byte[] expected) {
+        if (keyEnd - keyStart != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buf[keyStart + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取数字或只包含数字的字符串
+     */
+    private long readLong() {
+        skipWhitespace();
+        if (pos >= limit) {
+            return NOT_FOUND;
+        }
+        boolean quoted = buf[pos] == '"';
+        if (quoted) {
+            pos++;
+        }
+        boolean negative = pos < limit && buf[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        int start = pos;
+        long value = 0;
+        while (pos < limit && buf[pos] >= '0' && buf[pos] <= '9') {
+            int digit = buf[pos] - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                return NOT_FOUND;
+            }
+            value = value * 10 + digit;
+            pos++;
+        }
+        if (pos == start) {
+            return NOT_FOUND;
+        }
+        if (quoted && (pos >= limit || buf[pos] != '"')) {
+            return NOT_FOUND;
+        }
+        if (!quoted && pos < limit && (buf[pos] == '.' || buf[pos] == 'e' || buf[pos] == 'E')) {
+            return NOT_FOUND;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 跳过任意一个json值：字符串、对象、数组或字面量(数字/true/false/null)
+     */
+    private boolean skipValue() {
+        skipWhitespace();
+        if (pos >= limit) {
+            return false;
+        }
+        byte b = buf[pos];
+        if (b == '"') {
+            return skipString();
+        }
+        if (b == '{' || b == '[') {
+            return skipContainer();
+        }
+        int start = pos;
+        while (pos < limit) {
+            b = buf[pos];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                break;
+            }
+            pos++;
+        }
+        return pos > start;
+    }
+
+    /**
+     * 跳过嵌套的对象或数组，只需要匹配括号并跳过其中的字符串，pos位于'{'或'['
+     */
+    private boolean skipContainer() {
+        int depth = 0;
+        while (pos < limit) {
+            byte b = buf[pos];
+            if (b == '"') {
+                if (!skipString()) {
+                    return false;
+                }
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    pos++;
+                    return true;
+                }
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    /**
+     * 跳过字符串(包括转义字符)，pos位于开头的'"'，结束后位于结尾的'"'之后
+     */
+    private boolean skipString() {
+        pos++;
+        while (pos < limit) {
+            byte b = buf[pos];
+            if (b == '\\') {
+                pos += 2;
+                continue;
+            }
+            pos++;
+            if (b == '"') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean expect(char c) {
+        skipWhitespace();
+        if (pos < limit && buf[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean peekIs(char c) {
+        skipWhitespace();
+        return pos < limit && buf[pos] == c;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte b = buf[pos];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.roncoo.eshop.storm.spout;
+
+/**
+ * 单个kafka partition已发射未提交的offset跟踪
+ * <p>
+ * 1、同一个partition发射的offset是递增的，所以按发射顺序存入环形数组即为有序，ack时二分查找并标记
+ * 2、可提交的offset = 最早一个未ack的offset；全部ack时为最后发射的offset + 1，offset不连续(如compact过的topic)也不会卡住
+ * 3、fail时丢弃该offset及之后的记录，由spout seek回去重新拉取、重新发射
+ * <p>
+ * 非线程安全，只在spout的executor线程中使用
+ */
+class OffsetTracker {
+
+    private long[] offsets;
+    private boolean[] acked;
+    private int head;
+    private int size;
+
+    // 已发射的最大offset + 1，还没有发射过则为-1
+    private long nextOffset = -1;
+
+    OffsetTracker() {
+        this(64);
+    }
+
+    OffsetTracker(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1;
+        this.offsets = new long[capacity];
+        this.acked = new boolean[capacity];
+    }
+
+    /**
+     * 记录一个已发射的offset，必须比之前发射的都大
+     */
+    void emitted(long offset) {
+        if (offset < nextOffset) {
+            throw new IllegalArgumentException("offset必须递增，offset=" + offset + "，nextOffset=" + nextOffset);
+        }
+        if (size == offsets.length) {
+            grow();
+        }
+        int index = (head + size) & (offsets.length - 1);
+        offsets[index] = offset;
+        acked[index] = false;
+        size++;
+        nextOffset = offset + 1;
+    }
+
+    /**
+     * 标记一个offset已被完整处理
+     *
+     * @return 是否找到该offset(fail回退之后才到达的旧ack会找不到)
+     */
+    boolean ack(long offset) {
+        int position = search(offset);
+        if (position < 0) {
+            return false;
+        }
+        acked[(head + position) & (offsets.length - 1)] = true;
+        // 从头部移除连续已ack的offset
+        while (size > 0 && acked[head]) {
+            head = (head + 1) & (offsets.length - 1);
+            size--;
+        }
+        return true;
+    }
+
+    /**
+     * @return offset是否已发射且还在跟踪中
+     */
+    boolean contains(long offset) {
+        return search(offset) >= 0;
+    }
+
+    /**
+     * 回退到某个offset：该offset及之后的记录全部丢弃，之后会从这个offset重新发射
+     */
+    void rewind(long offset) {
+        while (size > 0 && offsets[(head + size - 1) & (offsets.length - 1)] >= offset) {
+            size--;
+        }
+        if (nextOffset > offset) {
+            nextOffset = offset;
+        }
+    }
+
+    /**
+     * @return 可以提交的offset(下一条要消费的offset)，还没有发射过则返回-1
+     */
+    long committableOffset() {
+        if (size > 0) {
+            return offsets[head];
+        }
+        return nextOffset;
+    }
+
+    /**
+     * @return 已发射未ack的条数(包括排在未ack之后、已ack但还不能提交的)
+     */
+    int pending() {
+        return size;
+    }
+
+    /**
+     * @return offset在队列中的位置，不存在返回-1
+     */
+    private int search(long offset) {
+        int mask = offsets.length - 1;
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = offsets[(head + mid) & mask];
+            if (value < offset) {
+                low = mid + 1;
+            } else if (value > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int capacity = offsets.length << 1;
+        long[] newOffsets = new long[capacity];
+        boolean[] newAcked = new boolean[capacity];
+        int mask = offsets.length - 1;
+        for (int i = 0; i < size; i++) {
+            newOffsets[i] = offsets[(head + i) & mask];
+            newAcked[i] = acked[(head + i) & mask];
+        }
+        offsets = newOffsets;
+        acked = newAcked;
+        head = 0;
+    }
+
+}
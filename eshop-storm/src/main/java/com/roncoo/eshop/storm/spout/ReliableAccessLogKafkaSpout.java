@@ -0,0 +1,259 @@
+package com.roncoo.eshop.storm.spout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.roncoo.eshop.storm.conf.HotProductConf;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.storm.metric.api.CountMetric;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.topology.OutputFieldsDeclarer;
+import org.apache.storm.topology.base.BaseRichSpout;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Values;
+
+/**
+ * 消费access-log的kafka spout，基于新版 KafkaConsumer
+ * <p>
+ * 1、topic的partition按spout task平均分配(partition % task数 == task序号)，spout并行度设置为partition数即可线性扩展
+ * 2、KafkaConsumer只在executor线程中使用，没有中间队列，worker挂掉不会丢失已拉取未处理的消息；
+ * 每次poll最多拉取 {@link HotProductConf#SPOUT_BATCH_SIZE} 条，没有新消息时最多等待 {@link HotProductConf#SPOUT_POLL_TIMEOUT_MILLIS}
+ * 3、每条tuple带上 (partition, offset) 作为消息id发射，下游bolt锚定并ack后，按partition提交"最早一个未ack的offset"
+ * 4、fail时seek回失败的offset重新发射(at-least-once，该offset之后已发射的消息也会重发)
+ * 5、直接发射kafka消息的原始字节，由下游bolt按字节解析，不再转换成String
+ * <p>
+ * 启动时分配partition，运行中topic增加partition需要重新提交拓扑
+ */
+@Slf4j
+public class ReliableAccessLogKafkaSpout extends BaseRichSpout {
+
+    private static final long serialVersionUID = -2381146393587625512L;
+
+    private static final int METRICS_TIME_BUCKET_SECS = 60;
+
+    private SpoutOutputCollector collector;
+    private transient KafkaConsumer<byte[], byte[]> consumer;
+
+    private String topic;
+    private long pollTimeoutMillis;
+    private long commitIntervalMillis;
+    private int maxUncommitted;
+
+    // partition -> 已发射未提交的offset、上次提交的offset
+    private transient Map<Integer, OffsetTracker> trackers;
+    private transient Map<Integer, Long> committedOffsets;
+    private transient int pending;
+    private transient long nextCommitMillis;
+
+    // 上一次poll拉取到、还没有发射的消息
+    private transient Iterator<ConsumerRecord<byte[], byte[]>> buffered;
+
+    private transient CountMetric emittedMetric;
+    private transient CountMetric ackedMetric;
+    private transient CountMetric failedMetric;
+
+    /**
+     * 创建KafkaConsumer，并把partition分配给当前task
+     */
+    @SuppressWarnings("rawtypes")
+    public void open(Map conf, TopologyContext context, SpoutOutputCollector collector) {
+        this.collector = collector;
+        this.topic = HotProductConf.getString(conf, HotProductConf.KAFKA_TOPIC, HotProductConf.DEFAULT_KAFKA_TOPIC);
+        this.pollTimeoutMillis = HotProductConf.getInt(conf,
+                HotProductConf.SPOUT_POLL_TIMEOUT_MILLIS, HotProductConf.DEFAULT_SPOUT_POLL_TIMEOUT_MILLIS);
+        this.commitIntervalMillis = HotProductConf.getInt(conf,
+                HotProductConf.KAFKA_COMMIT_INTERVAL_MILLIS, HotProductConf.DEFAULT_KAFKA_COMMIT_INTERVAL_MILLIS);
+        this.maxUncommitted = HotProductConf.getInt(conf,
+                HotProductConf.KAFKA_MAX_UNCOMMITTED, HotProductConf.DEFAULT_KAFKA_MAX_UNCOMMITTED);
+        this.trackers = new HashMap<>();
+        this.committedOffsets = new HashMap<>();
+        this.buffered = Collections.emptyIterator();
+
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, HotProductConf.getString(conf,
+                HotProductConf.KAFKA_BOOTSTRAP_SERVERS, HotProductConf.DEFAULT_KAFKA_BOOTSTRAP_SERVERS));
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, HotProductConf.getString(conf,
+                HotProductConf.KAFKA_GROUP_ID, HotProductConf.DEFAULT_KAFKA_GROUP_ID));
+        // offset只在ack之后由spout提交
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(Math.max(1, HotProductConf.getInt(conf,
+                HotProductConf.SPOUT_BATCH_SIZE, HotProductConf.DEFAULT_SPOUT_BATCH_SIZE))));
+        this.consumer = new KafkaConsumer<>(props, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+
+        List<TopicPartition> partitions = assignPartitions(context);
+        consumer.assign(partitions);
+        for (TopicPartition partition : partitions) {
+            trackers.put(partition.partition(), new OffsetTracker());
+        }
+        log.info("spout task={}分配到的partition：{}", context.getThisTaskId(), partitions);
+
+        this.emittedMetric = context.registerMetric("access-log-emitted", new CountMetric(), METRICS_TIME_BUCKET_SECS);
+        this.ackedMetric = context.registerMetric("access-log-acked", new CountMetric(), METRICS_TIME_BUCKET_SECS);
+        this.failedMetric = context.registerMetric("access-log-failed", new CountMetric(), METRICS_TIME_BUCKET_SECS);
+        context.registerMetric("access-log-pending", () -> pending, METRICS_TIME_BUCKET_SECS);
+    }
+
+    /**
+     * 按 partition % spout task数 == 当前task序号 分配partition
+     */
+    private List<TopicPartition> assignPartitions(TopologyContext context) {
+        int taskCount = context.getComponentTasks(context.getThisComponentId()).size();
+        int taskIndex = context.getThisTaskIndex();
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (PartitionInfo info : consumer.partitionsFor(topic)) {
+            if (info.partition() % taskCount == taskIndex) {
+                partitions.add(new TopicPartition(topic, info.partition()));
+            }
+        }
+        if (partitions.isEmpty()) {
+            log.warn("topic={}的partition数少于spout task数，task={}没有分配到partition", topic, context.getThisTaskId());
+        }
+        return partitions;
+    }
+
+    /**
+     * 发射上一次poll拉取到的消息；都发射完了且未提交的消息没有超过上限，才拉取下一批
+     */
+    public void nextTuple() {
+        commitIfDue();
+        if (!buffered.hasNext()) {
+            if (pending >= maxUncommitted || trackers.isEmpty()) {
+                return;
+            }
+            buffered = consumer.poll(pollTimeoutMillis).iterator();
+        }
+        while (buffered.hasNext()) {
+            ConsumerRecord<byte[], byte[]> record = buffered.next();
+            OffsetTracker tracker = trackers.get(record.partition());
+            tracker.emitted(record.offset());
+            pending++;
+            collector.emit(new Values(record.value()), new KafkaMessageId(record.partition(), record.offset()));
+            emittedMetric.incr();
+        }
+    }
+
+    @Override
+    public void ack(Object msgId) {
+        KafkaMessageId messageId = (KafkaMessageId) msgId;
+        OffsetTracker tracker = trackers.get(messageId.partition);
+        int before = tracker.pending();
+        if (tracker.ack(messageId.offset)) {
+            pending -= before - tracker.pending();
+            ackedMetric.incr();
+        }
+    }
+
+    /**
+     * 失败的消息：放弃还没发射的消息，seek回失败的offset重新拉取
+     */
+    @Override
+    public void fail(Object msgId) {
+        KafkaMessageId messageId = (KafkaMessageId) msgId;
+        OffsetTracker tracker = trackers.get(messageId.partition);
+        failedMetric.incr();
+        // 之前已经回退到更早的offset，这条消息会被重新发射
+        if (!tracker.contains(messageId.offset)) {
+            return;
+        }
+        log.warn("kafka消息处理失败，回退重新发射，partition={}，offset={}", messageId.partition, messageId.offset);
+        discardBuffered();
+        int before = tracker.pending();
+        tracker.rewind(messageId.offset);
+        pending -= before - tracker.pending();
+        consumer.seek(new TopicPartition(topic, messageId.partition), messageId.offset);
+    }
+
+    /**
+     * 丢弃已拉取未发射的消息，各partition seek回第一条未发射的offset
+     */
+    private void discardBuffered() {
+        Map<Integer, Long> firstOffsets = new HashMap<>();
+        while (buffered.hasNext()) {
+            ConsumerRecord<byte[], byte[]> record = buffered.next();
+            firstOffsets.putIfAbsent(record.partition(), record.offset());
+        }
+        for (Map.Entry<Integer, Long> entry : firstOffsets.entrySet()) {
+            consumer.seek(new TopicPartition(topic, entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * 每隔commitIntervalMillis提交一次各partition可以提交的offset
+     */
+    private void commitIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < nextCommitMillis) {
+            return;
+        }
+        nextCommitMillis = now + commitIntervalMillis;
+        commit();
+    }
+
+    private void commit() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<Integer, OffsetTracker> entry : trackers.entrySet()) {
+            long offset = entry.getValue().committableOffset();
+            Long committed = committedOffsets.get(entry.getKey());
+            if (offset >= 0 && (committed == null || offset > committed)) {
+                offsets.put(new TopicPartition(topic, entry.getKey()), new OffsetAndMetadata(offset));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(offsets);
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+                committedOffsets.put(entry.getKey().partition(), entry.getValue().offset());
+            }
+        } catch (Exception e) {
+            log.warn("提交kafka offset失败，下次重试：{}", offsets, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (consumer != null) {
+            commit();
+            consumer.close();
+        }
+    }
+
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        declarer.declare(new Fields("message"));
+    }
+
+    /**
+     * tuple的消息id，只在spout的executor内部使用
+     */
+    private static final class KafkaMessageId {
+
+        private final int partition;
+        private final long offset;
+
+        private KafkaMessageId(int partition, long offset) {
+            this.partition = partition;
+            this.offset = offset;
+        }
+
+        @Override
+        public String toString() {
+            return partition + "@" + offset;
+        }
+    }
+
+}
@@ -1,14 +1,22 @@
 package com.roncoo.eshop.storm.zk;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
-
-import java.util.concurrent.CountDownLatch;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.nodes.PersistentEphemeralNode;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
 
 /**
- * zookeeper分布式锁
+ * storm拓扑使用的zookeeper客户端：task成员的临时顺序节点，以及节点数据的读写
+ * <p>
+ * 基于Curator实现：会话断开后由Curator按重试策略重连，会话过期后自动创建新会话；临时顺序节点在新会话中自动重新创建
  * <p>
  * Created by lsd
  * 2020-05-09 23:45
@@ -18,8 +26,7 @@ public class ZookeeperUtils {
 
     private final static String ZOOKEEPER_SERVERS = "192.168.11.102:2181";   //以逗号分隔的zookeeper地址
 
-    private ZooKeeper zooKeeper;
-    private final static CountDownLatch connectedSemaphore = new CountDownLatch(1);
+    private CuratorFramework client;
 
     /**
      * 封装单例的静态内部类
@@ -56,20 +63,27 @@ public class ZookeeperUtils {
      */
     public ZookeeperUtils() {
         try {
-            // 异步创建zk客户端，会返回一个状态CONNECTING（连接中）
-            this.zooKeeper = new ZooKeeper(
-                    ZOOKEEPER_SERVERS,
-                    60000,
-                    // 监听初始化完成事件，连接建立完成则打开门闩
-                    (WatchedEvent event) -> {
-                        log.info("zk session watcher接收到事件: {}", event.getState());
-                        if (Watcher.Event.KeeperState.SyncConnected == event.getState()) {
-                            connectedSemaphore.countDown();
-                        }
-                    });
-            log.info("正在创建zooKeeper会话，状态：{}", zooKeeper.getState());
+            this.client = CuratorFrameworkFactory.builder()
+                    .connectString(ZOOKEEPER_SERVERS)
+                    .sessionTimeoutMs(60000)
+                    .connectionTimeoutMs(15000)
+                    // 连接失败时按指数退避重试，最多重试3次
+                    .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+                    .build();
+            // 监听连接状态变化
+            client.getConnectionStateListenable().addListener((curator, newState) -> {
+                if (newState == ConnectionState.LOST) {
+                    log.error("zooKeeper会话已过期，等待重新建立会话");
+                } else if (newState == ConnectionState.SUSPENDED) {
+                    log.warn("zooKeeper连接已断开，正在重连");
+                } else {
+                    log.info("zooKeeper连接状态: {}", newState);
+                }
+            });
+            client.start();
+            log.info("正在创建zooKeeper会话");
             // 等待初始化完成
-            connectedSemaphore.await();
+            client.blockUntilConnected();
             log.info("zooKeeper会话连接已建立");
         } catch (Exception e) {
             log.error("创建zooKeeper会话连接失败", e);
@@ -77,77 +91,38 @@ public class ZookeeperUtils {
     }
 
     /**
-     * 自旋获取分布式锁，获取失败会每隔200ms进行重试，直到成功获得锁
-     */
-    public void acquireDistributedLock(String lockPath) {
-        // 创建临时节点，默认acl权限
-        try {
-            zooKeeper.create(lockPath, "".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
-            log.info("成功获取分布式锁，lockPath={}", lockPath);
-        } catch (Exception e) {  //每隔200ms进行重试，直到成功获得锁
-            log.info("获取分布式锁失败，lockPath={}，原因:{}", lockPath, e.getMessage());
-            int count = 0;
-            while (true) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(200);
-                    zooKeeper.create(lockPath, "".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
-                } catch (Exception ex) {
-                    log.info("获取分布式锁失败，lockPath={}，原因:{}", lockPath, e.getMessage());
-                    count++;
-                    continue;
-                }
-                // 没抛异常则成功
-                log.info("获取分布式锁成功，lockPath={}，已重试次数:{}", lockPath, count);
-                break;
-            }
-        }
-    }
-
-    /**
-     * 尝试获取分布式锁
-     *
-     * @return 获取成功：true，获取失败：false
+     * 若节点不存在会抛出 KeeperException.NoNodeException，因此调用该方法前必须先调用 {@link #createNode(String)}
      */
-    public boolean tryAcquireDistributedLock(String lockPath) {
+    public String getNodeData(String path) {
         try {
-            zooKeeper.create(lockPath, "".getBytes(),
-                    ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
-            log.info("成功获取分布式锁，lockPath={}", lockPath);
-            return true;
+            return new String(client.getData().forPath(path), StandardCharsets.UTF_8);
         } catch (Exception e) {
-            log.info("获取分布式锁失败，lockPath={}，原因:{}", lockPath, e.getMessage());
+            log.error("读取zookeeper节点信息失败", e);
+            return "";
         }
-        return false;
     }
 
-
     /**
-     * 释放分布式锁
+     * 读取节点数据并注册监听，节点不存在时返回null并监听节点的创建
+     * <p>
+     * zk的监听只触发一次，收到事件后需要再次调用本方法重新注册
      */
-    public boolean releaseDistributedLock(String lockPath) {
+    public String getNodeData(String path, Watcher watcher) {
         try {
-            zooKeeper.delete(lockPath, -1);
-            log.info("分布式锁释放成功，lockPath={}", lockPath);
-            return true;
-        } catch (Exception e) {
-            if (e instanceof KeeperException.NodeExistsException) {
-                log.info("分布式锁节点不存在，忽略本次释放操作，lockPath={}", lockPath);
-                return true;
+            return new String(client.getData().usingWatcher(watcher).forPath(path), StandardCharsets.UTF_8);
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                // 节点在两次调用之间被创建则直接读取
+                if (client.checkExists().usingWatcher(watcher).forPath(path) != null) {
+                    return getNodeData(path, watcher);
+                }
+            } catch (Exception ex) {
+                log.error("监听zookeeper节点失败，path={}", path, ex);
             }
-            log.error("分布式锁释放失败", e);
-            return false;
-        }
-    }
-
-    /**
-     * 若节点不存在会抛出 KeeperException.NoNodeException，因此调用该方法前必须先调用 {@link #createNode(String)}
-     */
-    public String getNodeData(String path) {
-        try {
-            return new String(zooKeeper.getData(path, false, new Stat()));
+            return null;
         } catch (Exception e) {
-            log.error("读取zookeeper节点信息失败", e);
-            return "";
+            log.error("读取zookeeper节点信息失败，path={}", path, e);
+            return null;
         }
     }
 
@@ -156,7 +131,7 @@ public class ZookeeperUtils {
      */
     public void setNodeData(String path, String data) {
         try {
-            zooKeeper.setData(path, data.getBytes(), -1);
+            client.setData().forPath(path, data.getBytes(StandardCharsets.UTF_8));
         } catch (Exception e) {
             log.error("设置zookeeper节点信息失败", e);
         }
@@ -168,29 +143,53 @@ public class ZookeeperUtils {
      */
     public void createNode(String path) {
         try {
-            zooKeeper.create(path, "".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            client.create().forPath(path, new byte[0]);
+        } catch (KeeperException.NodeExistsException e) {
+            log.info("zookeeper节点已存在，忽略本次创建操作");
         } catch (Exception e) {
-            if (e instanceof KeeperException.NodeExistsException) {
-                log.info("zookeeper节点已存在，忽略本次创建操作");
-                return;
-            }
             log.error("创建zookeeper节点信息失败", e);
         }
     }
 
+    /**
+     * 在父节点下创建临时顺序子节点，会话结束(进程退出)时zk自动删除；父节点不存在时先创建
+     * <p>
+     * 会话过期后重新建立会话时，Curator会自动重新创建该节点(序号会变化)
+     *
+     * @param parentPath 父节点(持久节点)
+     * @param prefix     子节点名称前缀，zk会在后面追加10位序号
+     * @return 关闭即删除节点，失败返回null
+     */
+    public Closeable createEphemeralSequentialNode(String parentPath, String prefix, String data) {
+        createNode(parentPath);
+        PersistentEphemeralNode node = new PersistentEphemeralNode(client, PersistentEphemeralNode.Mode.EPHEMERAL_SEQUENTIAL,
+                parentPath + "/" + prefix, data.getBytes(StandardCharsets.UTF_8));
+        try {
+            node.start();
+            if (node.waitForInitialCreate(15, TimeUnit.SECONDS)) {
+                log.info("创建临时顺序节点成功，path={}", node.getActualPath());
+            } else {
+                log.warn("创建临时顺序节点超时，将在连接恢复后继续创建，parentPath={}", parentPath);
+            }
+            return node;
+        } catch (Exception e) {
+            log.error("创建临时顺序节点失败，parentPath={}", parentPath, e);
+            return null;
+        }
+    }
+
     /**
      * 删除节点
      */
     public boolean deleteNode(String path) {
         try {
-            zooKeeper.delete(path, -1);
+            client.delete().forPath(path);
             log.info("zookeeper节点删除成功，path={}", path);
             return true;
+        } catch (KeeperException.NoNodeException e) {
+            log.info("zookeeper节点不存在，忽略本次删除操作，path={}", path);
+            return true;
         } catch (Exception e) {
-            if (e instanceof KeeperException.NodeExistsException) {
-                log.info("zookeeper节点不存在，忽略本次删除操作，path={}", path);
-                return true;
-            }
             log.error("zookeeper节点删除失败", e);
             return false;
         }
@@ -0,0 +1,138 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 近似模式商品访问次数统计单元测试
+ */
+public class ApproximateProductCounterTest extends TestCase {
+
+    public void testHeavyHittersAreTracked() {
+        ApproximateProductCounter counter = new ApproximateProductCounter(0.001, 0.001, 100, 60000);
+        Random random = new Random(7);
+        // 10万个长尾商品各访问1~2次，3个热点商品各访问5000次
+        for (int i = 0; i < 200000; i++) {
+            counter.add(1000 + random.nextInt(100000), 1, 0);
+            if (i % 40 == 0) {
+                counter.add(1L, 1, 0);
+                counter.add(2L, 1, 0);
+                counter.add(3L, 1, 0);
+            }
+        }
+        Map<Long, Long> tracked = new HashMap<>();
+        counter.forEach(tracked::put);
+
+        assertEquals(100, counter.size());
+        for (long productId = 1; productId <= 3; productId++) {
+            assertTrue(tracked.containsKey(productId));
+            long count = tracked.get(productId);
+            // Count-Min 只会高估，误差不超过 epsilon * 总访问次数
+            assertTrue("count=" + count, count >= 5000 && count <= 5000 + 215);
+        }
+        assertEquals(100, counter.distribution().size());
+    }
+
+    public void testDecay() {
+        ApproximateProductCounter counter = new ApproximateProductCounter(0.01, 0.01, 10, 1000);
+        counter.add(1L, 100, 0);
+        counter.add(2L, 1, 0);
+        counter.advance(1000);
+        assertEquals(50, counter.get(1L));
+        assertEquals(1, counter.size());
+        assertEquals(1, counter.distribution().size());
+
+        counter.advance(100000);
+        assertEquals(0, counter.get(1L));
+        assertEquals(0, counter.size());
+    }
+
+    public void testSpaceSavingReplacesMinimum() {
+        SpaceSaving spaceSaving = new SpaceSaving(2);
+        spaceSaving.add(1L, 5);
+        spaceSaving.add(2L, 1);
+        spaceSaving.add(3L, 1);
+
+        assertEquals(5, spaceSaving.count(1L));
+        assertEquals(0, spaceSaving.count(2L));
+        assertEquals(2, spaceSaving.count(3L));
+        assertEquals(1, spaceSaving.error(3L));
+        assertEquals(2, spaceSaving.size());
+
+        // 同样的访问序列，分布由计数器按forEach的访问次数重建，包含替换进来的商品3
+        ApproximateProductCounter counter = new ApproximateProductCounter(0.001, 0.001, 2, 60000);
+        counter.add(1L, 5, 0);
+        counter.add(2L, 1, 0);
+        counter.add(3L, 1, 0);
+        QuantileSketch distribution = counter.distribution();
+        assertEquals(2, distribution.size());
+        assertEquals(5, distribution.max());
+    }
+
+    public void testDistributionUsesReportedCounts() {
+        ApproximateProductCounter counter = new ApproximateProductCounter(0.001, 0.001, 2, 60000);
+        counter.add(1L, 5, 0);
+        counter.add(2L, 1, 0);
+        // 商品3替换掉商品2，Space-Saving计数为2(继承了1)，Count-Min估计值为1
+        counter.add(3L, 1, 0);
+
+        Map<Long, Long> tracked = new HashMap<>();
+        counter.forEach(tracked::put);
+        assertEquals(Long.valueOf(5), tracked.get(1L));
+        assertEquals(Long.valueOf(1), tracked.get(3L));
+
+        QuantileSketch distribution = counter.distribution();
+        assertEquals(2, distribution.size());
+        assertEquals(6, distribution.totalCount());
+        assertEquals(1, distribution.quantile(0));
+    }
+
+    public void testSpaceSavingIndexWrapAround() {
+        // 容量2时索引有16个位置，两个商品都散列到最后一个位置，探测链为 15 -> 0
+        long[] ids = new long[2];
+        int found = 0;
+        for (long id = 1; found < 2; id++) {
+            if (((int) LongHashing.mix(id) & 15) == 15) {
+                ids[found++] = id;
+            }
+        }
+        SpaceSaving spaceSaving = new SpaceSaving(2);
+        spaceSaving.add(ids[0], 1);
+        spaceSaving.add(ids[1], 5);
+
+        // 替换链头的商品，链尾的商品跨过环形边界前移后仍然可以找到
+        spaceSaving.add(100L, 1);
+        assertEquals(0, spaceSaving.count(ids[0]));
+        assertEquals(5, spaceSaving.count(ids[1]));
+        assertEquals(2, spaceSaving.count(100L));
+        assertEquals(1, spaceSaving.error(100L));
+    }
+
+    public void testSpaceSavingUnderChurn() {
+        SpaceSaving spaceSaving = new SpaceSaving(50);
+        Random random = new Random(11);
+        long total = 0;
+        for (int i = 0; i < 100000; i++) {
+            long productId = random.nextInt(2000);
+            spaceSaving.add(productId, 1);
+            total++;
+        }
+        Map<Long, Long> tracked = new HashMap<>();
+        spaceSaving.forEach(tracked::put);
+        assertEquals(50, spaceSaving.size());
+        assertEquals(50, tracked.size());
+
+        // 索引与槽位一致：被跟踪的都能查到，其余的都查不到；所有计数之和等于总访问次数
+        long sum = 0;
+        for (long productId = 0; productId < 2000; productId++) {
+            Long count = tracked.get(productId);
+            assertEquals(count == null ? 0 : count, spaceSaving.count(productId));
+            sum += count == null ? 0 : count;
+        }
+        assertEquals(total, sum);
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * 热点发现候选商品集合单元测试
+ */
+public class HotProductCandidatesTest extends TestCase {
+
+    private final ExactProductCounter counter = new ExactProductCounter(3, 1000);
+    private final HotProductCandidates candidates = new HotProductCandidates();
+
+    private void add(long productId, long delta, long now) {
+        candidates.onCount(productId, counter.add(productId, delta, now));
+    }
+
+    private Map<Long, Long> visit() {
+        Map<Long, Long> visited = new HashMap<>();
+        candidates.forEach(counter, visited::put);
+        return visited;
+    }
+
+    public void testOnlyCountsAboveThreshold() {
+        candidates.setThreshold(10);
+        add(1L, 5, 0);
+        add(2L, 11, 0);
+        assertEquals(1, candidates.size());
+        // 多次累加后越过阈值
+        add(1L, 6, 0);
+
+        Map<Long, Long> visited = visit();
+        assertEquals(2, visited.size());
+        assertEquals(Long.valueOf(11), visited.get(1L));
+        assertEquals(Long.valueOf(11), visited.get(2L));
+    }
+
+    public void testStaysCandidateWithoutNewAccess() {
+        candidates.setThreshold(10);
+        add(1L, 20, 0);
+        add(1L, 20, 1000);
+        // 之后没有访问，窗口滑过第一个时间桶后仍然超过阈值
+        counter.advance(3000);
+        assertEquals(Long.valueOf(20), visit().get(1L));
+        assertEquals(1, candidates.size());
+    }
+
+    public void testRemovedBelowThreshold() {
+        candidates.setThreshold(10);
+        add(1L, 20, 0);
+        counter.advance(3000);
+        assertTrue(visit().isEmpty());
+        assertEquals(0, candidates.size());
+
+        // 阈值上升后，访问次数不再超过阈值的商品也会移除
+        add(2L, 20, 3000);
+        candidates.setThreshold(30);
+        assertTrue(visit().isEmpty());
+        assertEquals(0, candidates.size());
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * 热点商品冷/热状态机单元测试
+ */
+public class HotProductTrackerTest extends TestCase {
+
+    private final List<Long> entered = new ArrayList<>();
+    private final List<Long> exited = new ArrayList<>();
+
+    private void round(HotProductTracker tracker, long now, long... productIdAndCounts) {
+        entered.clear();
+        exited.clear();
+        for (int i = 0; i < productIdAndCounts.length; i += 2) {
+            tracker.visit(productIdAndCounts[i], productIdAndCounts[i + 1]);
+        }
+        tracker.endRound(100, 50, now, entered, exited);
+    }
+
+    public void testEnterOnlyOnce() {
+        HotProductTracker tracker = new HotProductTracker(0, 0);
+        round(tracker, 0, 1, 101, 2, 100);
+        assertEquals(1, entered.size());
+        assertEquals(Long.valueOf(1), entered.get(0));
+        round(tracker, 5000, 1, 200);
+        assertTrue(entered.isEmpty());
+        assertTrue(exited.isEmpty());
+        assertTrue(tracker.isHot(1));
+    }
+
+    public void testHysteresis() {
+        HotProductTracker tracker = new HotProductTracker(0, 0);
+        round(tracker, 0, 1, 101);
+        // 低于进入阈值但高于退出阈值，保持热点
+        round(tracker, 5000, 1, 60);
+        assertTrue(exited.isEmpty());
+        round(tracker, 10000, 1, 50);
+        assertEquals(1, exited.size());
+        assertFalse(tracker.isHot(1));
+        // 再次回到进入和退出阈值之间，不会重新成为热点
+        round(tracker, 15000, 1, 90);
+        assertTrue(entered.isEmpty());
+    }
+
+    public void testMinHold() {
+        HotProductTracker tracker = new HotProductTracker(30000, 0);
+        round(tracker, 0, 1, 101);
+        round(tracker, 5000);
+        assertTrue(exited.isEmpty());
+        round(tracker, 30000);
+        assertEquals(1, exited.size());
+    }
+
+    public void testDecay() {
+        HotProductTracker tracker = new HotProductTracker(0, 10000);
+        round(tracker, 0, 1, 400);
+        // 流量突然消失：400 -> 200 -> 100 -> 50，按半衰期逐渐冷却
+        round(tracker, 10000);
+        assertTrue(exited.isEmpty());
+        assertEquals(200.0, tracker.score(1), 0.001);
+        round(tracker, 20000);
+        assertTrue(exited.isEmpty());
+        round(tracker, 30000);
+        assertEquals(1, exited.size());
+        assertEquals(0, tracker.size());
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 商品访问次数预聚合器单元测试
+ */
+public class ProductCountCombinerTest extends TestCase {
+
+    public void testCombine() {
+        ProductCountCombiner combiner = new ProductCountCombiner(2);
+        assertEquals(0, combiner.add(7L, 1));
+        assertEquals(1, combiner.add(3L, 1));
+        assertEquals(0, combiner.add(7L, 2));
+
+        assertEquals(2, combiner.size());
+        assertEquals(7L, combiner.productIdAt(0));
+        assertEquals(3L, combiner.countAt(0));
+        assertEquals(3L, combiner.productIdAt(1));
+        assertEquals(1L, combiner.countAt(1));
+
+        combiner.clear();
+        assertEquals(0, combiner.size());
+        assertEquals(0, combiner.add(3L, 5));
+        assertEquals(5L, combiner.countAt(0));
+    }
+
+    public void testGrowAgainstHashMap() {
+        ProductCountCombiner combiner = new ProductCountCombiner(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 20000; i++) {
+            long productId = random.nextInt(3000);
+            combiner.add(productId, 1);
+            expected.merge(productId, 1L, Long::sum);
+        }
+        assertEquals(expected.size(), combiner.size());
+        for (int slot = 0; slot < combiner.size(); slot++) {
+            assertEquals(expected.get(combiner.productIdAt(slot)).longValue(), combiner.countAt(slot));
+        }
+    }
+
+}
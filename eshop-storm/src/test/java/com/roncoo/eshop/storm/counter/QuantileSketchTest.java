@@ -0,0 +1,56 @@
+package com.roncoo.eshop.storm.counter;
+
+import junit.framework.TestCase;
+
+/**
+ * 分位数草图单元测试
+ */
+public class QuantileSketchTest extends TestCase {
+
+    public void testSmallValuesAreExact() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (long count = 1; count <= 20; count++) {
+            sketch.add(count);
+        }
+        assertEquals(20, sketch.size());
+        assertEquals(19, sketch.quantile(0.95));
+        // 后95%即最小的19个值：1~19，平均值10
+        assertEquals(10.0, sketch.meanOfLowest(0.95), 0.0001);
+        assertEquals(20, sketch.max());
+    }
+
+    public void testRelativeError() {
+        QuantileSketch sketch = new QuantileSketch(5);
+        for (long count = 1; count <= 100000; count++) {
+            sketch.add(count);
+        }
+        long p95 = sketch.quantile(0.95);
+        assertTrue("p95=" + p95, Math.abs(p95 - 95000) <= 95000 / 32);
+        double mean = sketch.meanOfLowest(0.95);
+        assertTrue("mean=" + mean, Math.abs(mean - 47500.5) <= 47500.5 / 32);
+    }
+
+    public void testFollowsSlidingWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(2, 1000);
+        QuantileSketch sketch = new QuantileSketch();
+        counter.setListener(sketch);
+
+        for (long productId = 1; productId <= 19; productId++) {
+            counter.add(productId, 10, 0);
+        }
+        counter.add(100L, 1000, 1000);
+        assertEquals(20, sketch.size());
+        assertEquals(10.0, sketch.meanOfLowest(0.95), 0.0001);
+        assertTrue(sketch.max() >= 1000);
+
+        // 第0个时间桶过期，只剩下热点商品
+        counter.advance(2000);
+        assertEquals(1, sketch.size());
+        assertEquals(1000, sketch.totalCount());
+
+        counter.advance(10000);
+        assertEquals(0, sketch.size());
+        assertEquals(0, sketch.max());
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * 滑动窗口计数器单元测试
+ */
+public class SlidingWindowCounterTest extends TestCase {
+
+    public void testCountWithinWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(3, 1000);
+        counter.add(1L, 1, 0);
+        counter.add(1L, 1, 500);
+        counter.add(2L, 5, 1500);
+
+        assertEquals(2, counter.get(1L));
+        assertEquals(5, counter.get(2L));
+        assertEquals(0, counter.get(3L));
+        assertEquals(2, counter.size());
+    }
+
+    public void testExpireOldBuckets() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(3, 1000);
+        counter.add(1L, 1, 0);
+        counter.add(1L, 2, 1000);
+        counter.add(2L, 1, 2000);
+
+        // 第0个时间桶滑出窗口
+        counter.advance(3000);
+        assertEquals(2, counter.get(1L));
+        assertEquals(1, counter.get(2L));
+
+        // 只剩第2个时间桶
+        counter.advance(4000);
+        assertEquals(0, counter.get(1L));
+        assertEquals(1, counter.get(2L));
+        assertEquals(1, counter.size());
+
+        // 整个窗口都已过期
+        counter.advance(10000);
+        assertEquals(0, counter.size());
+    }
+
+    public void testGrowAndForEach() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60, 1000, 4);
+        for (long productId = 1; productId <= 10000; productId++) {
+            counter.add(productId, productId, 0);
+        }
+        Map<Long, Long> visited = new HashMap<>();
+        counter.forEach(visited::put);
+
+        assertEquals(10000, counter.size());
+        assertEquals(10000, visited.size());
+        for (long productId = 1; productId <= 10000; productId++) {
+            assertEquals(Long.valueOf(productId), visited.get(productId));
+        }
+    }
+
+    public void testRemoveInMiddleOfWrappedChain() {
+        // 初始容量4时哈希表有16个槽，三个商品都散列到最后一个槽，探测链为 15 -> 0 -> 1
+        SlidingWindowCounter counter = new SlidingWindowCounter(3, 1000, 4);
+        long[] ids = idsWithHome(15, 15, 3);
+        counter.add(ids[0], 1, 0);
+        counter.add(ids[1], 1, 0);
+        counter.add(ids[2], 1, 1000);
+        counter.add(ids[0], 1, 1000);
+
+        // 第0个时间桶滑出窗口，链中间的商品归零被删除，后面的商品前移
+        counter.advance(3000);
+        assertEquals(1, counter.get(ids[0]));
+        assertEquals(0, counter.get(ids[1]));
+        assertEquals(1, counter.get(ids[2]));
+        assertEquals(2, counter.size());
+
+        counter.advance(4000);
+        assertEquals(0, counter.get(ids[0]));
+        assertEquals(0, counter.get(ids[2]));
+        assertEquals(0, counter.size());
+    }
+
+    public void testRemoveHeadOfWrappedChain() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(3, 1000, 4);
+        long[] ids = idsWithHome(15, 15, 3);
+        counter.add(ids[0], 1, 0);
+        counter.add(ids[1], 2, 1000);
+        counter.add(ids[2], 3, 1000);
+
+        // 链头(最后一个槽)被删除，表头的两个商品绕回来前移
+        counter.advance(3000);
+        assertEquals(0, counter.get(ids[0]));
+        assertEquals(2, counter.get(ids[1]));
+        assertEquals(3, counter.get(ids[2]));
+        assertEquals(2, counter.size());
+
+        counter.add(ids[0], 4, 3000);
+        assertEquals(4, counter.get(ids[0]));
+        assertEquals(3, counter.size());
+    }
+
+    public void testMatchesReferenceUnderChurn() {
+        int numBuckets = 5;
+        SlidingWindowCounter counter = new SlidingWindowCounter(numBuckets, 1000, 4);
+        // 参考实现：每个商品保存各时间桶的计数
+        Map<Long, long[]> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (long now = 0; now < 200000; now += random.nextInt(400)) {
+            long epoch = now / 1000;
+            long productId = random.nextInt(300);
+            long delta = 1 + random.nextInt(3);
+            counter.add(productId, delta, now);
+            reference.computeIfAbsent(productId, k -> new long[numBuckets * 2])[(int) (epoch % (numBuckets * 2))] += delta;
+            // 清掉参考实现中已滑出窗口的时间桶
+            for (long[] buckets : reference.values()) {
+                buckets[(int) ((epoch + numBuckets) % (numBuckets * 2))] = 0;
+            }
+            reference.values().removeIf(buckets -> sum(buckets, epoch, numBuckets) == 0);
+
+            assertEquals(reference.size(), counter.size());
+            for (Map.Entry<Long, long[]> entry : reference.entrySet()) {
+                assertEquals(sum(entry.getValue(), epoch, numBuckets), counter.get(entry.getKey()));
+            }
+        }
+    }
+
+    private static long sum(long[] buckets, long epoch, int numBuckets) {
+        long total = 0;
+        for (int i = 0; i < numBuckets; i++) {
+            total += buckets[(int) Math.floorMod(epoch - i, (long) buckets.length)];
+        }
+        return total;
+    }
+
+    /**
+     * 找出n个散列到指定槽位的商品id
+     */
+    private static long[] idsWithHome(int home, int mask, int n) {
+        long[] ids = new long[n];
+        int found = 0;
+        for (long id = 1; found < n; id++) {
+            if (((int) LongHashing.mix(id) & mask) == home) {
+                ids[found++] = id;
+            }
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.roncoo.eshop.storm.counter;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * topN选择器单元测试
+ */
+public class TopNSelectorTest extends TestCase {
+
+    public void testSelectTopN() {
+        TopNSelector selector = new TopNSelector(3);
+        long[] counts = {5, 100, 3, 80, 7, 200, 1};
+        for (int i = 0; i < counts.length; i++) {
+            selector.offer(i, counts[i]);
+        }
+        selector.sortDescending();
+
+        assertEquals(3, selector.size());
+        assertEquals(5, selector.productIdAt(0));
+        assertEquals(200, selector.countAt(0));
+        assertEquals(1, selector.productIdAt(1));
+        assertEquals(3, selector.productIdAt(2));
+        assertEquals(80, selector.countAt(2));
+    }
+
+    public void testFewerThanN() {
+        TopNSelector selector = new TopNSelector(10);
+        selector.offer(1L, 1);
+        selector.offer(2L, 2);
+        selector.sortDescending();
+
+        assertEquals(2, selector.size());
+        assertEquals(2, selector.productIdAt(0));
+        assertEquals(1, selector.productIdAt(1));
+    }
+
+    public void testResetAndReuse() {
+        TopNSelector selector = new TopNSelector(1000);
+        Random random = new Random(42);
+        for (int round = 0; round < 3; round++) {
+            selector.reset();
+            for (long productId = 0; productId < 20000; productId++) {
+                selector.offer(productId, random.nextInt(1000000));
+            }
+            selector.sortDescending();
+            assertEquals(1000, selector.size());
+            for (int i = 1; i < selector.size(); i++) {
+                assertTrue(selector.countAt(i - 1) >= selector.countAt(i));
+            }
+        }
+    }
+
+}
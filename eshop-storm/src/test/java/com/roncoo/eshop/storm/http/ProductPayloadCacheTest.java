@@ -0,0 +1,70 @@
+package com.roncoo.eshop.storm.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * 热点商品数据本地缓存与请求体编码单元测试
+ */
+public class ProductPayloadCacheTest extends TestCase {
+
+    public void testExpire() {
+        ProductPayloadCache cache = new ProductPayloadCache(1000, 10);
+        ProductPayload payload = ProductPayload.encode("{\"id\":1}", 0);
+        cache.put(1, payload, 0);
+        assertSame(payload, cache.get(1, 999));
+        assertNull(cache.get(1, 1000));
+        assertEquals(0, cache.size());
+    }
+
+    public void testEmptyNotCached() {
+        ProductPayloadCache cache = new ProductPayloadCache(1000, 10);
+        cache.put(1, ProductPayload.encode(null, 0), 0);
+        assertNull(cache.get(1, 0));
+    }
+
+    public void testMaxSize() {
+        ProductPayloadCache cache = new ProductPayloadCache(1000, 2);
+        cache.put(1, ProductPayload.encode("1", 0), 0);
+        cache.put(2, ProductPayload.encode("2", 0), 500);
+        cache.put(3, ProductPayload.encode("3", 0), 600);
+        assertNull(cache.get(3, 600));
+        // 1过期后腾出空间
+        cache.put(3, ProductPayload.encode("3", 0), 1000);
+        assertNotNull(cache.get(3, 1000));
+        assertNotNull(cache.get(2, 1000));
+    }
+
+    public void testGzipLargeBody() throws Exception {
+        StringBuilder json = new StringBuilder("{\"name\":\"");
+        for (int i = 0; i < 500; i++) {
+            json.append("iphone");
+        }
+        json.append("\"}");
+        ProductPayload small = ProductPayload.encode("{\"id\":1}", 1024);
+        assertFalse(small.isGzipped());
+        assertEquals("{\"id\":1}", new String(small.getBody(), StandardCharsets.UTF_8));
+
+        ProductPayload large = ProductPayload.encode(json.toString(), 1024);
+        assertTrue(large.isGzipped());
+        assertTrue(large.getBody().length < json.length());
+        assertEquals(json.toString(), gunzip(large.getBody()));
+    }
+
+    private static String gunzip(byte[] body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
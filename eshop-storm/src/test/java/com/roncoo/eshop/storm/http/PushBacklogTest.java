@@ -0,0 +1,74 @@
+package com.roncoo.eshop.storm.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * 没有送达的热点推送请求单元测试
+ */
+public class PushBacklogTest extends TestCase {
+
+    private final PushEndpoint nginx1 = new PushEndpoint("http://192.168.11.103", 3, 30000);
+    private final PushEndpoint nginx2 = new PushEndpoint("http://192.168.11.104", 3, 30000);
+
+    public void testDrainInOrder() {
+        PushBacklog backlog = new PushBacklog(10);
+        ProductPayload payload = ProductPayload.encode("{\"id\":1}", 0);
+        backlog.hold(nginx1, "/hot?productId=1", payload, null);
+        backlog.hold(nginx1, "/hot?productId=2", null, null);
+        backlog.hold(nginx2, "/hot?productId=3", null, null);
+        assertEquals(3, backlog.size());
+
+        Map<String, ProductPayload> requests = backlog.drain(nginx1);
+        assertEquals(Arrays.asList("/hot?productId=1", "/hot?productId=2"), new ArrayList<>(requests.keySet()));
+        assertSame(payload, requests.get("/hot?productId=1"));
+        assertNull(requests.get("/hot?productId=2"));
+        assertTrue(backlog.drain(nginx1).isEmpty());
+        assertEquals(1, backlog.size());
+    }
+
+    public void testSamePathKeepsLatest() {
+        PushBacklog backlog = new PushBacklog(10);
+        ProductPayload newer = ProductPayload.encode("{\"id\":1,\"name\":\"iphone7手机\"}", 0);
+        backlog.hold(nginx1, "/hot?productId=1", ProductPayload.encode("{\"id\":1}", 0), null);
+        backlog.hold(nginx1, "/hot?productId=2", null, null);
+        backlog.hold(nginx1, "/hot?productId=1", newer, null);
+
+        Map<String, ProductPayload> requests = backlog.drain(nginx1);
+        assertEquals(Arrays.asList("/hot?productId=2", "/hot?productId=1"), new ArrayList<>(requests.keySet()));
+        assertSame(newer, requests.get("/hot?productId=1"));
+    }
+
+    public void testSuperseded() {
+        PushBacklog backlog = new PushBacklog(10);
+        backlog.hold(nginx1, "/hot?productId=1", null, "/cancel_hot?productId=1");
+        backlog.hold(nginx1, "/cancel_hot?productId=1", null, "/hot?productId=1");
+        assertEquals(Collections.singletonList("/cancel_hot?productId=1"), new ArrayList<>(backlog.drain(nginx1).keySet()));
+    }
+
+    public void testDropEldest() {
+        PushBacklog backlog = new PushBacklog(2);
+        assertNull(backlog.hold(nginx1, "/hot?productId=1", null, null));
+        assertNull(backlog.hold(nginx1, "/hot?productId=2", null, null));
+        assertEquals("/hot?productId=1", backlog.hold(nginx1, "/hot?productId=3", null, null));
+        List<String> paths = new ArrayList<>(backlog.drain(nginx1).keySet());
+        assertEquals(Arrays.asList("/hot?productId=2", "/hot?productId=3"), paths);
+    }
+
+    public void testRetain() {
+        PushBacklog backlog = new PushBacklog(10);
+        backlog.hold(nginx1, "/hot?productId=1", null, null);
+        backlog.hold(nginx2, "/hot?productId=1", null, null);
+        // nginx2已经从注册表中移除
+        backlog.retain(Collections.singletonList(nginx1));
+        assertEquals(1, backlog.size());
+        assertTrue(backlog.drain(nginx2).isEmpty());
+        assertEquals(1, backlog.drain(nginx1).size());
+    }
+
+}
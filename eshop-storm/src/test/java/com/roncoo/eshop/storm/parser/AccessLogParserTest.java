@@ -0,0 +1,53 @@
+package com.roncoo.eshop.storm.parser;
+
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+/**
+ * 访问日志productId提取器单元测试
+ */
+public class AccessLogParserTest extends TestCase {
+
+    private final AccessLogParser parser = new AccessLogParser();
+
+    private long parse(String message) {
+        return parser.parseProductId(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void testNginxLog() {
+        String message = "{\"request_module\":\"product_detail_info\",\"raw_reader\":\"GET /product?a=1 HTTP/1.1\\r\\n\","
+                + "\"http_version\":1.1,\"method\":\"GET\",\"uri_args\":{\"productId\":\"1\",\"shopId\":\"1\"},"
+                + "\"headers\":{\"host\":\"192.168.11.103\",\"user-agent\":\"curl/7.29.0\",\"accept\":\"*/*\"}}";
+        assertEquals(1L, parse(message));
+    }
+
+    public void testSkipNestedValues() {
+        String message = "{ \"a\" : [1, {\"uri_args\": {\"productId\": 9}}, \"}\"], \"b\": {\"c\": \"\\\"{\"},"
+                + " \"n\": null, \"t\": true, \"uri_args\" : { \"shopId\": [\"1\", \"2\"], \"productId\" : 12345678901 } }";
+        assertEquals(12345678901L, parse(message));
+    }
+
+    public void testNotFound() {
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"uri_args\":{\"shopId\":\"1\"},\"productId\":1}"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"uri_args\":{}}"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{}"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"uri_args\":\"productId=1\"}"));
+    }
+
+    public void testMalformed() {
+        assertEquals(AccessLogParser.NOT_FOUND, parse(""));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("not json"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"uri_args\":{\"productId\":\"abc\"}}"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"uri_args\":{\"productId\":1.5}}"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"uri_args\":{\"productId\":\"12"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"a\":\"unterminated"));
+        assertEquals(AccessLogParser.NOT_FOUND, parse("{\"uri_args\":{\"productId\":99999999999999999999}}"));
+    }
+
+    public void testOffsetAndLength() {
+        byte[] data = "xx{\"uri_args\":{\"productId\":\"42\"}}yy".getBytes(StandardCharsets.UTF_8);
+        assertEquals(42L, parser.parseProductId(data, 2, data.length - 4));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.roncoo.eshop.storm.spout;
+
+import junit.framework.TestCase;
+
+/**
+ * kafka offset跟踪单元测试
+ */
+public class OffsetTrackerTest extends TestCase {
+
+    public void testCommitEarliestUnacked() {
+        OffsetTracker tracker = new OffsetTracker(2);
+        assertEquals(-1, tracker.committableOffset());
+        for (long offset = 10; offset < 15; offset++) {
+            tracker.emitted(offset);
+        }
+        assertEquals(10, tracker.committableOffset());
+
+        tracker.ack(12);
+        tracker.ack(11);
+        assertEquals(10, tracker.committableOffset());
+        tracker.ack(10);
+        assertEquals(13, tracker.committableOffset());
+        assertEquals(2, tracker.pending());
+
+        tracker.ack(14);
+        tracker.ack(13);
+        assertEquals(15, tracker.committableOffset());
+        assertEquals(0, tracker.pending());
+    }
+
+    public void testOffsetGap() {
+        OffsetTracker tracker = new OffsetTracker();
+        tracker.emitted(3);
+        tracker.emitted(7);
+        tracker.ack(3);
+        assertEquals(7, tracker.committableOffset());
+        tracker.ack(7);
+        assertEquals(8, tracker.committableOffset());
+    }
+
+    public void testRewind() {
+        OffsetTracker tracker = new OffsetTracker();
+        for (long offset = 0; offset < 5; offset++) {
+            tracker.emitted(offset);
+        }
+        tracker.ack(0);
+        tracker.rewind(2);
+        assertEquals(1, tracker.pending());
+        assertFalse(tracker.contains(3));
+        assertFalse(tracker.ack(3));
+        assertEquals(1, tracker.committableOffset());
+
+        tracker.emitted(2);
+        tracker.ack(1);
+        tracker.ack(2);
+        assertEquals(3, tracker.committableOffset());
+    }
+
+}